@@ -15,10 +15,12 @@
 package br.com.arsmachina.authentication;
 
 import java.util.List;
+import java.util.Set;
 
 import br.com.arsmachina.authentication.entity.Permission;
 import br.com.arsmachina.authentication.entity.PermissionGroup;
 import br.com.arsmachina.authentication.entity.Role;
+import br.com.arsmachina.authentication.permission.PermissionExpression;
 
 /**
  * Class that represents an application user. Each user can belong to any number of
@@ -70,14 +72,14 @@ public interface AbstractUser {
 	/**
 	 * Returns the value of the <code>permissionGroups</code> property.
 	 * 
-	 * @return a {@link List<PermissionGroup>}.
+	 * @return a {@link Set<PermissionGroup>}.
 	 */
-	List<PermissionGroup> getPermissionGroups();
+	Set<PermissionGroup> getPermissionGroups();
 
 	/**
 	 * Returns an unmodifiable list containing all the permissions granted to this user. It is
 	 * comprised by the sum of all permissions in its permission groups, except the ones in its
-	 * removed permissions list.
+	 * removed permissions set.
 	 * 
 	 * @return a {@link List} of {@link Permission}s.
 	 */
@@ -101,13 +103,30 @@ public interface AbstractUser {
 	List<Role> getRoles();
 
 	/**
-	 * Tells if this user has at least one of a set of permissions.
+	 * Tells if this user has at least one of a set of permissions. Like {@link #getPermissions()},
+	 * it does not consider the permissions in the user's removed permissions list.
 	 * 
 	 * @param permissionName an array of {@link String}s.
 	 * @return a <code>boolean</code>.
 	 */
 	boolean hasPermission(String... permissionNames);
 
+	/**
+	 * Tells if this user has all of a set of permissions.
+	 * 
+	 * @param permissionNames an array of {@link String}s.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean hasAllPermissions(String... permissionNames);
+
+	/**
+	 * Tells if this user's permissions satisfy a permission expression.
+	 * 
+	 * @param expression a {@link PermissionExpression}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isGranted(PermissionExpression expression);
+
 	/**
 	 * Are this user's credentials expired?
 	 * 
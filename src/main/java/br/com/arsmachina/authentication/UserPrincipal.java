@@ -0,0 +1,385 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.Role;
+import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+import br.com.arsmachina.authentication.permission.PermissionExpression;
+import br.com.arsmachina.authentication.permission.PermissionSet;
+import br.com.arsmachina.authentication.permission.PermissionSymbolTable;
+import br.com.arsmachina.authentication.permission.PermissionTrie;
+
+/**
+ * Immutable, compact {@link AbstractUser} implementation meant to be kept in HTTP sessions
+ * instead of the {@link User} entity. It holds the user's id, login, name, e-mail, state flags,
+ * role classes and effective permissions, but no password, no Hibernate collections and no role
+ * or permission group instances. Use {@link #getId()} to load the {@link User} when the whole
+ * entity is needed.
+ * 
+ * Principals are serialized in the compact {@link UserPrincipalCodec} format through an
+ * {@link Externalizable} serialization proxy instead of the default Java serialization.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class UserPrincipal implements AbstractUser, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final private static int CREDENTIALS_EXPIRED = 1;
+
+	final private static int ENABLED = 2;
+
+	final private static int EXPIRED = 4;
+
+	final private static int LOCKED = 8;
+
+	final private static int LOGGED_IN = 16;
+
+	final private Integer id;
+
+	final private String login;
+
+	final private String name;
+
+	final private String email;
+
+	final private int flags;
+
+	final private Class<?>[] roleClasses;
+
+	final private transient PermissionSet permissionSet;
+
+	final private transient PermissionTrie permissionTrie;
+
+	UserPrincipal(Integer id, String login, String name, String email, int flags,
+			Class<?>[] roleClasses, PermissionSet permissionSet, PermissionTrie permissionTrie) {
+
+		this.id = id;
+		this.login = login;
+		this.name = name;
+		this.email = email;
+		this.flags = flags;
+		this.roleClasses = roleClasses;
+		this.permissionSet = permissionSet;
+		this.permissionTrie = permissionTrie;
+
+	}
+
+	/**
+	 * Creates the principal of an user, compiling its effective permissions.
+	 * 
+	 * @param user an {@link User}. It cannot be null.
+	 * @return an {@link UserPrincipal}.
+	 */
+	public static UserPrincipal of(User user) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		int flags = 0;
+		flags |= user.isCredentialsExpired() ? CREDENTIALS_EXPIRED : 0;
+		flags |= user.isEnabled() ? ENABLED : 0;
+		flags |= user.isExpired() ? EXPIRED : 0;
+		flags |= user.isLocked() ? LOCKED : 0;
+		flags |= user.isLoggedIn() ? LOGGED_IN : 0;
+
+		final Set<Class<? extends Role>> roleClasses = user.getRoleClasses();
+		final EffectivePermissions permissions = user.getEffectivePermissions();
+
+		return new UserPrincipal(user.getId(), user.getLogin(), user.getName(), user.getEmail(),
+				flags, roleClasses.toArray(new Class<?>[roleClasses.size()]),
+				permissions.getPermissionSet(), permissions.getPermissionTrie());
+
+	}
+
+	int getFlags() {
+		return flags;
+	}
+
+	Class<?>[] getRoleClassArray() {
+		return roleClasses;
+	}
+
+	/**
+	 * Returns the id of the {@link User} this principal was created from.
+	 * 
+	 * @return an {@link Integer}.
+	 */
+	public Integer getId() {
+		return id;
+	}
+
+	public String getLogin() {
+		return login;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	/**
+	 * Returns <code>null</code>: principals do not keep passwords.
+	 * 
+	 * @return <code>null</code>.
+	 */
+	public String getPassword() {
+		return null;
+	}
+
+	public boolean isCredentialsExpired() {
+		return (flags & CREDENTIALS_EXPIRED) != 0;
+	}
+
+	public boolean isEnabled() {
+		return (flags & ENABLED) != 0;
+	}
+
+	public boolean isExpired() {
+		return (flags & EXPIRED) != 0;
+	}
+
+	public boolean isLocked() {
+		return (flags & LOCKED) != 0;
+	}
+
+	public boolean isLoggedIn() {
+		return (flags & LOGGED_IN) != 0;
+	}
+
+	public <R extends Role> boolean hasRole(Class<R> roleClass) {
+
+		for (Class<?> candidate : roleClasses) {
+
+			if (candidate == roleClass) {
+				return true;
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Returns the user's effective permissions.
+	 * 
+	 * @return a {@link PermissionSet}.
+	 */
+	public PermissionSet getPermissionSet() {
+		return permissionSet;
+	}
+
+	/**
+	 * Returns the user's wildcard permissions.
+	 * 
+	 * @return a {@link PermissionTrie}.
+	 */
+	public PermissionTrie getPermissionTrie() {
+		return permissionTrie;
+	}
+
+	public boolean hasPermission(String... permissionNames) {
+		return EffectivePermissions.hasPermission(permissionSet, permissionTrie, permissionNames);
+	}
+
+	public boolean hasAllPermissions(String... permissionNames) {
+		return EffectivePermissions.hasAllPermissions(permissionSet, permissionTrie,
+				permissionNames);
+	}
+
+	public boolean isGranted(PermissionExpression expression) {
+
+		if (expression == null) {
+			throw new IllegalArgumentException("Parameter expression cannot be null");
+		}
+
+		return expression.evaluate(permissionSet, permissionTrie);
+
+	}
+
+	/**
+	 * Returns new, detached {@link Permission} instances, without ids, for the user's effective
+	 * permissions, sorted by name.
+	 * 
+	 * @return an unmodifiable {@link List} of {@link Permission}s.
+	 */
+	public List<Permission> getPermissions() {
+
+		final List<Permission> permissions = new ArrayList<Permission>(permissionSet.size());
+
+		for (int i = permissionSet.nextId(0); i >= 0; i = permissionSet.nextId(i + 1)) {
+			permissions.add(new Permission(PermissionSymbolTable.getName(i)));
+		}
+
+		Collections.sort(permissions);
+
+		return Collections.unmodifiableList(permissions);
+
+	}
+
+	/**
+	 * Returns an empty set: principals do not keep permission groups. Their effective permissions
+	 * are already compiled in {@link #getPermissionSet()} and {@link #getPermissionTrie()}.
+	 * 
+	 * @return an empty, unmodifiable {@link Set}.
+	 */
+	public Set<PermissionGroup> getPermissionGroups() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Returns the classes of the roles the user had when this principal was created.
+	 * 
+	 * @return an unmodifiable {@link Set} of {@link Role} subclasses.
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<Class<? extends Role>> getRoleClasses() {
+
+		final Set<Class<? extends Role>> classes =
+			new LinkedHashSet<Class<? extends Role>>(roleClasses.length);
+
+		for (Class<?> roleClass : roleClasses) {
+			classes.add((Class<? extends Role>) roleClass);
+		}
+
+		return Collections.unmodifiableSet(classes);
+
+	}
+
+	/**
+	 * Returns <code>null</code>: principals keep role classes, not role instances, so they never
+	 * have a {@link Role} to return. Use {@link #hasRole(Class)} to check for a role and load the
+	 * {@link User} through {@link #getId()} when the instance is needed.
+	 * 
+	 * @param <T> a {@link Role} subclass.
+	 * @param clasz a {@link Class<T>}.
+	 * @return <code>null</code>.
+	 */
+	public <T extends Role> T getRole(Class<T> clasz) {
+		return null;
+	}
+
+	/**
+	 * Returns an empty list: principals keep role classes, not role instances. Use
+	 * {@link #getRoleClasses()} to know which roles the user has.
+	 * 
+	 * @return an empty, unmodifiable {@link List}.
+	 */
+	public List<Role> getRoles() {
+		return Collections.emptyList();
+	}
+
+	private Object writeReplace() throws ObjectStreamException {
+		return new SerializedForm(this);
+	}
+
+	/**
+	 * Principals are only deserialized through {@link SerializedForm}.
+	 */
+	private void readObject(ObjectInputStream in) throws InvalidObjectException {
+		throw new InvalidObjectException("UserPrincipal must be read through its serialized form");
+	}
+
+	@Override
+	public int hashCode() {
+		return login != null ? login.hashCode() : 0;
+	}
+
+	/**
+	 * Two principals are equal if they have the same login.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this == obj) {
+			return true;
+		}
+
+		if (obj instanceof UserPrincipal == false) {
+			return false;
+		}
+
+		final UserPrincipal other = (UserPrincipal) obj;
+
+		return login != null ? login.equals(other.login) : other.login == null;
+
+	}
+
+	/**
+	 * Returns the <code>name</code> property.
+	 * 
+	 * @return a {@link String}.
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Serialized form of {@link UserPrincipal}, written in the {@link UserPrincipalCodec} format.
+	 */
+	final static class SerializedForm implements Externalizable {
+
+		private static final long serialVersionUID = 1L;
+
+		private UserPrincipal principal;
+
+		/**
+		 * Constructor used by deserialization.
+		 */
+		public SerializedForm() {
+		}
+
+		SerializedForm(UserPrincipal principal) {
+			this.principal = principal;
+		}
+
+		public void writeExternal(ObjectOutput out) throws IOException {
+			UserPrincipalCodec.write(principal, out);
+		}
+
+		public void readExternal(ObjectInput in) throws IOException {
+			principal = UserPrincipalCodec.read(in);
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			return principal;
+		}
+
+	}
+
+}
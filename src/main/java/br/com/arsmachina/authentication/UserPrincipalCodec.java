@@ -0,0 +1,368 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import br.com.arsmachina.authentication.entity.Role;
+import br.com.arsmachina.authentication.permission.PermissionSet;
+import br.com.arsmachina.authentication.permission.PermissionSymbolTable;
+import br.com.arsmachina.authentication.permission.PermissionTrie;
+
+/**
+ * Compact, versioned binary format for {@link UserPrincipal}s, used by their serialized form and
+ * available to session stores that replicate principals by themselves. Every encoding starts with
+ * a version byte. Integers and lengths are written as variable-length <code>int</code>s, strings
+ * in UTF-8 and the permission names sorted and front-coded, so names sharing a prefix (for
+ * example, <code>user.read</code> and <code>user.write</code>) store it only once. Permission ids
+ * are not written, as they are only valid inside the process that interned them.
+ * 
+ * Version 2 added the names excluded from wildcard permissions after the permission names.
+ * Encodings of version 1 are still read.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class UserPrincipalCodec {
+
+	/**
+	 * Version of the format written by this class.
+	 */
+	public static final int VERSION = 2;
+
+	final private static Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * No instances of this class.
+	 */
+	private UserPrincipalCodec() {
+	}
+
+	/**
+	 * Encodes a principal into a byte array.
+	 * 
+	 * @param principal an {@link UserPrincipal}. It cannot be null.
+	 * @return a <code>byte</code> array.
+	 */
+	public static byte[] encode(UserPrincipal principal) {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+
+		try {
+			write(principal, new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		return bytes.toByteArray();
+
+	}
+
+	/**
+	 * Decodes a principal encoded by {@link #encode(UserPrincipal)}.
+	 * 
+	 * @param bytes a <code>byte</code> array. It cannot be null.
+	 * @return an {@link UserPrincipal}.
+	 * @throws IllegalArgumentException if <code>bytes</code> is not a valid encoding.
+	 */
+	public static UserPrincipal decode(byte[] bytes) {
+
+		if (bytes == null) {
+			throw new IllegalArgumentException("Parameter bytes cannot be null");
+		}
+
+		try {
+			return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Invalid encoded principal: " + e.getMessage(), e);
+		}
+
+	}
+
+	/**
+	 * Writes a principal.
+	 * 
+	 * @param principal an {@link UserPrincipal}. It cannot be null.
+	 * @param out a {@link DataOutput}. It cannot be null.
+	 * @throws IOException if <code>out</code> throws it.
+	 */
+	public static void write(UserPrincipal principal, DataOutput out) throws IOException {
+
+		if (principal == null) {
+			throw new IllegalArgumentException("Parameter principal cannot be null");
+		}
+
+		if (out == null) {
+			throw new IllegalArgumentException("Parameter out cannot be null");
+		}
+
+		out.writeByte(VERSION);
+		out.writeByte(principal.getFlags());
+
+		final Integer id = principal.getId();
+		writeInt(out, id != null ? id + 1 : 0);
+
+		writeString(out, principal.getLogin());
+		writeString(out, principal.getName());
+		writeString(out, principal.getEmail());
+
+		final Class<?>[] roleClasses = principal.getRoleClassArray();
+		writeInt(out, roleClasses.length);
+
+		for (Class<?> roleClass : roleClasses) {
+			writeString(out, roleClass.getName());
+		}
+
+		writeNames(out, principal.getPermissionSet());
+		writeNames(out, principal.getPermissionTrie().getExcluded());
+
+	}
+
+	/**
+	 * Reads a principal written by {@link #write(UserPrincipal, DataOutput)}.
+	 * 
+	 * @param in a {@link DataInput}. It cannot be null.
+	 * @return an {@link UserPrincipal}.
+	 * @throws IOException if <code>in</code> throws it, the version is unknown or a role class
+	 * cannot be found.
+	 */
+	public static UserPrincipal read(DataInput in) throws IOException {
+
+		if (in == null) {
+			throw new IllegalArgumentException("Parameter in cannot be null");
+		}
+
+		final int version = in.readUnsignedByte();
+
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unknown principal format version " + version);
+		}
+
+		final int flags = in.readUnsignedByte();
+		final int id = readInt(in);
+		final String login = readString(in);
+		final String name = readString(in);
+		final String email = readString(in);
+
+		final int roleCount = readLength(in);
+		final List<Class<?>> roleClasses = new ArrayList<Class<?>>(roleCount);
+
+		for (int i = 0; i < roleCount; i++) {
+			roleClasses.add(loadRoleClass(readString(in)));
+		}
+
+		final PermissionSet permissionSet = readNames(in);
+
+		// version 1 had no wildcard permissions, so nothing was excluded from them
+		final PermissionSet excluded = version >= 2 ? readNames(in) : PermissionSet.EMPTY;
+
+		return new UserPrincipal(id != 0 ? Integer.valueOf(id - 1) : null, login, name, email,
+				flags, roleClasses.toArray(new Class<?>[roleClasses.size()]), permissionSet,
+				PermissionTrie.compile(permissionSet, excluded));
+
+	}
+
+	/**
+	 * Writes the names of a set sorted and front-coded: each one as the length of the prefix it
+	 * shares with the previous one followed by the rest of it.
+	 */
+	private static void writeNames(DataOutput out, PermissionSet set) throws IOException {
+
+		final String[] names = new String[set.size()];
+		int count = 0;
+
+		for (int i = set.nextId(0); i >= 0; i = set.nextId(i + 1)) {
+			names[count++] = PermissionSymbolTable.getName(i);
+		}
+
+		Arrays.sort(names);
+		writeInt(out, names.length);
+
+		byte[] previous = new byte[0];
+
+		for (String name : names) {
+
+			final byte[] current = name.getBytes(UTF_8);
+			final int shared = sharedPrefix(previous, current);
+
+			writeInt(out, shared);
+			writeInt(out, current.length - shared);
+			out.write(current, shared, current.length - shared);
+
+			previous = current;
+
+		}
+
+	}
+
+	private static PermissionSet readNames(DataInput in) throws IOException {
+
+		final int count = readLength(in);
+		final PermissionSet.Builder builder = new PermissionSet.Builder();
+		byte[] previous = new byte[0];
+
+		for (int i = 0; i < count; i++) {
+
+			final int shared = readInt(in);
+			final int length = readLength(in);
+
+			if (shared > previous.length) {
+				throw new IOException("Invalid permission name prefix");
+			}
+
+			final byte[] current = Arrays.copyOf(previous, shared + length);
+			in.readFully(current, shared, length);
+			builder.add(new String(current, UTF_8));
+
+			previous = current;
+
+		}
+
+		return builder.build();
+
+	}
+
+	private static Class<?> loadRoleClass(String className) throws IOException {
+
+		if (className == null) {
+			throw new IOException("Null role class name");
+		}
+
+		Class<?> roleClass;
+
+		try {
+
+			final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			roleClass = Class.forName(className, false,
+					loader != null ? loader : UserPrincipalCodec.class.getClassLoader());
+
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("Role class not found: " + className);
+		}
+
+		if (Role.class.isAssignableFrom(roleClass) == false) {
+			throw new IOException("Not a role class: " + className);
+		}
+
+		return roleClass;
+
+	}
+
+	private static int sharedPrefix(byte[] first, byte[] second) {
+
+		final int maximum = Math.min(first.length, second.length);
+		int i = 0;
+
+		while (i < maximum && first[i] == second[i]) {
+			i++;
+		}
+
+		return i;
+
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length plus one, <code>0</code> meaning <code>null</code>,
+	 * followed by its UTF-8 bytes.
+	 */
+	private static void writeString(DataOutput out, String string) throws IOException {
+
+		if (string == null) {
+			writeInt(out, 0);
+		}
+		else {
+
+			final byte[] bytes = string.getBytes(UTF_8);
+			writeInt(out, bytes.length + 1);
+			out.write(bytes);
+
+		}
+
+	}
+
+	private static String readString(DataInput in) throws IOException {
+
+		final int length = readLength(in);
+
+		if (length == 0) {
+			return null;
+		}
+
+		final byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+
+		return new String(bytes, UTF_8);
+
+	}
+
+	/**
+	 * Writes an <code>int</code> 7 bits at a time, least significant first, setting the highest
+	 * bit of each byte but the last one.
+	 */
+	private static void writeInt(DataOutput out, int value) throws IOException {
+
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte(value);
+
+	}
+
+	private static int readInt(DataInput in) throws IOException {
+
+		int value = 0;
+
+		for (int shift = 0; shift < 35; shift += 7) {
+
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+
+		}
+
+		throw new IOException("Malformed variable-length int");
+
+	}
+
+	private static int readLength(DataInput in) throws IOException {
+
+		final int length = readInt(in);
+
+		if (length < 0) {
+			throw new IOException("Negative length");
+		}
+
+		return length;
+
+	}
+
+}
@@ -0,0 +1,104 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller;
+
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.entity.UserGroup;
+
+/**
+ * Controller for the materialized direct grants of users (see
+ * {@link br.com.arsmachina.authentication.dao.DirectPermissionDAO}): the permissions of their
+ * permission groups, own or inherited through user groups, minus the ones they removed by exact
+ * name. They do not include implied permissions or names covered by wildcards, so they are not a
+ * replacement for {@link User#getEffectivePermissions()}. It is kept in sync by
+ * {@link br.com.arsmachina.authentication.controller.impl.UserControllerImpl},
+ * {@link br.com.arsmachina.authentication.controller.impl.PermissionGroupControllerImpl} and
+ * {@link br.com.arsmachina.authentication.controller.impl.UserGroupControllerImpl} when they are
+ * given one, including the removed permissions changed through
+ * {@link User#addRemovedPermission(br.com.arsmachina.authentication.entity.Permission)} and
+ * {@link User#removeRemovedPermission(br.com.arsmachina.authentication.entity.Permission)}
+ * once the user is saved or updated.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public interface DirectPermissionController {
+
+	/**
+	 * Updates the direct grants of an user after it was saved or updated.
+	 * 
+	 * @param user an {@link User}. It cannot be null and must have an id.
+	 * @return the number of rows deleted or inserted.
+	 */
+	int refresh(User user);
+
+	/**
+	 * Updates the direct grants of the users of a permission group after it was updated.
+	 * 
+	 * @param permissionGroup a {@link PermissionGroup}. It cannot be null and must have an id.
+	 * @return the number of rows deleted or inserted.
+	 */
+	int refresh(PermissionGroup permissionGroup);
+
+	/**
+	 * Removes the direct grants given only by a permission group before it is removed.
+	 * 
+	 * @param permissionGroup a {@link PermissionGroup}. It cannot be null and must have an id.
+	 * @return the number of rows deleted.
+	 */
+	int revoke(PermissionGroup permissionGroup);
+
+	/**
+	 * Updates the direct grants of the users of an user group and all its descendants after users
+	 * were added to or removed from it or it was moved.
+	 * 
+	 * @param userGroup an {@link UserGroup}. It cannot be null and must have an id.
+	 * @return the number of rows deleted or inserted.
+	 */
+	int refresh(UserGroup userGroup);
+
+	/**
+	 * Removes the direct grants given to its users only by an user group before it is removed.
+	 * 
+	 * @param userGroup an {@link UserGroup}. It cannot be null and must have an id.
+	 * @return the number of rows deleted.
+	 */
+	int revoke(UserGroup userGroup);
+
+	/**
+	 * Removes all direct grants of an user before it is removed.
+	 * 
+	 * @param user an {@link User}. It cannot be null and must have an id.
+	 * @return the number of rows deleted.
+	 */
+	int delete(User user);
+
+	/**
+	 * Tells if an user has a permission directly, according to the materialized direct grants.
+	 * 
+	 * @param userId an {@link Integer}. It cannot be null.
+	 * @param permissionName a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean hasPermission(Integer userId, String permissionName);
+
+	/**
+	 * Recomputes all materialized direct grants.
+	 * 
+	 * @return the number of rows after the rebuild.
+	 */
+	int rebuild();
+
+}
@@ -0,0 +1,87 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller;
+
+/**
+ * Immutable description of a change of an user's encrypted password, used by
+ * {@link UserController#replacePasswords(java.util.Collection)}.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class PasswordChange {
+
+	final private Integer userId;
+
+	final private String oldPassword;
+
+	final private String newPassword;
+
+	/**
+	 * Single constructor of this class.
+	 * 
+	 * @param userId an {@link Integer}. It cannot be null.
+	 * @param oldPassword a {@link String} containing the encrypted password to be replaced. It
+	 * cannot be null.
+	 * @param newPassword a {@link String} containing the new encrypted password. It cannot be
+	 * null.
+	 */
+	public PasswordChange(Integer userId, String oldPassword, String newPassword) {
+
+		if (userId == null) {
+			throw new IllegalArgumentException("Parameter userId cannot be null");
+		}
+
+		if (oldPassword == null) {
+			throw new IllegalArgumentException("Parameter oldPassword cannot be null");
+		}
+
+		if (newPassword == null) {
+			throw new IllegalArgumentException("Parameter newPassword cannot be null");
+		}
+
+		this.userId = userId;
+		this.oldPassword = oldPassword;
+		this.newPassword = newPassword;
+
+	}
+
+	/**
+	 * Returns the value of the <code>userId</code> property.
+	 * 
+	 * @return an {@link Integer}.
+	 */
+	public Integer getUserId() {
+		return userId;
+	}
+
+	/**
+	 * Returns the value of the <code>oldPassword</code> property.
+	 * 
+	 * @return a {@link String}.
+	 */
+	public String getOldPassword() {
+		return oldPassword;
+	}
+
+	/**
+	 * Returns the value of the <code>newPassword</code> property.
+	 * 
+	 * @return a {@link String}.
+	 */
+	public String getNewPassword() {
+		return newPassword;
+	}
+
+}
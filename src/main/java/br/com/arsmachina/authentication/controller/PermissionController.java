@@ -15,6 +15,7 @@
 package br.com.arsmachina.authentication.controller;
 
 import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.permission.PermissionImplications;
 import br.com.arsmachina.controller.Controller;
 
 /**
@@ -32,4 +33,13 @@ public interface PermissionController extends Controller<Permission, Integer> {
 	 */
 	public Permission findByName(String name);
 
+	/**
+	 * Returns the implications between permissions owned by this controller. Permissions implied
+	 * through them are part of the effective permissions of the users loaded by
+	 * {@link UserController} for authentication.
+	 * 
+	 * @return a {@link PermissionImplications}.
+	 */
+	public PermissionImplications getPermissionImplications();
+
 }
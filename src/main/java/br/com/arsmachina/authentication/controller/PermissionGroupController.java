@@ -14,9 +14,12 @@
 
 package br.com.arsmachina.authentication.controller;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.User;
 import br.com.arsmachina.authentication.entity.UserGroup;
 import br.com.arsmachina.controller.Controller;
 
@@ -45,4 +48,23 @@ public interface PermissionGroupController extends Controller<PermissionGroup, I
 	 */
 	public List<PermissionGroup> findByUserGroup(UserGroup userGroup);
 
+	/**
+	 * Returns the permission groups owned by the user groups a given user belongs to, directly or
+	 * through nested groups.
+	 * 
+	 * @param user an {@link User}. It cannot be null.
+	 * @return a {@link List} of {@link PermissionGroup}s.
+	 */
+	public List<PermissionGroup> findInheritedByUser(User user);
+
+	/**
+	 * Returns the permission groups inherited by some users, like
+	 * {@link #findInheritedByUser(User)} does for one, with a single query.
+	 * 
+	 * @param userIds a {@link Collection} of {@link Integer}s. It cannot be null.
+	 * @return a {@link Map} from user id to a {@link List} of {@link PermissionGroup}s. Users that
+	 * inherit no permission group are not in it.
+	 */
+	public Map<Integer, List<PermissionGroup>> findInheritedByUsers(Collection<Integer> userIds);
+
 }
@@ -0,0 +1,36 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller;
+
+import br.com.arsmachina.authentication.entity.User;
+
+/**
+ * Listener notified by {@link br.com.arsmachina.authentication.controller.impl.UserControllerImpl}
+ * when an user is changed or removed, so that anything derived from the user's state can be
+ * discarded.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public interface UserChangeListener {
+
+	/**
+	 * Invoked after an user is updated, removed, logged out or has its password changed and, if
+	 * the change was made in a transaction, after it commits.
+	 * 
+	 * @param id an {@link Integer} containing the id of the {@link User}. It is never null.
+	 */
+	void userChanged(Integer id);
+
+}
@@ -14,6 +14,9 @@
 
 package br.com.arsmachina.authentication.controller;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import br.com.arsmachina.authentication.entity.Role;
@@ -33,7 +36,11 @@ public interface UserController extends Controller<User, Integer> {
 	 * 
 	 * @param login a <code>String</code>.
 	 * @return
+	 * @deprecated Use {@link #loadForAuthentication(String)} and
+	 * {@link br.com.arsmachina.authentication.encryption.PasswordEncrypter#matches(String, String)}
+	 * instead, which work with salted encryption schemes.
 	 */
+	@Deprecated
 	User findByLoginAndPassword(String login, String password);
 
 	/**
@@ -55,6 +62,18 @@ public interface UserController extends Controller<User, Integer> {
 	 */
 	User loadForAuthentication(String login);
 
+	/**
+	 * Loads the user with a given id, with the same data as
+	 * {@link #loadForAuthentication(String)}, or <code>null</code> if no such user exists. It is
+	 * meant for users whose credentials were already verified, such as the ones found in a
+	 * credential cache: the user is looked up by primary key, so Hibernate serves it from the
+	 * session or the second-level cache without querying the database when it is there.
+	 * 
+	 * @param id an {@link Integer}. It cannot be null.
+	 * @return an {@link User}.
+	 */
+	User loadForAuthentication(Integer id);
+
 	/**
 	 * Loads the user and their permissions with a given login or
 	 * <code>null</code> if no such user exists. This method prefetches the
@@ -82,6 +101,50 @@ public interface UserController extends Controller<User, Integer> {
 	 * @return a <code>boolean</code>.
 	 */
 	boolean existsUserWithLogin(String login);
+
+	/**
+	 * Returns, in ascending order, at most <code>maximum</code> logins greater than
+	 * <code>afterLogin</code>, so all logins can be scanned in pages without loading users.
+	 * 
+	 * @param afterLogin a {@link String} or <code>null</code> to start from the first login.
+	 * @param maximum an <code>int</code>. It must be positive.
+	 * @return a {@link List} of {@link String}s.
+	 */
+	List<String> findLogins(String afterLogin, int maximum);
+
+	/**
+	 * Returns, ordered by login, all users that have a permission through one of their own
+	 * permission groups and did not remove it. The database does not apply wildcards,
+	 * implications nor groups inherited through user groups. Use
+	 * {@link #findWithPermission(List, String)} when they matter.
+	 * 
+	 * @param name a {@link String} containing the permission name. It cannot be null.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> findByPermission(String name);
+
+	/**
+	 * Returns, ordered by login, at most <code>maximum</code> users whose logins are greater than
+	 * <code>afterLogin</code> and that have a permission, like {@link #findByPermission(String)}.
+	 * 
+	 * @param name a {@link String} containing the permission name. It cannot be null.
+	 * @param afterLogin a {@link String} or <code>null</code> to start from the first user.
+	 * @param maximum an <code>int</code>. It must be positive.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> findByPermission(String name, String afterLogin, int maximum);
+
+	/**
+	 * Returns an iterator over all users that have a permission, ordered by login, that loads them
+	 * <code>pageSize</code> at a time through {@link #findByPermission(String, String, int)}, each
+	 * page in its own read-only transaction, so it can be used outside a transaction. The users
+	 * are detached once their page is loaded, unless a session is open around the iteration.
+	 * 
+	 * @param name a {@link String} containing the permission name. It cannot be null.
+	 * @param pageSize an <code>int</code>. It must be positive.
+	 * @return an {@link Iterator} of {@link User}s.
+	 */
+	Iterator<User> iterateByPermission(String name, int pageSize);
 	
 	/**
 	 * Mark an {@link User} as logged in.
@@ -96,6 +159,37 @@ public interface UserController extends Controller<User, Integer> {
 	 * @param user an {@link User}. It cannot be null.
 	 */
 	void markLoggedOut(User user);
+
+	/**
+	 * Applies a batch of encrypted password changes in a single transaction. Each change is only
+	 * applied if the user's stored password is still the change's old password. The passwords
+	 * are stored as given, without being encrypted again.
+	 * 
+	 * @param changes a {@link Collection} of {@link PasswordChange}s. It cannot be null.
+	 * @return the number of passwords actually changed.
+	 */
+	int replacePasswords(Collection<PasswordChange> changes);
+
+	/**
+	 * Tells which of some users have an effective permission, directly or through a wildcard.
+	 * Users whose effective permissions were not compiled yet are loaded in batches.
+	 * 
+	 * @param userIds a {@link List} of user ids. It cannot be null nor contain nulls.
+	 * @param permissionName a {@link String}. It cannot be null.
+	 * @return a {@link BitSet} whose bit <code>i</code> is set if, and only if, the user with id
+	 * <code>userIds.get(i)</code> exists and has the permission.
+	 */
+	BitSet findWithPermission(List<Integer> userIds, String permissionName);
+
+	/**
+	 * Returns the ids, in the given order, of the users that have an effective permission. It is
+	 * a convenience over {@link #findWithPermission(List, String)}.
+	 * 
+	 * @param userIds a {@link List} of user ids. It cannot be null nor contain nulls.
+	 * @param permissionName a {@link String}. It cannot be null.
+	 * @return a {@link List} of user ids.
+	 */
+	List<Integer> filterByPermission(List<Integer> userIds, String permissionName);
 	
 	/**
 	 * Changes the password of a given user to a randomly-generated one.
@@ -14,6 +14,10 @@
 
 package br.com.arsmachina.authentication.controller;
 
+import java.util.Iterator;
+import java.util.List;
+
+import br.com.arsmachina.authentication.entity.User;
 import br.com.arsmachina.authentication.entity.UserGroup;
 import br.com.arsmachina.controller.Controller;
 
@@ -32,4 +36,75 @@ public interface UserGroupController extends Controller<UserGroup, Integer> {
 	 */
 	public UserGroup findByName(String name);
 
+	/**
+	 * Returns the number of members of a group without loading them.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @return an <code>int</code>.
+	 */
+	int countMembers(UserGroup group);
+
+	/**
+	 * Tells if an user is a member of a group without loading the group members.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param user an {@link User}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isMember(UserGroup group, User user);
+
+	/**
+	 * Adds an user to a group without loading the group members.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param user an {@link User}. It cannot be null.
+	 * @return <code>true</code> if the user was added, <code>false</code> if it already was a
+	 * member.
+	 */
+	boolean addMember(UserGroup group, User user);
+
+	/**
+	 * Removes an user from a group without loading the group members.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param user an {@link User}. It cannot be null.
+	 * @return <code>true</code> if the user was a member, <code>false</code> otherwise.
+	 */
+	boolean removeMember(UserGroup group, User user);
+
+	/**
+	 * Returns, ordered by login, at most <code>maximum</code> members of a group whose logins are
+	 * greater than <code>afterLogin</code>. Pass the login of the last member of a page to get
+	 * the next one.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param afterLogin a {@link String} or <code>null</code> to start from the first member.
+	 * @param maximum an <code>int</code>. It must be positive.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> findMembers(UserGroup group, String afterLogin, int maximum);
+
+	/**
+	 * Returns an iterator over all members of a group, ordered by login, that loads them
+	 * <code>pageSize</code> at a time through {@link #findMembers(UserGroup, String, int)}, each
+	 * page in its own read-only transaction, so it can be used outside a transaction. The members
+	 * are detached once their page is loaded, unless a session is open around the iteration.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param pageSize an <code>int</code>. It must be positive.
+	 * @return an {@link Iterator} of {@link User}s.
+	 */
+	Iterator<User> iterateMembers(UserGroup group, int pageSize);
+
+	/**
+	 * Moves a group, with all its descendants, under another one and updates the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure} rows that changed.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param parent an {@link UserGroup} or <code>null</code> to make it a root group.
+	 * @throws IllegalArgumentException if <code>parent</code> is <code>group</code> or one of
+	 * its descendants.
+	 */
+	void setParent(UserGroup group, UserGroup parent);
+
 }
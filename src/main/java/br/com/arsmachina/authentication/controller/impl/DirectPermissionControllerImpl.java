@@ -0,0 +1,145 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller.impl;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.arsmachina.authentication.controller.DirectPermissionController;
+import br.com.arsmachina.authentication.dao.DirectPermissionDAO;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.entity.UserGroup;
+
+/**
+ * {@link DirectPermissionController} implementation.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class DirectPermissionControllerImpl implements DirectPermissionController {
+
+	final private DirectPermissionDAO dao;
+
+	/**
+	 * Single constructor of this class.
+	 * 
+	 * @param dao an {@link DirectPermissionDAO}. It cannot be <code>null</code>.
+	 */
+	public DirectPermissionControllerImpl(DirectPermissionDAO dao) {
+
+		if (dao == null) {
+			throw new IllegalArgumentException("Parameter dao cannot be null");
+		}
+
+		this.dao = dao;
+
+	}
+
+	@Transactional
+	public int refresh(User user) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		return dao.refreshUser(getId(user.getId()));
+
+	}
+
+	@Transactional
+	public int refresh(PermissionGroup permissionGroup) {
+
+		if (permissionGroup == null) {
+			throw new IllegalArgumentException("Parameter permissionGroup cannot be null");
+		}
+
+		return dao.refreshPermissionGroup(getId(permissionGroup.getId()));
+
+	}
+
+	@Transactional
+	public int revoke(PermissionGroup permissionGroup) {
+
+		if (permissionGroup == null) {
+			throw new IllegalArgumentException("Parameter permissionGroup cannot be null");
+		}
+
+		return dao.revokePermissionGroup(getId(permissionGroup.getId()));
+
+	}
+
+	@Transactional
+	public int refresh(UserGroup userGroup) {
+
+		if (userGroup == null) {
+			throw new IllegalArgumentException("Parameter userGroup cannot be null");
+		}
+
+		return dao.refreshUserGroup(getId(userGroup.getId()));
+
+	}
+
+	@Transactional
+	public int revoke(UserGroup userGroup) {
+
+		if (userGroup == null) {
+			throw new IllegalArgumentException("Parameter userGroup cannot be null");
+		}
+
+		return dao.revokeUserGroup(getId(userGroup.getId()));
+
+	}
+
+	@Transactional
+	public int delete(User user) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		return dao.deleteUser(getId(user.getId()));
+
+	}
+
+	@Transactional(readOnly = true)
+	public boolean hasPermission(Integer userId, String permissionName) {
+
+		if (userId == null) {
+			throw new IllegalArgumentException("Parameter userId cannot be null");
+		}
+
+		if (permissionName == null) {
+			throw new IllegalArgumentException("Parameter permissionName cannot be null");
+		}
+
+		return dao.hasPermission(userId, permissionName);
+
+	}
+
+	@Transactional
+	public int rebuild() {
+		return dao.rebuild();
+	}
+
+	private static Integer getId(Integer id) {
+
+		if (id == null) {
+			throw new IllegalArgumentException("Only persistent objects can be refreshed");
+		}
+
+		return id;
+
+	}
+
+}
@@ -14,6 +14,7 @@
 
 package br.com.arsmachina.authentication.controller.impl;
 
+import br.com.arsmachina.authentication.encryption.AbstractPasswordEncrypter;
 import br.com.arsmachina.authentication.encryption.PasswordEncrypter;
 
 /**
@@ -21,7 +22,7 @@ import br.com.arsmachina.authentication.encryption.PasswordEncrypter;
  * 
  * @author Thiago H. de Paula Figueiredo
  */
-public class DummyPasswordEncrypter implements PasswordEncrypter {
+public class DummyPasswordEncrypter extends AbstractPasswordEncrypter {
 
 	/**
 	 * Returns <code>password</code> unchanged.
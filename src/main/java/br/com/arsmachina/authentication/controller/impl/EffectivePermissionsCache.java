@@ -0,0 +1,293 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.authentication.controller.UserChangeListener;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+import br.com.arsmachina.authentication.permission.PermissionImplications;
+
+/**
+ * Bounded cache of compiled {@link EffectivePermissions} by user id, used by the bulk permission
+ * queries of {@link UserControllerImpl} so users already seen are not loaded again. The least
+ * recently used entries are evicted when there are more than <code>maximumSize</code>.
+ *
+ * An entry is dropped when its user is changed, so register this object as an
+ * {@link UserChangeListener} in {@link UserControllerImpl}, and when the user groups it belongs
+ * to change, so set it in {@link UserGroupControllerImpl} too. It is ignored when any permission
+ * group or one of the permission implications set through
+ * {@link #setPermissionImplications(PermissionImplications)} was changed after it was compiled,
+ * and when it is older than the maximum age (see {@link #setMaximumAge(long)}).
+ *
+ * This cache is for a single node: it is only invalidated by changes made through the
+ * controllers and entities of this JVM. Changes made by other nodes or directly in the database
+ * are only seen once the entries they affect reach the maximum age, so it bounds how long such
+ * changes can go unnoticed.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class EffectivePermissionsCache implements UserChangeListener {
+
+	/**
+	 * Default maximum number of entries.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+	/**
+	 * Default maximum age of an entry, in milliseconds.
+	 */
+	public static final long DEFAULT_MAXIMUM_AGE = 60000;
+
+	final private int maximumSize;
+
+	final private LinkedHashMap<Integer, CachedPermissions> entries;
+
+	final private AtomicLong version = new AtomicLong();
+
+	final private AtomicLong hits = new AtomicLong();
+
+	final private AtomicLong misses = new AtomicLong();
+
+	private volatile PermissionImplications permissionImplications;
+
+	private volatile long maximumAge = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAXIMUM_AGE);
+
+	/**
+	 * Constructor that uses the default maximum number of entries.
+	 */
+	public EffectivePermissionsCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * Constructor that receives the maximum number of entries.
+	 *
+	 * @param maximumSize an <code>int</code>. It must be positive.
+	 */
+	public EffectivePermissionsCache(int maximumSize) {
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Parameter maximumSize must be positive");
+		}
+
+		this.maximumSize = maximumSize;
+
+		entries = new LinkedHashMap<Integer, CachedPermissions>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CachedPermissions> eldest) {
+				return size() > EffectivePermissionsCache.this.maximumSize;
+			}
+
+		};
+
+	}
+
+	/**
+	 * Returns the effective permissions of an user, if they are in this cache, no permission
+	 * group or implication was changed since they were compiled and they are not older than the
+	 * maximum age.
+	 *
+	 * @param id an {@link Integer}. It cannot be null.
+	 * @return an {@link EffectivePermissions} or <code>null</code>.
+	 */
+	public EffectivePermissions get(Integer id) {
+
+		final long modelVersion = getModelVersion();
+		final long now = System.nanoTime();
+		EffectivePermissions permissions = null;
+
+		synchronized (this) {
+
+			final CachedPermissions entry = entries.get(id);
+
+			if (entry != null) {
+
+				if (entry.modelVersion == modelVersion && now - entry.cached < maximumAge) {
+					permissions = entry.permissions;
+				}
+				else {
+					entries.remove(id);
+				}
+
+			}
+
+		}
+
+		(permissions != null ? hits : misses).incrementAndGet();
+
+		return permissions;
+
+	}
+
+	/**
+	 * Returns a number that changes whenever an user is changed. Pass the value read before
+	 * loading users to {@link #put(Integer, EffectivePermissions, long, long)}, so an user changed
+	 * in the meantime is not cached.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns a number that changes whenever a permission group or a permission implication is
+	 * changed. Pass the value read before compiling permissions to
+	 * {@link #put(Integer, EffectivePermissions, long, long)}.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getModelVersion() {
+
+		final PermissionImplications implications = permissionImplications;
+
+		// both counts only grow, so their sum changes whenever one of them does
+		return PermissionGroup.getModificationCount()
+				+ (implications != null ? implications.getModificationCount() : 0);
+
+	}
+
+	/**
+	 * Sets the implications applied to the cached permissions, so entries compiled before they
+	 * change are ignored. {@link UserControllerImpl#setEffectivePermissionsCache(EffectivePermissionsCache)}
+	 * sets the ones of its {@link br.com.arsmachina.authentication.controller.PermissionController}.
+	 * Setting them drops all entries.
+	 *
+	 * @param permissionImplications a {@link PermissionImplications} or <code>null</code>.
+	 */
+	public synchronized void setPermissionImplications(PermissionImplications permissionImplications) {
+		this.permissionImplications = permissionImplications;
+		clear();
+	}
+
+	/**
+	 * Caches the effective permissions of an user.
+	 *
+	 * @param id an {@link Integer}. It cannot be null.
+	 * @param permissions an {@link EffectivePermissions}. It cannot be null.
+	 * @param version a <code>long</code> returned by {@link #getVersion()} before the user was
+	 * loaded.
+	 * @param modelVersion a <code>long</code> returned by {@link #getModelVersion()} before
+	 * <code>permissions</code> were compiled.
+	 */
+	public void put(Integer id, EffectivePermissions permissions, long version, long modelVersion) {
+
+		if (id == null) {
+			throw new IllegalArgumentException("Parameter id cannot be null");
+		}
+
+		if (permissions == null) {
+			throw new IllegalArgumentException("Parameter permissions cannot be null");
+		}
+
+		synchronized (this) {
+
+			// some user was changed after this one was loaded, maybe this one
+			if (this.version.get() != version) {
+				return;
+			}
+
+			entries.put(id, new CachedPermissions(permissions, modelVersion, System.nanoTime()));
+
+		}
+
+	}
+
+	/**
+	 * Sets for how long an entry is used after it is cached. The default value is
+	 * {@link #DEFAULT_MAXIMUM_AGE}.
+	 *
+	 * @param maximumAge a <code>long</code> in milliseconds. It must be positive.
+	 */
+	public void setMaximumAge(long maximumAge) {
+
+		if (maximumAge <= 0) {
+			throw new IllegalArgumentException("Parameter maximumAge must be positive");
+		}
+
+		this.maximumAge = TimeUnit.MILLISECONDS.toNanos(maximumAge);
+
+	}
+
+	/**
+	 * Removes the entry of an user.
+	 *
+	 * @param id an {@link Integer}. It cannot be null.
+	 */
+	public synchronized void userChanged(Integer id) {
+		version.incrementAndGet();
+		entries.remove(id);
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		version.incrementAndGet();
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of entries, including outdated ones not removed yet.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found a valid entry.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a valid entry.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	final private static class CachedPermissions {
+
+		final private EffectivePermissions permissions;
+
+		final private long modelVersion;
+
+		final private long cached;
+
+		CachedPermissions(EffectivePermissions permissions, long modelVersion, long cached) {
+			this.permissions = permissions;
+			this.modelVersion = modelVersion;
+			this.cached = cached;
+		}
+
+	}
+
+}
@@ -0,0 +1,336 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of all user logins, used by {@link UserControllerImpl} to answer that a login
+ * definitely does not exist without querying the database. Logins are only added, never
+ * removed: deleted or renamed logins just become false positives, which still go to the
+ * database. It is thread-safe and lock-free.
+ * 
+ * The filter can only answer after it was populated with all the existing logins (see
+ * {@link UserControllerImpl#populateLoginBloomFilter()}). Until then, {@link #isReady()} returns
+ * <code>false</code> and every lookup goes to the database.
+ * 
+ * Only this JVM's {@link UserControllerImpl} adds logins after that, so logins created by other
+ * nodes, imports or direct database writes would be reported as absent. To bound that, negative
+ * answers are only trusted for the maximum age (see {@link #setMaximumAge(long)}) after the last
+ * population started, and {@link UserControllerImpl#populateLoginBloomFilter()} should be invoked
+ * periodically, more often than that. Once the filter is too old, every lookup goes to the
+ * database again. A maximum age of <code>0</code> trusts the filter forever, which is only safe
+ * when all logins are created through the same {@link UserControllerImpl}.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class LoginBloomFilter {
+
+	/**
+	 * Default false positive rate.
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * Default maximum age, in milliseconds.
+	 */
+	public static final long DEFAULT_MAXIMUM_AGE = 300000;
+
+	final private static int MAXIMUM_HASHES = 16;
+
+	final private AtomicLongArray words;
+
+	final private long bits;
+
+	final private int hashes;
+
+	final private AtomicLong bitsSet = new AtomicLong();
+
+	final private AtomicLong negatives = new AtomicLong();
+
+	final private AtomicLong falsePositives = new AtomicLong();
+
+	final private AtomicLong positives = new AtomicLong();
+
+	private volatile boolean ready;
+
+	private volatile long populated;
+
+	private volatile long maximumAge = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAXIMUM_AGE);
+
+	/**
+	 * Constructor that uses the default false positive rate.
+	 * 
+	 * @param expectedLogins an <code>int</code> containing the expected number of logins. It must
+	 * be positive.
+	 */
+	public LoginBloomFilter(int expectedLogins) {
+		this(expectedLogins, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Constructor that receives all parameters.
+	 * 
+	 * @param expectedLogins an <code>int</code> containing the expected number of logins. It must
+	 * be positive. The filter works with more logins, but its false positive rate grows.
+	 * @param falsePositiveRate a <code>double</code> containing the desired false positive rate
+	 * when there are <code>expectedLogins</code> logins. It must be between 0 and 1, exclusive.
+	 */
+	public LoginBloomFilter(int expectedLogins, double falsePositiveRate) {
+
+		if (expectedLogins <= 0) {
+			throw new IllegalArgumentException("Parameter expectedLogins must be positive");
+		}
+
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException(
+					"Parameter falsePositiveRate must be between 0 and 1, exclusive");
+		}
+
+		final double ln2 = Math.log(2);
+		final double optimalBits = -expectedLogins * Math.log(falsePositiveRate) / (ln2 * ln2);
+		final int length = (int) Math.min(Integer.MAX_VALUE - 8, Math.ceil(optimalBits / 64));
+
+		words = new AtomicLongArray(length);
+		bits = 64L * length;
+		hashes = (int) Math.max(1, Math.min(MAXIMUM_HASHES, Math.round(bits * ln2
+				/ expectedLogins)));
+
+	}
+
+	/**
+	 * Adds a login to this filter.
+	 * 
+	 * @param login a {@link String}. It cannot be null.
+	 */
+	public void add(String login) {
+
+		final long hash = hash(login);
+		final int h1 = (int) hash;
+		final int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < hashes; i++) {
+
+			final long bit = index(h1 + i * h2);
+			final int word = (int) (bit >>> 6);
+			final long mask = 1L << bit;
+
+			long value;
+
+			do {
+
+				value = words.get(word);
+
+				if ((value & mask) != 0) {
+					break;
+				}
+
+			}
+			while (words.compareAndSet(word, value, value | mask) == false);
+
+			if ((value & mask) == 0) {
+				bitsSet.incrementAndGet();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Tells if a login may have been added to this filter. <code>false</code> means it was
+	 * definitely not added.
+	 * 
+	 * @param login a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean mightContain(String login) {
+
+		final long hash = hash(login);
+		final int h1 = (int) hash;
+		final int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < hashes; i++) {
+
+			final long bit = index(h1 + i * h2);
+
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				negatives.incrementAndGet();
+				return false;
+			}
+
+		}
+
+		positives.incrementAndGet();
+
+		return true;
+
+	}
+
+	/**
+	 * Tells if this filter contains all existing logins and was populated recently enough, so its
+	 * negative answers can be trusted.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isReady() {
+
+		final long maximumAge = this.maximumAge;
+
+		return ready && (maximumAge == 0 || System.nanoTime() - populated < maximumAge);
+
+	}
+
+	/**
+	 * Marks this filter as containing all logins that existed when a population started.
+	 * 
+	 * @param populationStart a <code>long</code> containing the value of
+	 * {@link System#nanoTime()} read before the logins were scanned.
+	 */
+	public void setReady(long populationStart) {
+		populated = populationStart;
+		ready = true;
+	}
+
+	/**
+	 * Marks this filter as containing all existing logins now.
+	 */
+	public void setReady() {
+		setReady(System.nanoTime());
+	}
+
+	/**
+	 * Sets for how long after the last population started the negative answers are trusted. The
+	 * default value is {@link #DEFAULT_MAXIMUM_AGE}.
+	 * 
+	 * @param maximumAge a <code>long</code> in milliseconds. <code>0</code> means forever. It
+	 * cannot be negative.
+	 */
+	public void setMaximumAge(long maximumAge) {
+
+		if (maximumAge < 0) {
+			throw new IllegalArgumentException("Parameter maximumAge cannot be negative");
+		}
+
+		this.maximumAge = TimeUnit.MILLISECONDS.toNanos(maximumAge);
+
+	}
+
+	/**
+	 * Records that a positive answer was wrong, that is, the login did not exist.
+	 */
+	public void recordFalsePositive() {
+		falsePositives.incrementAndGet();
+	}
+
+	/**
+	 * Returns the false positive rate expected from the current number of bits set.
+	 * 
+	 * @return a <code>double</code> between 0 and 1.
+	 */
+	public double getExpectedFalsePositiveRate() {
+		return Math.pow((double) bitsSet.get() / bits, hashes);
+	}
+
+	/**
+	 * Returns the fraction of lookups for logins that did not exist that were answered with
+	 * <code>true</code>, as recorded through {@link #recordFalsePositive()}.
+	 * 
+	 * @return a <code>double</code> between 0 and 1 or <code>0</code> if there was no such
+	 * lookup.
+	 */
+	public double getObservedFalsePositiveRate() {
+
+		final long falsePositives = this.falsePositives.get();
+		final long lookups = falsePositives + negatives.get();
+
+		return lookups > 0 ? (double) falsePositives / lookups : 0;
+
+	}
+
+	/**
+	 * Returns the number of lookups answered with <code>false</code>, each one a saved query.
+	 * 
+	 * @return a <code>long</code>.
+	 */
+	public long getNegativeCount() {
+		return negatives.get();
+	}
+
+	/**
+	 * Returns the number of lookups answered with <code>true</code>.
+	 * 
+	 * @return a <code>long</code>.
+	 */
+	public long getPositiveCount() {
+		return positives.get();
+	}
+
+	/**
+	 * Returns the number of wrong positive answers recorded.
+	 * 
+	 * @return a <code>long</code>.
+	 */
+	public long getFalsePositiveCount() {
+		return falsePositives.get();
+	}
+
+	/**
+	 * Returns the number of bits of this filter.
+	 * 
+	 * @return a <code>long</code>.
+	 */
+	public long getBitCount() {
+		return bits;
+	}
+
+	/**
+	 * Returns the number of hash functions used by this filter.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	public int getHashCount() {
+		return hashes;
+	}
+
+	private long index(int hash) {
+		return (hash & 0xffffffffL) % bits;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the login chars, followed by the MurmurHash3 finalizer. Its two halves
+	 * are used as independent hashes.
+	 */
+	private static long hash(String login) {
+
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < login.length(); i++) {
+			hash ^= login.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+
+	}
+
+}
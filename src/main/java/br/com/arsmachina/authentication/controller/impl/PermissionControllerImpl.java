@@ -19,6 +19,7 @@ import org.springframework.transaction.annotation.Transactional;
 import br.com.arsmachina.authentication.controller.PermissionController;
 import br.com.arsmachina.authentication.dao.PermissionDAO;
 import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.permission.PermissionImplications;
 import br.com.arsmachina.controller.impl.SpringControllerImpl;
 
 /**
@@ -31,6 +32,8 @@ public class PermissionControllerImpl extends SpringControllerImpl<Permission, I
 
 	private PermissionDAO dao;
 
+	final private PermissionImplications permissionImplications = new PermissionImplications();
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -52,4 +55,8 @@ public class PermissionControllerImpl extends SpringControllerImpl<Permission, I
 		return dao.findByName(name);
 	}
 
+	public PermissionImplications getPermissionImplications() {
+		return permissionImplications;
+	}
+
 }
@@ -14,13 +14,17 @@
 
 package br.com.arsmachina.authentication.controller.impl;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.transaction.annotation.Transactional;
 
+import br.com.arsmachina.authentication.controller.DirectPermissionController;
 import br.com.arsmachina.authentication.controller.PermissionGroupController;
 import br.com.arsmachina.authentication.dao.PermissionGroupDAO;
 import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.User;
 import br.com.arsmachina.authentication.entity.UserGroup;
 import br.com.arsmachina.controller.impl.SpringControllerImpl;
 
@@ -34,6 +38,8 @@ public class PermissionGroupControllerImpl extends SpringControllerImpl<Permissi
 
 	private PermissionGroupDAO dao;
 
+	private DirectPermissionController directPermissionController;
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -44,6 +50,73 @@ public class PermissionGroupControllerImpl extends SpringControllerImpl<Permissi
 		this.dao = dao;
 	}
 
+	@Override
+	@Transactional
+	public void save(PermissionGroup permissionGroup) {
+
+		super.save(permissionGroup);
+
+		if (directPermissionController != null) {
+			directPermissionController.refresh(permissionGroup);
+		}
+
+	}
+
+	@Override
+	@Transactional
+	public PermissionGroup update(PermissionGroup permissionGroup) {
+
+		permissionGroup = super.update(permissionGroup);
+
+		if (directPermissionController != null) {
+			directPermissionController.refresh(permissionGroup);
+		}
+
+		return permissionGroup;
+
+	}
+
+	@Override
+	@Transactional
+	public void delete(PermissionGroup permissionGroup) {
+
+		if (permissionGroup == null) {
+			throw new IllegalArgumentException("Parameter permissionGroup cannot be null");
+		}
+
+		if (directPermissionController != null && permissionGroup.getId() != null) {
+			directPermissionController.revoke(permissionGroup);
+		}
+
+		super.delete(permissionGroup);
+
+	}
+
+	@Override
+	@Transactional
+	public void delete(Integer id) {
+
+		final PermissionGroup permissionGroup = dao.findById(id);
+
+		if (permissionGroup != null) {
+			delete(permissionGroup);
+		}
+
+	}
+
+	/**
+	 * Sets the controller of the materialized direct grants, which are refreshed for the
+	 * users, own or inherited through its owner, of every permission group saved, updated or
+	 * removed through this controller.
+	 * 
+	 * @param directPermissionController an {@link DirectPermissionController} or
+	 * <code>null</code>.
+	 */
+	public void setDirectPermissionController(
+			DirectPermissionController directPermissionController) {
+		this.directPermissionController = directPermissionController;
+	}
+
 	@Transactional(readOnly = true)
 	public PermissionGroup findByName(String name) {
 		return dao.findByName(name);
@@ -54,4 +127,26 @@ public class PermissionGroupControllerImpl extends SpringControllerImpl<Permissi
 		return dao.findByUserGroup(userGroup);
 	}
 
+	@Transactional(readOnly = true)
+	public List<PermissionGroup> findInheritedByUser(User user) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		return dao.findInheritedByUser(user);
+
+	}
+
+	@Transactional(readOnly = true)
+	public Map<Integer, List<PermissionGroup>> findInheritedByUsers(Collection<Integer> userIds) {
+
+		if (userIds == null) {
+			throw new IllegalArgumentException("Parameter userIds cannot be null");
+		}
+
+		return dao.findInheritedByUsers(userIds);
+
+	}
+
 }
@@ -14,13 +14,29 @@
 
 package br.com.arsmachina.authentication.controller.impl;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import br.com.arsmachina.authentication.controller.DirectPermissionController;
+import br.com.arsmachina.authentication.controller.PasswordChange;
 import br.com.arsmachina.authentication.controller.PermissionController;
 import br.com.arsmachina.authentication.controller.PermissionGroupController;
+import br.com.arsmachina.authentication.controller.UserChangeListener;
 import br.com.arsmachina.authentication.controller.UserController;
 import br.com.arsmachina.authentication.dao.UserDAO;
 import br.com.arsmachina.authentication.encryption.PasswordEncrypter;
@@ -28,6 +44,9 @@ import br.com.arsmachina.authentication.entity.Permission;
 import br.com.arsmachina.authentication.entity.PermissionGroup;
 import br.com.arsmachina.authentication.entity.Role;
 import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+import br.com.arsmachina.authentication.permission.PermissionImplications;
+import br.com.arsmachina.authentication.permission.PermissionSymbolTable;
 import br.com.arsmachina.controller.impl.SpringControllerImpl;
 
 /**
@@ -40,6 +59,10 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 
 	final private static int GENERATED_PASSWORD_LENGTH = 7;
 
+	final private static int LOGIN_PAGE_SIZE = 1000;
+
+	final private static int BULK_BATCH_SIZE = 500;
+
 	private Random random = new Random();
 
 	private UserDAO dao;
@@ -52,6 +75,18 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 
 	private PermissionGroupController permissionGroupController;
 
+	final private List<UserChangeListener> listeners = new CopyOnWriteArrayList<UserChangeListener>();
+
+	private LoginBloomFilter loginBloomFilter;
+
+	private boolean inheritPermissionGroups;
+
+	private EffectivePermissionsCache effectivePermissionsCache;
+
+	private DirectPermissionController directPermissionController;
+
+	private UserController transactionalProxy;
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -129,7 +164,16 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 
 	@Transactional(readOnly = true)
 	public User findByLogin(String login) {
-		return dao.findByLogin(login);
+
+		if (isLoginAbsent(login)) {
+			return null;
+		}
+
+		final User user = dao.findByLogin(login);
+		recordLookup(user != null);
+
+		return user;
+
 	}
 
 	@Transactional(readOnly = true)
@@ -157,6 +201,14 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 
 		super.save(user);
 
+		if (directPermissionController != null) {
+			directPermissionController.refresh(user);
+		}
+
+		if (loginBloomFilter != null && user.getLogin() != null) {
+			loginBloomFilter.add(user.getLogin());
+		}
+
 	}
 
 	@Override
@@ -164,23 +216,303 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 	public User update(User user) {
 
 		encryptPassword((br.com.arsmachina.authentication.entity.User) user);
-		return super.update(user);
+		user = super.update(user);
+
+		if (directPermissionController != null) {
+			directPermissionController.refresh(user);
+		}
+
+		// the login may have been changed
+		if (loginBloomFilter != null && user.getLogin() != null) {
+			loginBloomFilter.add(user.getLogin());
+		}
+
+		fireUserChanged(user.getId());
+
+		return user;
+
+	}
+
+	@Override
+	@Transactional
+	public void delete(User user) {
+
+		if (directPermissionController != null && user.getId() != null) {
+			directPermissionController.delete(user);
+		}
+
+		super.delete(user);
+		fireUserChanged(user.getId());
+
+	}
+
+	@Override
+	@Transactional
+	public void delete(Integer id) {
+
+		final User user = directPermissionController != null ? dao.findById(id) : null;
+
+		if (user != null) {
+			directPermissionController.delete(user);
+		}
+
+		super.delete(id);
+		fireUserChanged(id);
 
 	}
 
 	@Transactional(readOnly = true)
 	public User loadForAuthentication(String login) {
-		return dao.loadForAuthentication(login);
+
+		if (isLoginAbsent(login)) {
+			return null;
+		}
+
+		final User user = dao.loadForAuthentication(login);
+		recordLookup(user != null);
+		preparePermissions(user);
+
+		return user;
+
+	}
+
+	@Transactional(readOnly = true)
+	public User loadForAuthentication(Integer id) {
+
+		if (id == null) {
+			throw new IllegalArgumentException("Parameter id cannot be null");
+		}
+
+		final User user = dao.findById(id);
+		preparePermissions(user);
+
+		return user;
+
 	}
 
 	@Transactional(readOnly = true)
 	public User loadEverything(String login) {
-		return dao.loadEverything(login);
+
+		final User user = dao.loadEverything(login);
+		preparePermissions(user);
+
+		return user;
+
+	}
+
+	private void preparePermissions(User user) {
+
+		if (user != null) {
+
+			user.setPermissionImplications(permissionController.getPermissionImplications());
+
+			if (inheritPermissionGroups) {
+				user.setInheritedPermissionGroups(permissionGroupController.findInheritedByUser(user));
+			}
+
+		}
+
+	}
+
+	/**
+	 * Prepares the permissions of some users like {@link #preparePermissions(User)}, loading the
+	 * inherited permission groups of all of them with a single query.
+	 */
+	private void preparePermissions(List<User> users, Collection<Integer> ids) {
+
+		final PermissionImplications implications = permissionController.getPermissionImplications();
+		Map<Integer, List<PermissionGroup>> inherited = null;
+
+		if (inheritPermissionGroups && users.isEmpty() == false) {
+			inherited = permissionGroupController.findInheritedByUsers(ids);
+		}
+
+		for (User user : users) {
+
+			user.setPermissionImplications(implications);
+
+			if (inherited != null) {
+
+				final List<PermissionGroup> groups = inherited.get(user.getId());
+				user.setInheritedPermissionGroups(groups != null ? groups
+						: Collections.<PermissionGroup> emptyList());
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Defines whether {@link #loadForAuthentication(String)} and {@link #loadEverything(String)}
+	 * also load the permission groups owned by the user groups the user belongs to, directly or
+	 * through nested groups, with one extra query. {@link #findWithPermission(List, String)} loads
+	 * them with one extra query per batch of users. The default value is <code>false</code>.
+	 * 
+	 * @param inheritPermissionGroups a <code>boolean</code>.
+	 */
+	public void setInheritPermissionGroups(boolean inheritPermissionGroups) {
+		this.inheritPermissionGroups = inheritPermissionGroups;
 	}
 
 	@Transactional(readOnly = true)
 	public boolean existsUserWithLogin(String login) {
-		return dao.hasUserWithLogin(login);
+
+		if (isLoginAbsent(login)) {
+			return false;
+		}
+
+		final boolean exists = dao.hasUserWithLogin(login);
+		recordLookup(exists);
+
+		return exists;
+
+	}
+
+	@Transactional(readOnly = true)
+	public List<String> findLogins(String afterLogin, int maximum) {
+
+		if (maximum <= 0) {
+			throw new IllegalArgumentException("Parameter maximum must be positive.");
+		}
+
+		return dao.findLogins(afterLogin, maximum);
+
+	}
+
+	@Transactional(readOnly = true)
+	public List<User> findByPermission(String name) {
+
+		if (name == null) {
+			throw new IllegalArgumentException("Parameter name cannot be null.");
+		}
+
+		return dao.findByPermission(name);
+
+	}
+
+	@Transactional(readOnly = true)
+	public List<User> findByPermission(String name, String afterLogin, int maximum) {
+
+		if (name == null) {
+			throw new IllegalArgumentException("Parameter name cannot be null.");
+		}
+
+		if (maximum <= 0) {
+			throw new IllegalArgumentException("Parameter maximum must be positive.");
+		}
+
+		return dao.findByPermission(name, afterLogin, maximum);
+
+	}
+
+	public Iterator<User> iterateByPermission(String name, int pageSize) {
+
+		if (name == null) {
+			throw new IllegalArgumentException("Parameter name cannot be null.");
+		}
+
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Parameter pageSize must be positive.");
+		}
+
+		if (transactionalProxy == null) {
+			throw new IllegalStateException("No transactional proxy was set");
+		}
+
+		return new PermissionUserIterator(transactionalProxy, name, pageSize);
+
+	}
+
+	/**
+	 * Sets the transactional proxy of this controller, the bean other beans see, through which
+	 * {@link #iterateByPermission(String, int)} loads each page. A page loaded through
+	 * <code>this</code> would bypass the proxy and run outside any transaction.
+	 * 
+	 * @param transactionalProxy an {@link UserController} or <code>null</code>.
+	 */
+	public void setTransactionalProxy(UserController transactionalProxy) {
+		this.transactionalProxy = transactionalProxy;
+	}
+
+	/**
+	 * Sets the controller of the materialized direct grants, which are refreshed after every user
+	 * saved or updated through this controller and deleted before every user removed through it.
+	 * 
+	 * @param directPermissionController an {@link DirectPermissionController} or
+	 * <code>null</code>.
+	 */
+	public void setDirectPermissionController(
+			DirectPermissionController directPermissionController) {
+		this.directPermissionController = directPermissionController;
+	}
+
+	/**
+	 * Sets the Bloom filter used to avoid querying logins that do not exist. It is only used after
+	 * {@link #populateLoginBloomFilter()} is invoked and while it is not older than its maximum
+	 * age. Set it to <code>null</code> to stop using it.
+	 * 
+	 * @param loginBloomFilter a {@link LoginBloomFilter} or <code>null</code>.
+	 */
+	public void setLoginBloomFilter(LoginBloomFilter loginBloomFilter) {
+		this.loginBloomFilter = loginBloomFilter;
+	}
+
+	/**
+	 * Adds all existing logins to the Bloom filter, scanning them in pages, and then starts using
+	 * it. Logins saved during the scan are added by {@link #save(User)}. This method should be
+	 * invoked at application startup and then periodically, more often than the filter's maximum
+	 * age (see {@link LoginBloomFilter#setMaximumAge(long)}), so logins created by other nodes or
+	 * outside this controller are added before the filter's answers expire.
+	 */
+	@Transactional(readOnly = true)
+	public void populateLoginBloomFilter() {
+
+		if (loginBloomFilter == null) {
+			throw new IllegalStateException("No LoginBloomFilter was set");
+		}
+
+		// logins created after this instant may be missed by the scan
+		final long start = System.nanoTime();
+
+		String last = null;
+		List<String> logins;
+
+		do {
+
+			logins = findLogins(last, LOGIN_PAGE_SIZE);
+
+			for (String login : logins) {
+				loginBloomFilter.add(login);
+			}
+
+			if (logins.isEmpty() == false) {
+				last = logins.get(logins.size() - 1);
+			}
+
+		}
+		while (logins.size() == LOGIN_PAGE_SIZE);
+
+		loginBloomFilter.setReady(start);
+
+	}
+
+	/**
+	 * Tells if the Bloom filter guarantees that no user has a given login.
+	 */
+	private boolean isLoginAbsent(String login) {
+
+		return login != null && loginBloomFilter != null && loginBloomFilter.isReady()
+				&& loginBloomFilter.mightContain(login) == false;
+
+	}
+
+	private void recordLookup(boolean found) {
+
+		if (found == false && loginBloomFilter != null && loginBloomFilter.isReady()) {
+			loginBloomFilter.recordFalsePositive();
+		}
+
 	}
 
 	private void encryptPassword(br.com.arsmachina.authentication.entity.User user) {
@@ -210,7 +542,7 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 
 		user = super.reattach(user);
 
-		final List<PermissionGroup> permissionGroups = user.getPermissionGroups();
+		final Set<PermissionGroup> permissionGroups = user.getPermissionGroups();
 
 		for (PermissionGroup permissionGroup : permissionGroups) {
 			permissionGroupController.reattach(permissionGroup);
@@ -230,6 +562,218 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 	@Override
 	public void markLoggedOut(User user) {
 		dao.markLoggedOut(user);
+		fireUserChanged(user.getId());
+	}
+
+	@Transactional
+	public int replacePasswords(Collection<PasswordChange> changes) {
+
+		if (changes == null) {
+			throw new IllegalArgumentException("Parameter changes cannot be null.");
+		}
+
+		int changed = 0;
+
+		for (PasswordChange change : changes) {
+
+			if (dao.replacePassword(change.getUserId(), change.getOldPassword(),
+					change.getNewPassword())) {
+				changed++;
+				fireUserChanged(change.getUserId());
+			}
+
+		}
+
+		return changed;
+
+	}
+
+	@Transactional(readOnly = true)
+	public BitSet findWithPermission(List<Integer> userIds, String permissionName) {
+
+		if (userIds == null) {
+			throw new IllegalArgumentException("Parameter userIds cannot be null.");
+		}
+
+		if (permissionName == null) {
+			throw new IllegalArgumentException("Parameter permissionName cannot be null.");
+		}
+
+		final EffectivePermissionsCache cache = effectivePermissionsCache;
+		final long version = cache != null ? cache.getVersion() : 0;
+		final long modelVersion = cache != null ? cache.getModelVersion() : 0;
+		final BitSet result = new BitSet(userIds.size());
+		final List<Integer> missing = new ArrayList<Integer>();
+
+		// resolved once, so each user costs a single word test unless it has wildcards
+		int permissionId = PermissionSymbolTable.getId(permissionName);
+
+		for (int i = 0; i < userIds.size(); i++) {
+
+			final Integer id = userIds.get(i);
+
+			if (id == null) {
+				throw new IllegalArgumentException("Parameter userIds cannot contain nulls.");
+			}
+
+			final EffectivePermissions permissions = cache != null ? cache.get(id) : null;
+
+			if (permissions == null) {
+				missing.add(i);
+			}
+			else if (hasPermission(permissions, permissionId, permissionName)) {
+				result.set(i);
+			}
+
+		}
+
+		for (int start = 0; start < missing.size(); start += BULK_BATCH_SIZE) {
+
+			final List<Integer> batch =
+				missing.subList(start, Math.min(start + BULK_BATCH_SIZE, missing.size()));
+			final Collection<Integer> ids = new LinkedHashSet<Integer>(batch.size());
+
+			for (Integer index : batch) {
+				ids.add(userIds.get(index));
+			}
+
+			final Map<Integer, EffectivePermissions> loaded =
+				new HashMap<Integer, EffectivePermissions>(ids.size() * 2);
+
+			final List<User> users = dao.loadPermissions(ids);
+			preparePermissions(users, ids);
+
+			for (User user : users) {
+
+				final EffectivePermissions permissions = user.getEffectivePermissions();
+				loaded.put(user.getId(), permissions);
+
+				if (cache != null) {
+					cache.put(user.getId(), permissions, version, modelVersion);
+				}
+
+			}
+
+			// compiling the loaded users may have interned the name
+			if (permissionId < 0) {
+				permissionId = PermissionSymbolTable.getId(permissionName);
+			}
+
+			for (Integer index : batch) {
+
+				final EffectivePermissions permissions = loaded.get(userIds.get(index));
+
+				if (permissions != null && hasPermission(permissions, permissionId, permissionName)) {
+					result.set(index);
+				}
+
+			}
+
+		}
+
+		return result;
+
+	}
+
+	private static boolean hasPermission(EffectivePermissions permissions, int permissionId,
+			String permissionName) {
+
+		return permissions.getPermissionSet().contains(permissionId)
+				|| permissions.getPermissionTrie().matches(permissionName);
+
+	}
+
+	@Transactional(readOnly = true)
+	public List<Integer> filterByPermission(List<Integer> userIds, String permissionName) {
+
+		final BitSet found = findWithPermission(userIds, permissionName);
+		final List<Integer> ids = new ArrayList<Integer>(found.cardinality());
+
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+			ids.add(userIds.get(i));
+		}
+
+		return ids;
+
+	}
+
+	/**
+	 * Sets the cache of compiled effective permissions used by
+	 * {@link #findWithPermission(List, String)} and {@link #filterByPermission(List, String)}.
+	 * Without one, every call loads all the users it is asked about. The cache is registered as
+	 * an {@link UserChangeListener} of this controller and given the permission implications of
+	 * its {@link PermissionController}.
+	 * 
+	 * @param effectivePermissionsCache an {@link EffectivePermissionsCache} or <code>null</code>.
+	 */
+	public void setEffectivePermissionsCache(EffectivePermissionsCache effectivePermissionsCache) {
+
+		if (this.effectivePermissionsCache != null) {
+			listeners.remove(this.effectivePermissionsCache);
+		}
+
+		this.effectivePermissionsCache = effectivePermissionsCache;
+
+		if (effectivePermissionsCache != null) {
+			effectivePermissionsCache.setPermissionImplications(permissionController
+					.getPermissionImplications());
+			addUserChangeListener(effectivePermissionsCache);
+		}
+
+	}
+
+	/**
+	 * Adds a listener notified when an user is updated, removed, logged out or has its password
+	 * replaced through this controller. Listeners are notified after the transaction commits.
+	 * 
+	 * @param listener an {@link UserChangeListener}. It cannot be null.
+	 */
+	public void addUserChangeListener(UserChangeListener listener) {
+
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter listener cannot be null.");
+		}
+
+		listeners.add(listener);
+
+	}
+
+	/**
+	 * Notifies the listeners after the current transaction commits, or right now if there is
+	 * none. Notified before the commit, a cache could be refilled with the old state by a
+	 * concurrent transaction between the notification and the commit.
+	 */
+	private void fireUserChanged(final Integer id) {
+
+		if (id == null || listeners.isEmpty()) {
+			return;
+		}
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+			TransactionSynchronizationManager.registerSynchronization(
+					new TransactionSynchronizationAdapter() {
+
+						@Override
+						public void afterCommit() {
+							notifyUserChanged(id);
+						}
+
+					});
+
+		}
+		else {
+			notifyUserChanged(id);
+		}
+
+	}
+
+	private void notifyUserChanged(Integer id) {
+
+		for (UserChangeListener listener : listeners) {
+			listener.userChanged(id);
+		}
+
 	}
 
 	@Transactional
@@ -265,4 +809,66 @@ public class UserControllerImpl extends SpringControllerImpl<User, Integer> impl
 		
 	}
 
+	/**
+	 * {@link Iterator} returned by {@link UserControllerImpl#iterateByPermission(String, int)}. It
+	 * loads the next page when the current one is exhausted, using the login of its last user as
+	 * the key of the next one, through {@link UserController#findByPermission(String, String, int)}
+	 * of the transactional proxy, so each page is loaded in its own transaction.
+	 */
+	final private static class PermissionUserIterator implements Iterator<User> {
+
+		final private UserController controller;
+
+		final private String name;
+
+		final private int pageSize;
+
+		private List<User> page = Collections.emptyList();
+
+		private int index;
+
+		private boolean last;
+
+		PermissionUserIterator(UserController controller, String name, int pageSize) {
+			this.controller = controller;
+			this.name = name;
+			this.pageSize = pageSize;
+		}
+
+		public boolean hasNext() {
+
+			if (index < page.size()) {
+				return true;
+			}
+
+			if (last) {
+				return false;
+			}
+
+			final String afterLogin = page.isEmpty() ? null : page.get(page.size() - 1).getLogin();
+
+			page = controller.findByPermission(name, afterLogin, pageSize);
+			index = 0;
+			last = page.size() < pageSize;
+
+			return page.isEmpty() == false;
+
+		}
+
+		public User next() {
+
+			if (hasNext() == false) {
+				throw new NoSuchElementException();
+			}
+
+			return page.get(index++);
+
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
 }
@@ -14,10 +14,19 @@
 
 package br.com.arsmachina.authentication.controller.impl;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import br.com.arsmachina.authentication.controller.DirectPermissionController;
 import br.com.arsmachina.authentication.controller.UserGroupController;
 import br.com.arsmachina.authentication.dao.UserGroupDAO;
+import br.com.arsmachina.authentication.entity.User;
 import br.com.arsmachina.authentication.entity.UserGroup;
 import br.com.arsmachina.controller.impl.SpringControllerImpl;
 
@@ -31,6 +40,12 @@ public class UserGroupControllerImpl extends SpringControllerImpl<UserGroup, Int
 
 	private UserGroupDAO dao;
 
+	private UserGroupController transactionalProxy;
+
+	private EffectivePermissionsCache effectivePermissionsCache;
+
+	private DirectPermissionController directPermissionController;
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -52,4 +67,395 @@ public class UserGroupControllerImpl extends SpringControllerImpl<UserGroup, Int
 		return dao.findByName(name);
 	}
 
+	/**
+	 * Saves the group and adds it to the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure}.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 */
+	@Transactional
+	@Override
+	public void save(UserGroup group) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		super.save(group);
+		dao.insertIntoClosure(group);
+
+	}
+
+	/**
+	 * Deletes the group after moving its children to its parent, so they keep the rest of their
+	 * ancestors. The direct grants its members only had through it are revoked first.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 */
+	@Transactional
+	@Override
+	public void delete(UserGroup group) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		if (directPermissionController != null && group.getId() != null) {
+			directPermissionController.revoke(group);
+		}
+
+		for (UserGroup child : dao.findChildren(group)) {
+			move(child, group.getParent());
+		}
+
+		dao.deleteFromClosure(group);
+		super.delete(group);
+		hierarchyChanged(null);
+
+	}
+
+	@Transactional
+	@Override
+	public void delete(Integer id) {
+
+		final UserGroup group = dao.findById(id);
+
+		if (group != null) {
+			delete(group);
+		}
+
+	}
+
+	/**
+	 * Updates the group. If its <code>parent</code> property was changed through
+	 * {@link UserGroup#setParent(UserGroup)}, the group and its descendants are also moved in the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure}, like
+	 * {@link #setParent(UserGroup, UserGroup)} does.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @return the updated {@link UserGroup}.
+	 * @throws IllegalArgumentException if the new parent is the group itself or one of its
+	 * descendants.
+	 */
+	@Transactional
+	@Override
+	public UserGroup update(UserGroup group) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		final UserGroup parent = group.getParent();
+		final Integer parentId = parent != null ? parent.getId() : null;
+		final Integer formerParentId = dao.findParentIdInClosure(group);
+
+		if (parentId == null ? formerParentId == null : parentId.equals(formerParentId)) {
+			return super.update(group);
+		}
+
+		if (parent != null && dao.isAncestor(group, parent)) {
+			throw new IllegalArgumentException("A group cannot be nested in itself or in one of "
+					+ "its descendants");
+		}
+
+		final UserGroup updated = super.update(group);
+		dao.moveInClosure(updated, parent);
+		hierarchyChanged(updated);
+
+		return updated;
+
+	}
+
+	@Transactional
+	public void setParent(UserGroup group, UserGroup parent) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		if (parent != null && dao.isAncestor(group, parent)) {
+			throw new IllegalArgumentException("A group cannot be nested in itself or in one of "
+					+ "its descendants");
+		}
+
+		move(group, parent);
+
+	}
+
+	private void move(UserGroup group, UserGroup parent) {
+
+		group.setParent(parent);
+		dao.update(group);
+		dao.moveInClosure(group, parent);
+		hierarchyChanged(group);
+
+	}
+
+	@Transactional(readOnly = true)
+	public int countMembers(UserGroup group) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		return dao.countMembers(group);
+
+	}
+
+	@Transactional(readOnly = true)
+	public boolean isMember(UserGroup group, User user) {
+
+		checkMembership(group, user);
+
+		return dao.isMember(group, user);
+
+	}
+
+	@Transactional
+	public boolean addMember(UserGroup group, User user) {
+
+		checkMembership(group, user);
+
+		final boolean added = dao.addMember(group, user);
+
+		if (added) {
+			memberChanged(user);
+		}
+
+		return added;
+
+	}
+
+	@Transactional
+	public boolean removeMember(UserGroup group, User user) {
+
+		checkMembership(group, user);
+
+		final boolean removed = dao.removeMember(group, user);
+
+		if (removed) {
+			memberChanged(user);
+		}
+
+		return removed;
+
+	}
+
+	@Transactional(readOnly = true)
+	public List<User> findMembers(UserGroup group, String afterLogin, int maximum) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		if (maximum <= 0) {
+			throw new IllegalArgumentException("Parameter maximum must be positive.");
+		}
+
+		return dao.findMembers(group, afterLogin, maximum);
+
+	}
+
+	public Iterator<User> iterateMembers(UserGroup group, int pageSize) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Parameter pageSize must be positive.");
+		}
+
+		if (transactionalProxy == null) {
+			throw new IllegalStateException("No transactional proxy was set");
+		}
+
+		return new MemberIterator(transactionalProxy, group, pageSize);
+
+	}
+
+	/**
+	 * Sets the transactional proxy of this controller, the bean other beans see, through which
+	 * {@link #iterateMembers(UserGroup, int)} loads each page. A page loaded through
+	 * <code>this</code> would bypass the proxy and run outside any transaction.
+	 * 
+	 * @param transactionalProxy an {@link UserGroupController} or <code>null</code>.
+	 */
+	public void setTransactionalProxy(UserGroupController transactionalProxy) {
+		this.transactionalProxy = transactionalProxy;
+	}
+
+	/**
+	 * Sets the cache of compiled effective permissions whose entries are dropped when the groups
+	 * their users belong to change: the entry of an user when it is added to or removed from a
+	 * group, and all entries when a group is moved or deleted, since that changes the groups
+	 * inherited by every member of its subtree. Set the same cache in {@link UserControllerImpl}.
+	 * 
+	 * @param effectivePermissionsCache an {@link EffectivePermissionsCache} or <code>null</code>.
+	 */
+	public void setEffectivePermissionsCache(EffectivePermissionsCache effectivePermissionsCache) {
+		this.effectivePermissionsCache = effectivePermissionsCache;
+	}
+
+	/**
+	 * Sets the controller of the materialized direct grants, which are refreshed for an user when
+	 * it is added to or removed from a group and for the members of the subtree of a group when it
+	 * is moved, and revoked for the members of a group before it is deleted. Set the same
+	 * controller in {@link UserControllerImpl} and {@link PermissionGroupControllerImpl}.
+	 * 
+	 * @param directPermissionController an {@link DirectPermissionController} or
+	 * <code>null</code>.
+	 */
+	public void setDirectPermissionController(
+			DirectPermissionController directPermissionController) {
+		this.directPermissionController = directPermissionController;
+	}
+
+	private void memberChanged(User user) {
+
+		if (directPermissionController != null) {
+			directPermissionController.refresh(user);
+		}
+
+		final EffectivePermissionsCache cache = effectivePermissionsCache;
+		final Integer userId = user.getId();
+
+		if (cache != null) {
+
+			afterCommit(new Runnable() {
+
+				public void run() {
+					cache.userChanged(userId);
+				}
+
+			});
+
+		}
+
+	}
+
+	/**
+	 * Invoked after a group was moved, or deleted when <code>group</code> is <code>null</code>.
+	 */
+	private void hierarchyChanged(UserGroup group) {
+
+		if (directPermissionController != null && group != null) {
+			directPermissionController.refresh(group);
+		}
+
+		final EffectivePermissionsCache cache = effectivePermissionsCache;
+
+		if (cache != null) {
+
+			afterCommit(new Runnable() {
+
+				public void run() {
+					cache.clear();
+				}
+
+			});
+
+		}
+
+	}
+
+	/**
+	 * Runs a task after the current transaction commits, or right now if there is none, like
+	 * {@link UserControllerImpl} notifies its listeners.
+	 */
+	private static void afterCommit(final Runnable task) {
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+			TransactionSynchronizationManager.registerSynchronization(
+					new TransactionSynchronizationAdapter() {
+
+						@Override
+						public void afterCommit() {
+							task.run();
+						}
+
+					});
+
+		}
+		else {
+			task.run();
+		}
+
+	}
+
+	private static void checkMembership(UserGroup group, User user) {
+
+		if (group == null) {
+			throw new IllegalArgumentException("Parameter group cannot be null");
+		}
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+	}
+
+	/**
+	 * {@link Iterator} returned by {@link UserGroupControllerImpl#iterateMembers(UserGroup, int)}.
+	 * It loads the next page when the current one is exhausted, using the login of its last member
+	 * as the key of the next one, through {@link UserGroupController#findMembers(UserGroup, String, int)}
+	 * of the transactional proxy, so each page is loaded in its own transaction.
+	 */
+	final private static class MemberIterator implements Iterator<User> {
+
+		final private UserGroupController controller;
+
+		final private UserGroup group;
+
+		final private int pageSize;
+
+		private List<User> page = Collections.emptyList();
+
+		private int index;
+
+		private boolean last;
+
+		MemberIterator(UserGroupController controller, UserGroup group, int pageSize) {
+			this.controller = controller;
+			this.group = group;
+			this.pageSize = pageSize;
+		}
+
+		public boolean hasNext() {
+
+			if (index < page.size()) {
+				return true;
+			}
+
+			if (last) {
+				return false;
+			}
+
+			final String afterLogin = page.isEmpty() ? null : page.get(page.size() - 1).getLogin();
+
+			page = controller.findMembers(group, afterLogin, pageSize);
+			index = 0;
+			last = page.size() < pageSize;
+
+			return page.isEmpty() == false;
+
+		}
+
+		public User next() {
+
+			if (hasNext() == false) {
+				throw new NoSuchElementException();
+			}
+
+			return page.get(index++);
+
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
 }
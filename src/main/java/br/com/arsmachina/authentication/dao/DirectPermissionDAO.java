@@ -0,0 +1,125 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.dao;
+
+/**
+ * Data access object (DAO) for the <code>user_direct_permission</code> table, mapped by
+ * {@link br.com.arsmachina.authentication.entity.DirectPermission}, which materializes the
+ * permissions each user is given by name: the permissions of its permission groups, its own ones
+ * and the ones owned by the user groups it belongs to, directly or through nested groups, minus
+ * the permissions it removed by exact name, so other services can probe them with a primary key
+ * lookup. Implied permissions and names covered by wildcards only exist in
+ * {@link br.com.arsmachina.authentication.permission.EffectivePermissions}. Use
+ * {@link br.com.arsmachina.authentication.entity.User#getEffectivePermissions()} when they matter.
+ * 
+ * Implementations must flush the session before each statement and write only the rows that
+ * changed, through the named queries declared in
+ * {@link br.com.arsmachina.authentication.entity.DirectPermission}, which compute the inherited
+ * groups with the <code>usergroup_closure</code> table.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public interface DirectPermissionDAO {
+
+	/**
+	 * Makes the rows of an user match its current permission groups, own and inherited, and
+	 * removed permissions, deleting the rows of permissions it lost and inserting the ones it
+	 * gained, with {@link br.com.arsmachina.authentication.entity.DirectPermission#DELETE_REVOKED_FROM_USER}
+	 * and {@link br.com.arsmachina.authentication.entity.DirectPermission#INSERT_GRANTED_TO_USER}.
+	 * 
+	 * @param userId an {@link Integer}. It cannot be null.
+	 * @return the number of rows deleted or inserted.
+	 */
+	int refreshUser(Integer userId);
+
+	/**
+	 * Makes the rows of the users of a permission group, own or inherited, match its current
+	 * permissions and owner, deleting the rows of permissions no group of the user grants anymore
+	 * and inserting the ones the group now grants, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#DELETE_REVOKED_FROM_PERMISSION_GROUP}
+	 * and
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#INSERT_GRANTED_TO_PERMISSION_GROUP}.
+	 * 
+	 * @param permissionGroupId an {@link Integer}. It cannot be null.
+	 * @return the number of rows deleted or inserted.
+	 */
+	int refreshPermissionGroup(Integer permissionGroupId);
+
+	/**
+	 * Deletes the rows of the users of a permission group for the permissions that no other group
+	 * of the user grants, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#REVOKE_PERMISSION_GROUP}. It
+	 * must be invoked before the group is removed.
+	 * 
+	 * @param permissionGroupId an {@link Integer}. It cannot be null.
+	 * @return the number of rows deleted.
+	 */
+	int revokePermissionGroup(Integer permissionGroupId);
+
+	/**
+	 * Makes the rows of the users of an user group and all its descendants match their current
+	 * permission groups, after users were added to or removed from the group or it was moved, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#DELETE_REVOKED_FROM_USER_GROUP}
+	 * and
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#INSERT_GRANTED_TO_USER_GROUP}.
+	 * 
+	 * @param userGroupId an {@link Integer}. It cannot be null.
+	 * @return the number of rows deleted or inserted.
+	 */
+	int refreshUserGroup(Integer userGroupId);
+
+	/**
+	 * Deletes the rows of the users of an user group for the permissions they would not be
+	 * granted without their membership in it, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#REVOKE_USER_GROUP}. It must
+	 * be invoked before the group is removed.
+	 * 
+	 * @param userGroupId an {@link Integer}. It cannot be null.
+	 * @return the number of rows deleted.
+	 */
+	int revokeUserGroup(Integer userGroupId);
+
+	/**
+	 * Deletes all rows of an user, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#DELETE_USER}. It must be
+	 * invoked before the user is removed.
+	 * 
+	 * @param userId an {@link Integer}. It cannot be null.
+	 * @return the number of rows deleted.
+	 */
+	int deleteUser(Integer userId);
+
+	/**
+	 * Tells if an user has a permission according to the table, with a single probe of its
+	 * primary key after the permission name is resolved through its unique index, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#HAS_PERMISSION}.
+	 * 
+	 * @param userId an {@link Integer}. It cannot be null.
+	 * @param permissionName a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean hasPermission(Integer userId, String permissionName);
+
+	/**
+	 * Replaces all rows with the ones computed from the permission groups and removed
+	 * permissions, to recover from drift caused by changes made outside the controllers, with
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#DELETE_ALL} and
+	 * {@link br.com.arsmachina.authentication.entity.DirectPermission#INSERT_ALL}.
+	 * 
+	 * @return the number of rows after the rebuild.
+	 */
+	int rebuild();
+
+}
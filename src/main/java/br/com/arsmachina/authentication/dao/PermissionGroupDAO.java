@@ -14,9 +14,12 @@
 
 package br.com.arsmachina.authentication.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.User;
 import br.com.arsmachina.authentication.entity.UserGroup;
 import br.com.arsmachina.dao.DAO;
 
@@ -44,4 +47,30 @@ public interface PermissionGroupDAO extends DAO<PermissionGroup, Integer> {
 	 */
 	public List<PermissionGroup> findByUserGroup(UserGroup userGroup);
 
+	/**
+	 * Returns the permission groups owned by the user groups a given user belongs to, directly or
+	 * through nested groups. Implementations should use the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure#FIND_INHERITED_PERMISSION_GROUPS}
+	 * query, which joins <code>usergroup_user</code>, <code>usergroup_closure</code> (on
+	 * <code>descendant_id</code>) and <code>permissiongroup</code> (on
+	 * <code>owner_id = ancestor_id</code>), so its cost does not depend on the nesting depth.
+	 * 
+	 * @param user an {@link User}. It cannot be null.
+	 * @return a {@link List} of {@link PermissionGroup}s.
+	 */
+	public List<PermissionGroup> findInheritedByUser(User user);
+
+	/**
+	 * Returns the permission groups inherited by some users, like
+	 * {@link #findInheritedByUser(User)} does for one, with a single query. Implementations should
+	 * use the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure#FIND_INHERITED_PERMISSION_GROUPS_BY_USERS}
+	 * query.
+	 * 
+	 * @param userIds a {@link Collection} of {@link Integer}s. It cannot be null.
+	 * @return a {@link Map} from user id to a {@link List} of {@link PermissionGroup}s ordered by
+	 * name. Users that inherit no permission group are not in it.
+	 */
+	public Map<Integer, List<PermissionGroup>> findInheritedByUsers(Collection<Integer> userIds);
+
 }
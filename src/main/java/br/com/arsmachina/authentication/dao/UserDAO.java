@@ -14,6 +14,7 @@
 
 package br.com.arsmachina.authentication.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import br.com.arsmachina.authentication.entity.Role;
@@ -34,7 +35,11 @@ public interface UserDAO extends DAO<User, Integer> {
 	 * @param login a <code>String</code>.
 	 * @param password a <code>String</code>.
 	 * @return an {@link User}.
+	 * @deprecated Use {@link #loadForAuthentication(String)} and
+	 * {@link br.com.arsmachina.authentication.encryption.PasswordEncrypter#matches(String, String)}
+	 * instead, which work with salted encryption schemes.
 	 */
+	@Deprecated
 	User findByLoginAndPassword(String login, String password);
 
 	/**
@@ -63,6 +68,18 @@ public interface UserDAO extends DAO<User, Integer> {
 	 */
 	User loadEverything(String login);
 
+	/**
+	 * Loads the users with some ids and their permissions, for bulk permission checks. Users that
+	 * do not exist are not returned and the order is not specified. This method prefetches the
+	 * users' permission groups, their permissions and the removed permissions, so it should use
+	 * <code>where id in (...)</code> with join fetches and a distinct root entity result. Callers
+	 * pass at most a few hundred ids at a time.
+	 * 
+	 * @param ids a {@link Collection} of {@link Integer}s. It cannot be null.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> loadPermissions(Collection<Integer> ids);
+
 	/**
 	 * Returns all users with a given {@link Role} subclass.
 	 * 
@@ -71,6 +88,41 @@ public interface UserDAO extends DAO<User, Integer> {
 	 */
 	<T extends Role> List<User> findByRole(Class<T> roleClass);
 
+	/**
+	 * Returns, ordered by login, all users that have a permission through one of their own
+	 * permission groups and did not remove it. Implementations should use the
+	 * {@link User#FIND_BY_PERMISSION} query. See {@link #findByPermission(String, String, int)}
+	 * for how it is answered.
+	 * 
+	 * @param name a {@link String} containing the permission name. It cannot be null.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> findByPermission(String name);
+
+	/**
+	 * Returns, ordered by login, at most <code>maximum</code> users whose logins are greater than
+	 * <code>afterLogin</code> and that have a permission through one of their own permission
+	 * groups and did not remove it. Names are matched as stored: wildcards and implications are
+	 * only applied in memory (see
+	 * {@link br.com.arsmachina.authentication.permission.EffectivePermissions}). Implementations
+	 * should run the {@link User#FIND_BY_PERMISSION_AFTER_LOGIN} query, or the
+	 * {@link User#FIND_BY_PERMISSION} one when <code>afterLogin</code> is <code>null</code>, a
+	 * single set-based query with a semi-join for the grant and an anti-join for the removal,
+	 * with a row limit instead of an offset. It is answered through indexes whatever the number of
+	 * users: the unique index on <code>permission.name</code>, the
+	 * <code>permissiongroup_permission_permission_idx</code> and
+	 * <code>user_permissiongroup_permissiongroup_idx</code> indexes for rare permissions, or the
+	 * unique index on <code>user.login</code> followed by primary key probes of
+	 * <code>user_permissiongroup</code> for common ones, and the primary key of
+	 * <code>user_removedpermission</code> for the anti-join.
+	 * 
+	 * @param name a {@link String} containing the permission name. It cannot be null.
+	 * @param afterLogin a {@link String} or <code>null</code> to start from the first user.
+	 * @param maximum an <code>int</code>. It must be positive.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> findByPermission(String name, String afterLogin, int maximum);
+
 	/**
 	 * Tells if some user with a given login exists.
 	 * 
@@ -80,6 +132,18 @@ public interface UserDAO extends DAO<User, Integer> {
 	 */
 	boolean hasUserWithLogin(String login);
 
+	/**
+	 * Returns, in ascending order, at most <code>maximum</code> logins greater than
+	 * <code>afterLogin</code>. It is used to scan all logins in pages without loading users, so
+	 * implementations should use <code>where login > ? order by login</code> with a row limit,
+	 * which is answered by the login index, instead of an offset.
+	 * 
+	 * @param afterLogin a {@link String} or <code>null</code> to start from the first login.
+	 * @param maximum an <code>int</code>. It must be positive.
+	 * @return a {@link List} of {@link String}s.
+	 */
+	List<String> findLogins(String afterLogin, int maximum);
+
 	/**
 	 * Mark an {@link User} as logged in.
 	 * 
@@ -94,4 +158,17 @@ public interface UserDAO extends DAO<User, Integer> {
 	 */
 	void markLoggedOut(User user);
 
+	/**
+	 * Changes the encrypted password of an user if, and only if, its stored value is still
+	 * <code>oldPassword</code>, so a concurrent password change is never overwritten.
+	 * Implementations should issue a single <code>update ... where id = ? and password = ?</code>
+	 * statement and evict the user from the second-level cache.
+	 * 
+	 * @param id an {@link Integer}. It cannot be null.
+	 * @param oldPassword a {@link String}. It cannot be null.
+	 * @param newPassword a {@link String}. It cannot be null.
+	 * @return <code>true</code> if the password was changed, <code>false</code> otherwise.
+	 */
+	boolean replacePassword(Integer id, String oldPassword, String newPassword);
+
 }
@@ -14,6 +14,9 @@
 
 package br.com.arsmachina.authentication.dao;
 
+import java.util.List;
+
+import br.com.arsmachina.authentication.entity.User;
 import br.com.arsmachina.authentication.entity.UserGroup;
 import br.com.arsmachina.dao.DAO;
 
@@ -30,5 +33,124 @@ public interface UserGroupDAO extends DAO<UserGroup, Integer> {
 	 * @return a {@link UserGroup} or <code>null</code>.
 	 */
 	public UserGroup findByName(String name);
-	
+
+	/**
+	 * Returns the number of members of a group without loading them.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @return an <code>int</code>.
+	 */
+	int countMembers(UserGroup group);
+
+	/**
+	 * Tells if an user is a member of a group. Implementations should query the
+	 * <code>usergroup_user</code> table directly instead of loading the group members.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param user an {@link User}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isMember(UserGroup group, User user);
+
+	/**
+	 * Adds an user to a group if it is not a member yet. Implementations should insert a single
+	 * row in the <code>usergroup_user</code> table instead of loading the group members and evict
+	 * the group's <code>users</code> collection from the session if it is already loaded.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param user an {@link User}. It cannot be null.
+	 * @return <code>true</code> if the user was added, <code>false</code> if it already was a
+	 * member.
+	 */
+	boolean addMember(UserGroup group, User user);
+
+	/**
+	 * Removes an user from a group. Implementations should delete a single row from the
+	 * <code>usergroup_user</code> table and evict the group's <code>users</code> collection from
+	 * the session if it is already loaded.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param user an {@link User}. It cannot be null.
+	 * @return <code>true</code> if the user was a member, <code>false</code> otherwise.
+	 */
+	boolean removeMember(UserGroup group, User user);
+
+	/**
+	 * Returns, ordered by login, at most <code>maximum</code> members of a group whose logins are
+	 * greater than <code>afterLogin</code>. Implementations should use
+	 * <code>where login > ? order by login</code> with a row limit instead of an offset, so every
+	 * page costs the same however deep it is.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param afterLogin a {@link String} or <code>null</code> to start from the first member.
+	 * @param maximum an <code>int</code>. It must be positive.
+	 * @return a {@link List} of {@link User}s.
+	 */
+	List<User> findMembers(UserGroup group, String afterLogin, int maximum);
+
+	/**
+	 * Returns the groups whose <code>parent</code> is a given one.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @return a {@link List} of {@link UserGroup}s.
+	 */
+	List<UserGroup> findChildren(UserGroup group);
+
+	/**
+	 * Tells if a group is an ancestor of another one or the same group, using the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure#COUNT_LINKS} query.
+	 * 
+	 * @param ancestor an {@link UserGroup}. It cannot be null.
+	 * @param descendant an {@link UserGroup}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	boolean isAncestor(UserGroup ancestor, UserGroup descendant);
+
+	/**
+	 * Returns the id of a group's parent as recorded in
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure}, that is, the ancestor
+	 * linked to it with depth <code>1</code>. It is the parent the group had when the closure was
+	 * last maintained, whatever its <code>parent</code> property holds now. Implementations
+	 * should use the {@link br.com.arsmachina.authentication.entity.UserGroupClosure#FIND_PARENT_ID}
+	 * query.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @return an {@link Integer} or <code>null</code> if the group is a root group.
+	 */
+	Integer findParentIdInClosure(UserGroup group);
+
+	/**
+	 * Adds a new group, which has no descendants, to the closure: one row linking it to itself
+	 * and one row linking it to each ancestor of its parent, one level deeper. Implementations
+	 * should execute the {@link br.com.arsmachina.authentication.entity.UserGroupClosure#INSERT_SELF}
+	 * query and then, if the group has a parent, the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure#LINK_SUBTREE} one, each a
+	 * single <code>insert ... select</code>.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 */
+	void insertIntoClosure(UserGroup group);
+
+	/**
+	 * Moves a group and all its descendants in the closure from the group's former position to
+	 * a new parent. Implementations should delete the rows linking the subtree to the group's
+	 * former ancestors, with the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure#UNLINK_SUBTREE} query, and
+	 * then, if there is a new parent, insert the cross product of its ancestors and the subtree,
+	 * with the {@link br.com.arsmachina.authentication.entity.UserGroupClosure#LINK_SUBTREE} one,
+	 * so only the rows that changed are touched.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 * @param parent an {@link UserGroup} or <code>null</code> to make it a root group.
+	 */
+	void moveInClosure(UserGroup group, UserGroup parent);
+
+	/**
+	 * Removes all rows of a group, which must have no descendants, from the closure, with the
+	 * {@link br.com.arsmachina.authentication.entity.UserGroupClosure#DELETE_GROUP} query.
+	 * 
+	 * @param group an {@link UserGroup}. It cannot be null.
+	 */
+	void deleteFromClosure(UserGroup group);
+
 }
@@ -0,0 +1,51 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+/**
+ * Base class for {@link PasswordEncrypter} implementations written before
+ * {@link #matches(String, String)} and {@link #rehash(String, String)} were added, so they only
+ * need to implement {@link #encrypt(String)}. Subclasses whose {@link #encrypt(String)} returns
+ * already encrypted values unchanged should override {@link #matches(String, String)}, as the
+ * default one accepts the encrypted password itself as the password.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public abstract class AbstractPasswordEncrypter implements PasswordEncrypter {
+
+	/**
+	 * Encrypts <code>password</code> and compares the result with
+	 * <code>encryptedPassword</code> in constant time.
+	 * 
+	 * @param password a {@link String}. It cannot be null.
+	 * @param encryptedPassword a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean matches(String password, String encryptedPassword) {
+		return EncryptionUtils.constantTimeEquals(encrypt(password), encryptedPassword);
+	}
+
+	/**
+	 * Returns <code>null</code>, as there is no other scheme to upgrade to.
+	 * 
+	 * @param password a {@link String}.
+	 * @param encryptedPassword a {@link String}.
+	 * @return <code>null</code>.
+	 */
+	public String rehash(String password, String encryptedPassword) {
+		return null;
+	}
+
+}
@@ -0,0 +1,195 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link PasswordEncrypter} that stores the hashing scheme together with the hash, in the
+ * <code>{id}hash</code> format (for example, <code>{sha1}a9993e36...</code>), and verifies
+ * passwords against any of the schemes it knows. New passwords are always encrypted with the
+ * <em>current</em> scheme. {@link #rehash(String, String)} tells which stored passwords should be
+ * upgraded to it.
+ *
+ * Values without a prefix are handled by the optional <em>unprefixed</em> scheme, which lets
+ * hashes generated before the adoption of this class (for example, by
+ * {@link Sha1PasswordEncrypter} alone) keep working until they are upgraded.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class DelegatingPasswordEncrypter implements PasswordEncrypter {
+
+	final private static char PREFIX_START = '{';
+
+	final private static char PREFIX_END = '}';
+
+	final private HashingPasswordEncrypter current;
+
+	final private HashingPasswordEncrypter unprefixed;
+
+	final private Map<String, HashingPasswordEncrypter> encrypters =
+		new HashMap<String, HashingPasswordEncrypter>();
+
+	/**
+	 * Single constructor of this class.
+	 *
+	 * @param current a {@link HashingPasswordEncrypter} used to encrypt new passwords. It cannot
+	 * be null.
+	 * @param unprefixed a {@link HashingPasswordEncrypter} used to verify hashes without a prefix
+	 * or <code>null</code> if such hashes must be rejected. It is not used for prefixed hashes
+	 * unless it is passed in <code>others</code> too.
+	 * @param others {@link HashingPasswordEncrypter}s whose hashes are accepted and upgraded to
+	 * the current scheme.
+	 */
+	public DelegatingPasswordEncrypter(HashingPasswordEncrypter current,
+			HashingPasswordEncrypter unprefixed, HashingPasswordEncrypter... others) {
+
+		if (current == null) {
+			throw new IllegalArgumentException("Parameter current cannot be null");
+		}
+
+		this.current = current;
+		this.unprefixed = unprefixed;
+
+		register(current);
+
+		for (HashingPasswordEncrypter other : others) {
+			register(other);
+		}
+
+	}
+
+	private void register(HashingPasswordEncrypter encrypter) {
+
+		final String id = encrypter.getId();
+		final HashingPasswordEncrypter registered = encrypters.get(id);
+
+		if (registered != null && registered != encrypter) {
+			throw new IllegalArgumentException("More than one encrypter with id " + id);
+		}
+
+		encrypters.put(id, encrypter);
+
+	}
+
+	/**
+	 * Returns the encrypter used for new passwords.
+	 *
+	 * @return a {@link HashingPasswordEncrypter}.
+	 */
+	public HashingPasswordEncrypter getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns <code>password</code> unchanged if it is already encrypted with one of the known
+	 * schemes. Otherwise, encrypts it with the current scheme.
+	 *
+	 * @param password a {@link String}. It cannot be null.
+	 * @return a {@link String}.
+	 */
+	public String encrypt(String password) {
+
+		if (getEncrypter(password) != null) {
+			return password;
+		}
+
+		if (unprefixed != null && unprefixed.isEncrypted(password)) {
+			return password;
+		}
+
+		return prefix(current, current.hash(password));
+
+	}
+
+	public boolean matches(String password, String encryptedPassword) {
+
+		final HashingPasswordEncrypter encrypter = getEncrypter(encryptedPassword);
+
+		if (encrypter != null) {
+			return encrypter.matches(password, strip(encrypter, encryptedPassword));
+		}
+		else if (unprefixed != null) {
+			return unprefixed.matches(password, encryptedPassword);
+		}
+		else {
+			return false;
+		}
+
+	}
+
+	public String rehash(String password, String encryptedPassword) {
+
+		final HashingPasswordEncrypter encrypter = getEncrypter(encryptedPassword);
+		String rehashed = null;
+
+		if (encrypter == current) {
+
+			final String hash = current.rehash(password, strip(current, encryptedPassword));
+
+			if (hash != null) {
+				rehashed = prefix(current, hash);
+			}
+
+		}
+		else {
+			rehashed = prefix(current, current.hash(password));
+		}
+
+		return rehashed;
+
+	}
+
+	/**
+	 * Returns the encrypter named by the prefix of <code>encryptedPassword</code> or
+	 * <code>null</code> if it has no prefix or an unknown one.
+	 *
+	 * @param encryptedPassword a {@link String}. It cannot be null.
+	 * @return a {@link HashingPasswordEncrypter} or <code>null</code>.
+	 */
+	protected HashingPasswordEncrypter getEncrypter(String encryptedPassword) {
+
+		HashingPasswordEncrypter encrypter = null;
+
+		if (encryptedPassword.length() > 0 && encryptedPassword.charAt(0) == PREFIX_START) {
+
+			final int end = encryptedPassword.indexOf(PREFIX_END);
+
+			if (end > 0) {
+				encrypter = encrypters.get(encryptedPassword.substring(1, end));
+			}
+
+		}
+
+		return encrypter;
+
+	}
+
+	private static String prefix(HashingPasswordEncrypter encrypter, String hash) {
+
+		final String id = encrypter.getId();
+		final StringBuilder builder = new StringBuilder(id.length() + hash.length() + 2);
+		builder.append(PREFIX_START).append(id).append(PREFIX_END).append(hash);
+
+		return builder.toString();
+
+	}
+
+	private static String strip(HashingPasswordEncrypter encrypter, String encryptedPassword) {
+		return encryptedPassword.substring(encrypter.getId().length() + 2);
+	}
+
+}
@@ -0,0 +1,74 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+/**
+ * Utility methods shared by the {@link PasswordEncrypter} implementations.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class EncryptionUtils {
+
+	/**
+	 * No instances of this class.
+	 */
+	private EncryptionUtils() {
+	}
+
+	/**
+	 * Compares two strings in time that depends only on their lengths, not on where they differ,
+	 * so the comparison does not leak how much of an encrypted password an attacker got right.
+	 *
+	 * @param a a {@link String} or <code>null</code>.
+	 * @param b a {@link String} or <code>null</code>.
+	 * @return a <code>boolean</code>.
+	 */
+	public static boolean constantTimeEquals(String a, String b) {
+
+		if (a == null || b == null) {
+			return a == b;
+		}
+
+		final int length = a.length();
+		int difference = length ^ b.length();
+
+		for (int i = 0; i < length; i++) {
+			difference |= a.charAt(i) ^ (i < b.length() ? b.charAt(i) : 0);
+		}
+
+		return difference == 0;
+
+	}
+
+	/**
+	 * Compares two <code>byte</code> arrays in time that depends only on their lengths.
+	 *
+	 * @param a a <code>byte</code> array. It cannot be null.
+	 * @param b a <code>byte</code> array. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public static boolean constantTimeEquals(byte[] a, byte[] b) {
+
+		int difference = a.length ^ b.length;
+
+		for (int i = 0; i < a.length; i++) {
+			difference |= a[i] ^ (i < b.length ? b[i] : 0);
+		}
+
+		return difference == 0;
+
+	}
+
+}
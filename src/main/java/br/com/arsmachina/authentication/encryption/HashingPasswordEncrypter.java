@@ -0,0 +1,52 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+/**
+ * {@link PasswordEncrypter} that implements a single, identified hashing scheme and can be used
+ * by {@link DelegatingPasswordEncrypter}. The {@link #matches(String, String)} and
+ * {@link #rehash(String, String)} methods receive and return hashes without the
+ * <code>{id}</code> prefix.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public interface HashingPasswordEncrypter extends PasswordEncrypter {
+
+	/**
+	 * Returns the identifier of this hashing scheme, used as the prefix of the stored hashes. It
+	 * must contain only lowercase letters and digits.
+	 * 
+	 * @return a {@link String}.
+	 */
+	public String getId();
+
+	/**
+	 * Hashes a password. Unlike {@link #encrypt(String)}, <code>password</code> is always hashed,
+	 * even if it looks like an encrypted one.
+	 * 
+	 * @param password a {@link String}. It cannot be null.
+	 * @return a {@link String}.
+	 */
+	public String hash(String password);
+
+	/**
+	 * Tells if a value has the format of the hashes generated by {@link #hash(String)}.
+	 * 
+	 * @param value a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isEncrypted(String value);
+
+}
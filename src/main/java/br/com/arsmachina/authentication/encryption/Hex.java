@@ -0,0 +1,108 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+/**
+ * Lowercase hexadecimal encoding of byte arrays. It writes directly into caller-supplied
+ * <code>char</code> buffers, so it does not create intermediate objects.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class Hex {
+
+	final private static char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * No instances of this class.
+	 */
+	private Hex() {
+	}
+
+	/**
+	 * Encodes <code>length</code> bytes of <code>bytes</code>, starting at <code>offset</code>,
+	 * into <code>destination</code>, which must have room for <code>2 * length</code> chars.
+	 *
+	 * @param bytes a <code>byte</code> array. It cannot be null.
+	 * @param offset an <code>int</code>.
+	 * @param length an <code>int</code>.
+	 * @param destination a <code>char</code> array. It cannot be null.
+	 * @return the number of chars written.
+	 */
+	public static int encode(byte[] bytes, int offset, int length, char[] destination) {
+
+		int j = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+
+			final int b = bytes[i] & 0xff;
+			destination[j++] = DIGITS[b >>> 4];
+			destination[j++] = DIGITS[b & 0x0f];
+
+		}
+
+		return j;
+
+	}
+
+	/**
+	 * Returns the hexadecimal representation of a byte array.
+	 *
+	 * @param bytes a <code>byte</code> array. It cannot be null.
+	 * @return a {@link String}.
+	 */
+	public static String encode(byte[] bytes) {
+
+		final char[] chars = new char[bytes.length * 2];
+		encode(bytes, 0, bytes.length, chars);
+
+		return new String(chars);
+
+	}
+
+	/**
+	 * Decodes a hexadecimal string.
+	 *
+	 * @param hex a {@link String} with an even number of hexadecimal digits. It cannot be null.
+	 * @return a <code>byte</code> array.
+	 * @throws IllegalArgumentException if <code>hex</code> is not a valid hexadecimal string.
+	 */
+	public static byte[] decode(String hex) {
+
+		final int length = hex.length();
+
+		if (length % 2 != 0) {
+			throw new IllegalArgumentException("Odd number of hexadecimal digits");
+		}
+
+		final byte[] bytes = new byte[length / 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+
+			final int high = Character.digit(hex.charAt(2 * i), 16);
+			final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+
+			if (high < 0 || low < 0) {
+				throw new IllegalArgumentException("Invalid hexadecimal digit");
+			}
+
+			bytes[i] = (byte) ((high << 4) | low);
+
+		}
+
+		return bytes;
+
+	}
+
+}
@@ -0,0 +1,280 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Reusable hashing engine built on {@link MessageDigest}. Each thread gets its own digest,
+ * charset encoder and scratch buffers, which are reused across calls, so the only object created
+ * per hash is the returned {@link String}. Instances are thread-safe.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class MessageDigestHasher {
+
+	/**
+	 * The UTF-8 charset.
+	 */
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	final private static int INITIAL_BUFFER_SIZE = 64;
+
+	final private String algorithm;
+
+	final private Charset charset;
+
+	final private int digestLength;
+
+	final private ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers(createDigest(algorithm), charset.newEncoder());
+		}
+
+	};
+
+	/**
+	 * Constructor that receives the digest algorithm and the charset used to convert characters
+	 * into bytes.
+	 *
+	 * @param algorithm a {@link String}. It must be an algorithm supported by
+	 * {@link MessageDigest#getInstance(String)}.
+	 * @param charset a {@link Charset}. It cannot be null.
+	 * @throws IllegalArgumentException if the algorithm is not supported.
+	 */
+	public MessageDigestHasher(String algorithm, Charset charset) {
+
+		if (algorithm == null) {
+			throw new IllegalArgumentException("Parameter algorithm cannot be null");
+		}
+
+		if (charset == null) {
+			throw new IllegalArgumentException("Parameter charset cannot be null");
+		}
+
+		this.algorithm = algorithm;
+		this.charset = charset;
+		this.digestLength = createDigest(algorithm).getDigestLength();
+
+	}
+
+	/**
+	 * Returns the length, in chars, of the hexadecimal hashes generated by this object.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getHexLength() {
+		return digestLength * 2;
+	}
+
+	/**
+	 * Returns the charset used to convert characters into bytes.
+	 *
+	 * @return a {@link Charset}.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Hashes a {@link String} followed by an optional suffix and returns the result in
+	 * hexadecimal.
+	 *
+	 * @param input a {@link String}. It cannot be null.
+	 * @param suffix a <code>byte</code> array or <code>null</code>.
+	 * @return a {@link String}.
+	 */
+	public String hashToHex(String input, byte[] suffix) {
+
+		final Buffers buffers = this.buffers.get();
+		final int length = input.length();
+		final char[] chars = buffers.chars(length);
+		input.getChars(0, length, chars, 0);
+
+		return hash(buffers, length, suffix);
+
+	}
+
+	/**
+	 * Hashes a region of a <code>char</code> array followed by an optional suffix and returns the
+	 * result in hexadecimal.
+	 *
+	 * @param input a <code>char</code> array. It cannot be null.
+	 * @param offset an <code>int</code>.
+	 * @param length an <code>int</code>.
+	 * @param suffix a <code>byte</code> array or <code>null</code>.
+	 * @return a {@link String}.
+	 */
+	public String hashToHex(char[] input, int offset, int length, byte[] suffix) {
+
+		final Buffers buffers = this.buffers.get();
+		final char[] chars = buffers.chars(length);
+		System.arraycopy(input, offset, chars, 0, length);
+
+		return hash(buffers, length, suffix);
+
+	}
+
+	/**
+	 * Hashes a <code>byte</code> array followed by an optional suffix and returns the result in
+	 * hexadecimal.
+	 *
+	 * @param input a <code>byte</code> array. It cannot be null.
+	 * @param suffix a <code>byte</code> array or <code>null</code>.
+	 * @return a {@link String}.
+	 */
+	public String hashToHex(byte[] input, byte[] suffix) {
+
+		final Buffers buffers = this.buffers.get();
+		buffers.digest.reset();
+		buffers.digest.update(input);
+
+		return finish(buffers, suffix);
+
+	}
+
+	/**
+	 * Encodes a {@link String} using this hasher's charset. Meant to be used once, for salts and
+	 * other constant values.
+	 *
+	 * @param string a {@link String} or <code>null</code>.
+	 * @return a <code>byte</code> array or <code>null</code>.
+	 */
+	public byte[] encode(String string) {
+		return string != null ? string.getBytes(charset) : null;
+	}
+
+	private String hash(Buffers buffers, int length, byte[] suffix) {
+
+		final CharsetEncoder encoder = buffers.encoder;
+		final CharBuffer in = buffers.charBuffer;
+		in.clear();
+		in.limit(length);
+
+		final ByteBuffer out = buffers.bytes((int) Math.ceil(length * encoder.maxBytesPerChar()));
+
+		encoder.reset();
+		encoder.encode(in, out, true);
+		encoder.flush(out);
+
+		buffers.digest.reset();
+		buffers.digest.update(out.array(), 0, out.position());
+
+		// don't leave the password lying around in the thread's buffers
+		Arrays.fill(buffers.chars, 0, length, '\0');
+		Arrays.fill(out.array(), 0, out.position(), (byte) 0);
+
+		return finish(buffers, suffix);
+
+	}
+
+	private String finish(Buffers buffers, byte[] suffix) {
+
+		final MessageDigest digest = buffers.digest;
+
+		if (suffix != null) {
+			digest.update(suffix);
+		}
+
+		try {
+			digest.digest(buffers.output, 0, digestLength);
+		}
+		catch (DigestException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		final int length = Hex.encode(buffers.output, 0, digestLength, buffers.hex);
+
+		return new String(buffers.hex, 0, length);
+
+	}
+
+	private static MessageDigest createDigest(String algorithm) {
+
+		try {
+			return MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+
+	}
+
+	/**
+	 * Per-thread state: the digest, the encoder and the scratch buffers they use.
+	 */
+	final private static class Buffers {
+
+		final private MessageDigest digest;
+
+		final private CharsetEncoder encoder;
+
+		final private byte[] output;
+
+		final private char[] hex;
+
+		private char[] chars = new char[INITIAL_BUFFER_SIZE];
+
+		private CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+		private ByteBuffer byteBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE * 4);
+
+		Buffers(MessageDigest digest, CharsetEncoder encoder) {
+
+			this.digest = digest;
+			this.encoder = encoder;
+			this.encoder.onMalformedInput(CodingErrorAction.REPLACE);
+			this.encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			this.output = new byte[digest.getDigestLength()];
+			this.hex = new char[output.length * 2];
+
+		}
+
+		char[] chars(int length) {
+
+			if (chars.length < length) {
+				chars = new char[length];
+				charBuffer = CharBuffer.wrap(chars);
+			}
+
+			return chars;
+
+		}
+
+		ByteBuffer bytes(int length) {
+
+			if (byteBuffer.capacity() < length) {
+				byteBuffer = ByteBuffer.allocate(length);
+			}
+
+			byteBuffer.clear();
+
+			return byteBuffer;
+
+		}
+
+	}
+
+}
@@ -30,5 +30,32 @@ public interface PasswordEncrypter {
 	 * @return a {@link String}.
 	 */
 	public String encrypt(String password);
-	
+
+	/**
+	 * Tells if a password matches an encrypted one. Implementations must compare the encrypted
+	 * values in constant time (for example, using
+	 * {@link EncryptionUtils#constantTimeEquals(String, String)}) and must not treat
+	 * <code>password</code> as already encrypted.
+	 * 
+	 * @param password a {@link String} containing the password as typed by the user. It cannot be
+	 * null.
+	 * @param encryptedPassword a {@link String} containing the stored, encrypted password. It
+	 * cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean matches(String password, String encryptedPassword);
+
+	/**
+	 * Encrypts <code>password</code> again if <code>encryptedPassword</code>, which must match it,
+	 * was generated by an older or weaker scheme than the one currently used by this encrypter.
+	 * 
+	 * @param password a {@link String} containing the password as typed by the user. It cannot be
+	 * null.
+	 * @param encryptedPassword a {@link String} containing the stored, encrypted password. It
+	 * cannot be null.
+	 * @return a {@link String} containing the new encrypted password or <code>null</code> if
+	 * <code>encryptedPassword</code> is up to date.
+	 */
+	public String rehash(String password, String encryptedPassword);
+
 }
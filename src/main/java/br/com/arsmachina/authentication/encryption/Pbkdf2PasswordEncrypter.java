@@ -0,0 +1,351 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * {@link HashingPasswordEncrypter} implementation using PBKDF2 with HMAC-SHA1 and a random
+ * per-password salt. Hashes have the <code>iterations$salt$hash</code> format, with salt and hash
+ * in hexadecimal, so the iteration count can change without invalidating existing hashes. Its
+ * identifier in {@link DelegatingPasswordEncrypter} is <code>pbkdf2</code>.
+ *
+ * The iteration count can be fixed or chosen by {@link #calibrate(long, int)}, which benchmarks
+ * the host until hashing one password takes about the given time. Hashes whose iteration count
+ * is below 3/4 of the current one are upgraded by {@link #rehash(String, String)}; the margin
+ * keeps the small variations between calibrations from triggering upgrades.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class Pbkdf2PasswordEncrypter implements HashingPasswordEncrypter {
+
+	/**
+	 * Identifier of this hashing scheme.
+	 */
+	public static final String ID = "pbkdf2";
+
+	/**
+	 * Minimum number of iterations accepted by the constructor.
+	 */
+	public static final int MINIMUM_ITERATIONS = 1000;
+
+	/**
+	 * Maximum number of iterations chosen by {@link #calibrate(long, int)}.
+	 */
+	public static final int MAXIMUM_ITERATIONS = 10000000;
+
+	final private static String ALGORITHM = "PBKDF2WithHmacSHA1";
+
+	final private static int SALT_LENGTH = 16;
+
+	final private static int HASH_LENGTH = 20;
+
+	final private static char SEPARATOR = '$';
+
+	final private static int CALIBRATION_START = 1000;
+
+	final private static int CALIBRATION_ROUNDS = 3;
+
+	final private static SecureRandom RANDOM = new SecureRandom();
+
+	final private int iterations;
+
+	private long calibrationTarget;
+
+	private long calibrationTime;
+
+	final private ThreadLocal<SecretKeyFactory> factories = new ThreadLocal<SecretKeyFactory>() {
+
+		@Override
+		protected SecretKeyFactory initialValue() {
+			return createFactory();
+		}
+
+	};
+
+	/**
+	 * Constructor that receives a fixed iteration count.
+	 *
+	 * @param iterations an <code>int</code>. It must be at least {@link #MINIMUM_ITERATIONS}.
+	 */
+	public Pbkdf2PasswordEncrypter(int iterations) {
+
+		if (iterations < MINIMUM_ITERATIONS) {
+			throw new IllegalArgumentException("Parameter iterations must be at least "
+					+ MINIMUM_ITERATIONS);
+		}
+
+		createFactory();
+		this.iterations = iterations;
+
+	}
+
+	/**
+	 * Creates an encrypter whose iteration count makes hashing one password on this host take
+	 * about <code>targetMillis</code> milliseconds. The chosen count is available through
+	 * {@link #getIterations()} and {@link #toString()}.
+	 *
+	 * @param targetMillis a <code>long</code> containing the hashing time target in milliseconds.
+	 * It must be positive.
+	 * @param minimumIterations an <code>int</code> used when the host is too slow to reach it
+	 * within the target. It must be at least {@link #MINIMUM_ITERATIONS}.
+	 * @return a {@link Pbkdf2PasswordEncrypter}.
+	 */
+	public static Pbkdf2PasswordEncrypter calibrate(long targetMillis, int minimumIterations) {
+
+		if (targetMillis <= 0) {
+			throw new IllegalArgumentException("Parameter targetMillis must be positive");
+		}
+
+		if (minimumIterations < MINIMUM_ITERATIONS) {
+			throw new IllegalArgumentException("Parameter minimumIterations must be at least "
+					+ MINIMUM_ITERATIONS);
+		}
+
+		final long target = targetMillis * 1000000L;
+		final char[] password = "calibration".toCharArray();
+		final byte[] salt = generateSalt();
+		final SecretKeyFactory factory = createFactory();
+
+		int probe = CALIBRATION_START;
+		long elapsed = measure(factory, password, salt, probe);
+
+		// double the probe until it takes a quarter of the target, so the timer resolution and
+		// the fixed costs of each hash do not dominate the measurement
+		while (elapsed < target / 4 && probe <= MAXIMUM_ITERATIONS / 2) {
+			probe *= 2;
+			elapsed = measure(factory, password, salt, probe);
+		}
+
+		long chosen = probe * target / Math.max(elapsed, 1);
+		chosen = chosen - chosen % 1000;
+		chosen = Math.max(minimumIterations, Math.min(MAXIMUM_ITERATIONS, chosen));
+
+		final Pbkdf2PasswordEncrypter encrypter = new Pbkdf2PasswordEncrypter((int) chosen);
+		encrypter.calibrationTarget = targetMillis;
+		encrypter.calibrationTime = measure(factory, password, salt, (int) chosen) / 1000000L;
+
+		return encrypter;
+
+	}
+
+	/**
+	 * Returns the best time, in nanoseconds, of some hashes with a given iteration count.
+	 */
+	private static long measure(SecretKeyFactory factory, char[] password, byte[] salt,
+			int iterations) {
+
+		long best = Long.MAX_VALUE;
+
+		for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+
+			final long start = System.nanoTime();
+			derive(factory, password, salt, iterations);
+			best = Math.min(best, System.nanoTime() - start);
+
+		}
+
+		return best;
+
+	}
+
+	/**
+	 * Returns the number of iterations used for new hashes.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns the hashing time target passed to {@link #calibrate(long, int)} or <code>0</code>
+	 * if this encrypter was not calibrated.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getCalibrationTarget() {
+		return calibrationTarget;
+	}
+
+	/**
+	 * Returns the time, in milliseconds, measured for one hash with the chosen iteration count
+	 * during calibration or <code>0</code> if this encrypter was not calibrated.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getCalibrationTime() {
+		return calibrationTime;
+	}
+
+	public String getId() {
+		return ID;
+	}
+
+	public String encrypt(String password) {
+		return isEncrypted(password) ? password : hash(password);
+	}
+
+	public String hash(String password) {
+
+		final byte[] salt = generateSalt();
+		final byte[] hash = derive(factories.get(), password.toCharArray(), salt, iterations);
+
+		final StringBuilder builder = new StringBuilder(10 + 2 * (SALT_LENGTH + HASH_LENGTH));
+		builder.append(iterations).append(SEPARATOR);
+		builder.append(Hex.encode(salt)).append(SEPARATOR);
+		builder.append(Hex.encode(hash));
+
+		return builder.toString();
+
+	}
+
+	public boolean isEncrypted(String value) {
+		return parseIterations(value) > 0;
+	}
+
+	public boolean matches(String password, String encryptedPassword) {
+
+		final int storedIterations = parseIterations(encryptedPassword);
+
+		if (storedIterations <= 0) {
+			return false;
+		}
+
+		final int saltEnd = encryptedPassword.lastIndexOf(SEPARATOR);
+		final byte[] salt = Hex.decode(encryptedPassword.substring(
+				encryptedPassword.indexOf(SEPARATOR) + 1, saltEnd));
+		final byte[] hash = Hex.decode(encryptedPassword.substring(saltEnd + 1));
+
+		final byte[] actual = derive(factories.get(), password.toCharArray(), salt,
+				storedIterations);
+
+		return EncryptionUtils.constantTimeEquals(actual, hash);
+
+	}
+
+	/**
+	 * Hashes <code>password</code> again if <code>encryptedPassword</code> used less than 3/4 of
+	 * the current iteration count.
+	 *
+	 * @param password a {@link String}.
+	 * @param encryptedPassword a {@link String}.
+	 * @return a {@link String} or <code>null</code>.
+	 */
+	public String rehash(String password, String encryptedPassword) {
+
+		final int storedIterations = parseIterations(encryptedPassword);
+
+		return storedIterations < iterations - iterations / 4 ? hash(password) : null;
+
+	}
+
+	/**
+	 * Returns the iteration count of a hash or <code>-1</code> if it is not a valid one.
+	 */
+	private static int parseIterations(String value) {
+
+		final int first = value.indexOf(SEPARATOR);
+		final int last = value.lastIndexOf(SEPARATOR);
+
+		if (first <= 0 || first > 9 || last != first + 1 + 2 * SALT_LENGTH
+				|| value.length() != last + 1 + 2 * HASH_LENGTH) {
+			return -1;
+		}
+
+		for (int i = 0; i < value.length(); i++) {
+
+			if (i == first || i == last) {
+				continue;
+			}
+
+			final char c = value.charAt(i);
+			final boolean digit = c >= '0' && c <= '9';
+			final boolean valid = i < first ? digit : digit || (c >= 'a' && c <= 'f');
+
+			if (valid == false) {
+				return -1;
+			}
+
+		}
+
+		return Integer.parseInt(value.substring(0, first));
+
+	}
+
+	private static byte[] derive(SecretKeyFactory factory, char[] password, byte[] salt,
+			int iterations) {
+
+		final PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_LENGTH * 8);
+
+		try {
+			return factory.generateSecret(spec).getEncoded();
+		}
+		catch (InvalidKeySpecException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		finally {
+			spec.clearPassword();
+		}
+
+	}
+
+	private static byte[] generateSalt() {
+
+		final byte[] salt = new byte[SALT_LENGTH];
+		RANDOM.nextBytes(salt);
+
+		return salt;
+
+	}
+
+	private static SecretKeyFactory createFactory() {
+
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+
+	}
+
+	/**
+	 * Returns a description of this encrypter including its iteration count and, if it was
+	 * calibrated, the target and measured hashing times.
+	 *
+	 * @return a {@link String}.
+	 */
+	@Override
+	public String toString() {
+
+		final StringBuilder builder = new StringBuilder(ALGORITHM);
+		builder.append(", ").append(iterations).append(" iterations");
+
+		if (calibrationTarget > 0) {
+			builder.append(" (calibrated to ").append(calibrationTarget);
+			builder.append(" ms, measured ").append(calibrationTime).append(" ms)");
+		}
+
+		return builder.toString();
+
+	}
+
+}
@@ -14,26 +14,54 @@
 
 package br.com.arsmachina.authentication.encryption;
 
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.Charset;
 
 /**
- * {@link PasswordEncrypter} implementation using the SHA-1 algorithm.
+ * {@link PasswordEncrypter} implementation using the SHA-1 algorithm. Hashing is done by a
+ * {@link MessageDigestHasher}, so instances are thread-safe and do not create a new
+ * {@link java.security.MessageDigest} for each password. Its identifier in
+ * {@link DelegatingPasswordEncrypter} is <code>sha1</code>.
  * 
  * @author Thiago H. de Paula Figueiredo
  */
-public class Sha1PasswordEncrypter implements PasswordEncrypter {
+public class Sha1PasswordEncrypter implements HashingPasswordEncrypter {
 
-	final private String salt;
+	/**
+	 * Identifier of this hashing scheme.
+	 */
+	public static final String ID = "sha1";
+
+	final private static String ALGORITHM = "SHA1";
+
+	final private static int ENCRYPTED_LENGTH = 40;
+
+	final private MessageDigestHasher hasher;
+
+	final private byte[] salt;
 
 	/**
-	 * Constructor that receives a salt value.
+	 * Constructor that receives a salt value and the charset used to convert passwords into
+	 * bytes. Use this constructor with the platform default charset when existing passwords were
+	 * encrypted with a version that used it.
+	 * 
+	 * @param salt a {@link String}.
+	 * @param charset a {@link Charset}. It cannot be null.
+	 */
+	public Sha1PasswordEncrypter(String salt, Charset charset) {
+		this.hasher = new MessageDigestHasher(ALGORITHM, charset);
+		this.salt = hasher.encode(salt);
+	}
+
+	/**
+	 * Constructor that receives a salt value. Passwords are converted into bytes using the
+	 * platform default charset, like previous versions did, so existing hashes keep matching. Use
+	 * {@link #Sha1PasswordEncrypter(String, Charset)} with {@link MessageDigestHasher#UTF_8} to
+	 * get the same hashes on every host.
 	 * 
 	 * @param salt a {@link String}.
 	 */
 	public Sha1PasswordEncrypter(String salt) {
-		this.salt = salt;
+		this(salt, Charset.defaultCharset());
 	}
 	
 	/**
@@ -43,45 +71,86 @@ public class Sha1PasswordEncrypter implements PasswordEncrypter {
 		this(null);
 	}
 
+	public String getId() {
+		return ID;
+	}
+
 	public String encrypt(String password) {
 
 		// already encrypted
-		if (password.length() == 40) {
+		if (isEncrypted(password)) {
 			return password;
 		}
-		
-		if (salt != null) {
-			password = password + salt;
-		}
 
-		MessageDigest messageDigest = null;
+		return hash(password);
 		
-		try {
-			messageDigest = MessageDigest.getInstance("SHA1");
-		}
-		catch (NoSuchAlgorithmException e) {
-			throw new IllegalArgumentException(e.getMessage(), e);
+	}
+
+	public String hash(String password) {
+		return hasher.hashToHex(password, salt);
+	}
+
+	/**
+	 * Tells if <code>value</code> is made of 40 hexadecimal digits.
+	 * 
+	 * @param value a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isEncrypted(String value) {
+
+		if (value.length() != ENCRYPTED_LENGTH) {
+			return false;
 		}
-		
-		messageDigest.reset();
-		messageDigest.update(password.getBytes());
 
-		final byte[] bytes = messageDigest.digest();
-		String encrypted = new BigInteger(1, bytes).toString(16);
-		
-		if (encrypted.length() < 40) {
-			
-			final StringBuilder builder = new StringBuilder(encrypted);
-			while (builder.length() < 40) {
-				builder.insert(0, '0');
+		for (int i = 0; i < ENCRYPTED_LENGTH; i++) {
+
+			final char c = value.charAt(i);
+
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+				return false;
 			}
-			
-			encrypted = builder.toString();
-			
+
 		}
-		
-		return encrypted;
-		
+
+		return true;
+
+	}
+
+	public boolean matches(String password, String encryptedPassword) {
+		return EncryptionUtils.constantTimeEquals(hash(password), encryptedPassword);
+	}
+
+	/**
+	 * Returns <code>null</code>, as there is only one SHA-1 variant.
+	 * 
+	 * @param password a {@link String}.
+	 * @param encryptedPassword a {@link String}.
+	 * @return <code>null</code>.
+	 */
+	public String rehash(String password, String encryptedPassword) {
+		return null;
+	}
+
+	/**
+	 * Encrypts a password given as a <code>char</code> array. Unlike {@link #encrypt(String)},
+	 * the password is always encrypted, whatever its length.
+	 * 
+	 * @param password a <code>char</code> array. It cannot be null.
+	 * @return a {@link String}.
+	 */
+	public String encrypt(char[] password) {
+		return hasher.hashToHex(password, 0, password.length, salt);
+	}
+
+	/**
+	 * Encrypts a password given as a <code>byte</code> array, which is hashed as is. Unlike
+	 * {@link #encrypt(String)}, the password is always encrypted, whatever its length.
+	 * 
+	 * @param password a <code>byte</code> array. It cannot be null.
+	 * @return a {@link String}.
+	 */
+	public String encrypt(byte[] password) {
+		return hasher.hashToHex(password, salt);
 	}
 
 }
@@ -0,0 +1,341 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package br.com.arsmachina.authentication.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Row of the materialized grants of users, maintained by
+ * {@link br.com.arsmachina.authentication.dao.DirectPermissionDAO}: one per user and permission
+ * given by name through a permission group of the user, its own or one owned by an user group it
+ * belongs to, directly or through nested groups, and not removed by the user by exact name.
+ * Implied permissions and names covered by wildcards are not included. Rows are only written
+ * through the named queries declared here; this class exists so the table, its primary key and
+ * its index are created with the rest of the schema.
+ * 
+ * The primary key columns follow the property names of {@link Key}, so it starts with
+ * <code>permission_id</code> and the index on <code>user_id</code> answers the statements scoped
+ * by user. There are no foreign keys: the rows of an user are deleted before it is removed and
+ * {@link br.com.arsmachina.authentication.dao.DirectPermissionDAO#rebuild()} recovers from any
+ * other drift.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+@Entity
+@Table(name = "user_direct_permission")
+@org.hibernate.annotations.Table(appliesTo = "user_direct_permission", indexes = @Index(name =
+		"user_direct_permission_user_idx", columnNames = "user_id"))
+@NamedQueries( {
+		@NamedQuery(name = DirectPermission.DELETE_USER, query = "delete from DirectPermission d "
+				+ "where d.key.userId = :userId"),
+		@NamedQuery(name = DirectPermission.DELETE_ALL, query = "delete from DirectPermission"),
+		@NamedQuery(name = DirectPermission.COUNT, query = "select count(d) "
+				+ "from DirectPermission d"),
+		@NamedQuery(name = DirectPermission.HAS_PERMISSION, query = "select count(d) "
+				+ "from DirectPermission d, Permission p where p.id = d.key.permissionId "
+				+ "and d.key.userId = :userId and p.name = :permissionName") })
+@NamedNativeQueries( {
+		@NamedNativeQuery(name = DirectPermission.DELETE_REVOKED_FROM_USER,
+				query = DirectPermission.DELETE + "d.user_id = :userId and not "
+						+ DirectPermission.GRANTED),
+		@NamedNativeQuery(name = DirectPermission.INSERT_GRANTED_TO_USER,
+				query = DirectPermission.INSERT + " and g.user_id = :userId"
+						+ DirectPermission.MISSING),
+		@NamedNativeQuery(name = DirectPermission.DELETE_REVOKED_FROM_USER_GROUP,
+				query = DirectPermission.DELETE + "d.user_id in ("
+						+ DirectPermission.USER_GROUP_USERS + ") and not "
+						+ DirectPermission.GRANTED),
+		@NamedNativeQuery(name = DirectPermission.INSERT_GRANTED_TO_USER_GROUP,
+				query = DirectPermission.INSERT + " and g.user_id in ("
+						+ DirectPermission.USER_GROUP_USERS + ")" + DirectPermission.MISSING),
+		@NamedNativeQuery(name = DirectPermission.REVOKE_USER_GROUP,
+				query = DirectPermission.DELETE + "d.user_id in (select m.user_id "
+						+ "from usergroup_user m where m.usergroup_id = :userGroupId) "
+						+ "and not ((exists (" + DirectPermission.OWN_GRANT + ") or exists ("
+						+ DirectPermission.INHERITED_GRANT + " and uu.usergroup_id <> "
+						+ ":userGroupId)) and " + DirectPermission.NOT_REMOVED + ")"),
+		@NamedNativeQuery(name = DirectPermission.DELETE_REVOKED_FROM_PERMISSION_GROUP,
+				query = DirectPermission.DELETE + "(d.user_id in ("
+						+ DirectPermission.PERMISSION_GROUP_USERS + ") or d.permission_id in ("
+						+ DirectPermission.PERMISSION_GROUP_PERMISSIONS + ")) and not "
+						+ DirectPermission.GRANTED),
+		@NamedNativeQuery(name = DirectPermission.INSERT_GRANTED_TO_PERMISSION_GROUP,
+				query = DirectPermission.INSERT + " and g.user_id in ("
+						+ DirectPermission.PERMISSION_GROUP_USERS + ")"
+						+ DirectPermission.MISSING),
+		@NamedNativeQuery(name = DirectPermission.REVOKE_PERMISSION_GROUP,
+				query = DirectPermission.DELETE + "d.user_id in ("
+						+ DirectPermission.PERMISSION_GROUP_USERS + ") and d.permission_id in ("
+						+ DirectPermission.PERMISSION_GROUP_PERMISSIONS + ") and not ((exists ("
+						+ DirectPermission.OWN_GRANT + " and ug.permissiongroup_id <> "
+						+ ":permissionGroupId) or exists (" + DirectPermission.INHERITED_GRANT
+						+ " and pg.id <> :permissionGroupId)) and "
+						+ DirectPermission.NOT_REMOVED + ")"),
+		@NamedNativeQuery(name = DirectPermission.INSERT_ALL, query = DirectPermission.INSERT) })
+public class DirectPermission {
+
+	/**
+	 * Name of the query that deletes all rows of an user (the <code>userId</code> parameter).
+	 */
+	public static final String DELETE_USER = "DirectPermission.deleteUser";
+
+	/**
+	 * Name of the query that deletes all rows.
+	 */
+	public static final String DELETE_ALL = "DirectPermission.deleteAll";
+
+	/**
+	 * Name of the query that counts all rows.
+	 */
+	public static final String COUNT = "DirectPermission.count";
+
+	/**
+	 * Name of the query that counts the rows, <code>0</code> or <code>1</code>, of an user (the
+	 * <code>userId</code> parameter) for the permission with a given name (the
+	 * <code>permissionName</code> parameter).
+	 */
+	public static final String HAS_PERMISSION = "DirectPermission.hasPermission";
+
+	/**
+	 * Name of the native query that deletes the rows of an user (the <code>userId</code>
+	 * parameter) that are not granted anymore.
+	 */
+	public static final String DELETE_REVOKED_FROM_USER = "DirectPermission.deleteRevokedFromUser";
+
+	/**
+	 * Name of the native query that inserts the missing rows of an user (the <code>userId</code>
+	 * parameter).
+	 */
+	public static final String INSERT_GRANTED_TO_USER = "DirectPermission.insertGrantedToUser";
+
+	/**
+	 * Name of the native query that deletes the rows that are not granted anymore of the users of
+	 * an user group (the <code>userGroupId</code> parameter) and all its descendants.
+	 */
+	public static final String DELETE_REVOKED_FROM_USER_GROUP =
+		"DirectPermission.deleteRevokedFromUserGroup";
+
+	/**
+	 * Name of the native query that inserts the missing rows of the users of an user group (the
+	 * <code>userGroupId</code> parameter) and all its descendants.
+	 */
+	public static final String INSERT_GRANTED_TO_USER_GROUP =
+		"DirectPermission.insertGrantedToUserGroup";
+
+	/**
+	 * Name of the native query that deletes the rows of the users of an user group (the
+	 * <code>userGroupId</code> parameter) that would not be granted without their membership in
+	 * it. It must be executed before the group is removed.
+	 */
+	public static final String REVOKE_USER_GROUP = "DirectPermission.revokeUserGroup";
+
+	/**
+	 * Name of the native query that deletes the rows that are not granted anymore of the users of
+	 * a permission group (the <code>permissionGroupId</code> parameter) or of its permissions, so
+	 * the users that lost the group when its owner changed are covered too.
+	 */
+	public static final String DELETE_REVOKED_FROM_PERMISSION_GROUP =
+		"DirectPermission.deleteRevokedFromPermissionGroup";
+
+	/**
+	 * Name of the native query that inserts the missing rows of the users of a permission group
+	 * (the <code>permissionGroupId</code> parameter), own or inherited.
+	 */
+	public static final String INSERT_GRANTED_TO_PERMISSION_GROUP =
+		"DirectPermission.insertGrantedToPermissionGroup";
+
+	/**
+	 * Name of the native query that deletes the rows of the users of a permission group (the
+	 * <code>permissionGroupId</code> parameter) that no other group grants. It must be executed
+	 * before the group is removed.
+	 */
+	public static final String REVOKE_PERMISSION_GROUP = "DirectPermission.revokePermissionGroup";
+
+	/**
+	 * Name of the native query that inserts the rows of all users into an empty table.
+	 */
+	public static final String INSERT_ALL = "DirectPermission.insertAll";
+
+	/**
+	 * Pairs of user id and permission id granted by the own permission groups of users.
+	 */
+	static final String OWN = "select ug.user_id, gp.permission_id from user_permissiongroup ug "
+			+ "join permissiongroup_permission gp on gp.permissiongroup_id = ug.permissiongroup_id";
+
+	/**
+	 * Pairs of user id and permission id granted by the permission groups owned by the user groups
+	 * of users or by their ancestors.
+	 */
+	static final String INHERITED = "select uu.user_id, gp.permission_id from usergroup_user uu "
+			+ "join usergroup_closure c on c.descendant_id = uu.usergroup_id "
+			+ "join permissiongroup pg on pg.owner_id = c.ancestor_id "
+			+ "join permissiongroup_permission gp on gp.permissiongroup_id = pg.id";
+
+	static final String OWN_GRANT = OWN
+			+ " where ug.user_id = d.user_id and gp.permission_id = d.permission_id";
+
+	static final String INHERITED_GRANT = INHERITED
+			+ " where uu.user_id = d.user_id and gp.permission_id = d.permission_id";
+
+	static final String NOT_REMOVED = "not exists (select 1 from user_removedpermission r "
+			+ "where r.user_id = d.user_id and r.permission_id = d.permission_id)";
+
+	/**
+	 * Tells if the row aliased <code>d</code> is still granted.
+	 */
+	static final String GRANTED = "((exists (" + OWN_GRANT + ") or exists (" + INHERITED_GRANT
+			+ ")) and " + NOT_REMOVED + ")";
+
+	static final String DELETE = "delete from user_direct_permission d where ";
+
+	/**
+	 * Inserts the granted pairs aliased <code>g</code>, to be narrowed by appending conditions.
+	 */
+	static final String INSERT = "insert into user_direct_permission (user_id, permission_id) "
+			+ "select distinct g.user_id, g.permission_id from (" + OWN + " union all "
+			+ INHERITED + ") g where not exists (select 1 from user_removedpermission r "
+			+ "where r.user_id = g.user_id and r.permission_id = g.permission_id)";
+
+	static final String MISSING = " and not exists (select 1 from user_direct_permission d "
+			+ "where d.user_id = g.user_id and d.permission_id = g.permission_id)";
+
+	static final String USER_GROUP_USERS = "select uu.user_id from usergroup_user uu "
+			+ "join usergroup_closure s on s.descendant_id = uu.usergroup_id "
+			+ "where s.ancestor_id = :userGroupId";
+
+	static final String PERMISSION_GROUP_USERS = "select ug.user_id from user_permissiongroup ug "
+			+ "where ug.permissiongroup_id = :permissionGroupId union "
+			+ "select uu.user_id from usergroup_user uu "
+			+ "join usergroup_closure c on c.descendant_id = uu.usergroup_id "
+			+ "join permissiongroup pg on pg.owner_id = c.ancestor_id "
+			+ "where pg.id = :permissionGroupId";
+
+	static final String PERMISSION_GROUP_PERMISSIONS = "select gp.permission_id "
+			+ "from permissiongroup_permission gp where gp.permissiongroup_id = :permissionGroupId";
+
+	private Key key;
+
+	/**
+	 * Returns the value of the <code>key</code> property.
+	 * 
+	 * @return a {@link Key}.
+	 */
+	@EmbeddedId
+	public Key getKey() {
+		return key;
+	}
+
+	/**
+	 * Changes the value of the <code>key</code> property.
+	 * 
+	 * @param key a {@link Key}.
+	 */
+	public void setKey(Key key) {
+		this.key = key;
+	}
+
+	/**
+	 * Primary key of {@link DirectPermission}.
+	 * 
+	 * @author Thiago H. de Paula Figueiredo
+	 */
+	@Embeddable
+	public static class Key implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Integer userId;
+
+		private Integer permissionId;
+
+		/**
+		 * Returns the value of the <code>userId</code> property.
+		 * 
+		 * @return an {@link Integer}.
+		 */
+		@Column(name = "user_id", nullable = false)
+		public Integer getUserId() {
+			return userId;
+		}
+
+		/**
+		 * Changes the value of the <code>userId</code> property.
+		 * 
+		 * @param userId an {@link Integer}.
+		 */
+		public void setUserId(Integer userId) {
+			this.userId = userId;
+		}
+
+		/**
+		 * Returns the value of the <code>permissionId</code> property.
+		 * 
+		 * @return an {@link Integer}.
+		 */
+		@Column(name = "permission_id", nullable = false)
+		public Integer getPermissionId() {
+			return permissionId;
+		}
+
+		/**
+		 * Changes the value of the <code>permissionId</code> property.
+		 * 
+		 * @param permissionId an {@link Integer}.
+		 */
+		public void setPermissionId(Integer permissionId) {
+			this.permissionId = permissionId;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (userId != null ? userId.hashCode() : 0)
+					+ (permissionId != null ? permissionId.hashCode() : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if (this == obj) {
+				return true;
+			}
+
+			if (obj instanceof Key == false) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return (userId != null ? userId.equals(other.userId) : other.userId == null)
+					&& (permissionId != null ? permissionId.equals(other.permissionId)
+							: other.permissionId == null);
+
+		}
+
+	}
+
+}
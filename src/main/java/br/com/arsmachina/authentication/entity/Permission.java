@@ -169,12 +169,21 @@ final public class Permission implements Comparable<Permission>, Serializable {
 	}
 
 	/**
-	 * Changes the value of the <code>name</code> property.
+	 * Changes the value of the <code>name</code> property. Renaming a permission that already had
+	 * a name changes {@link PermissionGroup#getModificationCount()}. Setting the name of a new or
+	 * just loaded permission does not.
 	 * 
 	 * @param name a {@link String}.
 	 */
 	public void setName(String name) {
+
+		final boolean renamed = this.name != null && this.name.equals(name) == false;
 		this.name = name;
+
+		if (renamed) {
+			PermissionGroup.renamed();
+		}
+
 	}
 
 }
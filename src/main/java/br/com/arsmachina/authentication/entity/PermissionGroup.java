@@ -15,8 +15,9 @@
 package br.com.arsmachina.authentication.entity;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -29,6 +30,7 @@ import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.OrderBy;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
@@ -36,6 +38,10 @@ import org.hibernate.validator.Length;
 import org.hibernate.validator.NotNull;
 import org.hibernate.validator.Size;
 
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+import br.com.arsmachina.authentication.permission.PermissionSet;
+import br.com.arsmachina.authentication.permission.PermissionTrie;
+
 /**
  * Class that represents a group of permissions. Each one can belong to an
  * {@link UserGroup} or belong to all of them (<code>owner</code> property set
@@ -66,16 +72,26 @@ final public class PermissionGroup implements Comparable<Permission>,
 	 */
 	public static final String ALL_USERS_PERMISSION_GROUP_NAME = "All users";
 
+	final private static AtomicLong MODIFICATIONS = new AtomicLong();
+
+	final private static AtomicLong RENAMES = new AtomicLong();
+
 	private Integer id;
 
 	private String name;
 
-	private List<Permission> permissions = new ArrayList<Permission>();
+	private Set<Permission> permissions = new LinkedHashSet<Permission>();
 
 	private UserGroup owner;
 
 	private boolean shared;
 
+	private transient int version;
+
+	private transient boolean ownerSet;
+
+	private transient Compiled compiled;
+
 	/**
 	 * No-arg constructor.
 	 */
@@ -183,14 +199,14 @@ final public class PermissionGroup implements Comparable<Permission>,
 	/**
 	 * Returns the value of the <code>permissions</code> property.
 	 * 
-	 * @return a {@link List<Permission>}.
+	 * @return a {@link Set<Permission>}.
 	 */
 	@ManyToMany
 	@JoinTable(name = "permissiongroup_permission", joinColumns = @JoinColumn(name = "permissiongroup_id", nullable = false), inverseJoinColumns = @JoinColumn(name = "permission_id", nullable = false))
 	@OrderBy("name asc")
 	@Size(min = 1, max = 100)
 	@Cache(usage=CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "permission")
-	public List<Permission> getPermissions() {
+	public Set<Permission> getPermissions() {
 		return permissions;
 	}
 
@@ -225,12 +241,22 @@ final public class PermissionGroup implements Comparable<Permission>,
 	}
 
 	/**
-	 * Altera o valor da propriedade <code>owner</code>.
+	 * Altera o valor da propriedade <code>owner</code>. A change of owner changes the permission
+	 * groups inherited by the members of both user groups, so it changes
+	 * {@link #getModificationCount()}, except when Hibernate sets the owner of a group it loads.
 	 * 
 	 * @param <code>owner</code> o novo valor da propriedade <code>owner</code>.
 	 */
 	public void setOwner(UserGroup owner) {
+
+		// the first call on a persistent instance is Hibernate loading it
+		if (owner != this.owner && (ownerSet || id == null)) {
+			modified();
+		}
+
 		this.owner = owner;
+		ownerSet = true;
+
 	}
 
 	/**
@@ -240,8 +266,9 @@ final public class PermissionGroup implements Comparable<Permission>,
 	 */
 	public void add(Permission permission) {
 
-		if (permissions.contains(permission) == false) {
-			permissions.add(permission);
+		if (permissions.add(permission)) {
+			version++;
+			modified();
 		}
 
 	}
@@ -252,44 +279,158 @@ final public class PermissionGroup implements Comparable<Permission>,
 	 * @param permission a {@link Permission}.
 	 */
 	public void remove(Permission permission) {
-		permissions.remove(permission);
+
+		if (permissions.remove(permission)) {
+			version++;
+			modified();
+		}
+
 	}
 
 	/**
-	 * Changes the value of the <code>permissions</code> property.
+	 * Changes the value of the <code>permissions</code> property. Hibernate calls it whenever it
+	 * loads a group, so it only invalidates what was compiled from this instance and does not
+	 * change {@link #getModificationCount()}.
 	 * 
-	 * @param permissions a {@link List<Permission>}.
+	 * @param permissions a {@link Set<Permission>}.
 	 * @deprecated Use {@link #add(Permission)} and {@link #remove(Permission)}
 	 *             instead.
 	 */
-	public void setPermissions(List<Permission> permissions) {
+	public void setPermissions(Set<Permission> permissions) {
 		this.permissions = permissions;
+		version++;
 	}
 
 	/**
-	 * Tells if this user has at least one of a set of permissions.
+	 * Tells if this user has at least one of a set of permissions, directly or through a wildcard
+	 * permission such as <code>report:*</code>.
 	 * 
 	 * @param permissionName an array of {@link String}s.
 	 * @return a <code>boolean</code>.
 	 */
 	public boolean hasPermission(String... permissionNames) {
 
-		boolean result = false;
+		final Compiled current = compile();
 
-		outer: for (Permission permission : permissions) {
+		return EffectivePermissions.hasPermission(current.permissionSet, current.permissionTrie,
+				permissionNames);
 
-			for (String permissionName : permissionNames) {
+	}
 
-				if (permission.getName().equals(permissionName)) {
-					result = true;
-					break outer;
+	/**
+	 * Returns the permissions of this group compiled into a {@link PermissionSet}. It is
+	 * compiled again after this group is changed through {@link #add(Permission)},
+	 * {@link #remove(Permission)} or {@link #setPermissions(Set)}, its permission set changes
+	 * size, or any permission is renamed.
+	 * 
+	 * @return a {@link PermissionSet}.
+	 */
+	@Transient
+	public PermissionSet getPermissionSet() {
+		return compile().permissionSet;
+	}
+
+	/**
+	 * Returns an object that is the same as long as the compiled permissions of this group do not
+	 * change, so {@link User} can tell if what it compiled from this group is still current. It is
+	 * not named like a getter, so Hibernate does not take it for a property.
+	 */
+	Object compiledState() {
+		return compile();
+	}
+
+	private Compiled compile() {
+
+		final int version = this.version;
+		final long renames = RENAMES.get();
+		final Set<Permission> permissions = this.permissions;
+		Compiled current = compiled;
+
+		if (current == null || current.isCurrent(version, renames, permissions) == false) {
+
+			final PermissionSet.Builder builder = new PermissionSet.Builder();
+
+			for (Permission permission : permissions) {
+
+				if (permission.getName() != null) {
+					builder.add(permission.getName());
 				}
 
 			}
 
+			final PermissionSet permissionSet = builder.build();
+			current = new Compiled(permissionSet,
+					PermissionTrie.compile(permissionSet, PermissionSet.EMPTY), version, renames,
+					permissions);
+			compiled = current;
+
 		}
 
-		return result;
+		return current;
+
+	}
+
+	/**
+	 * Returns a number that changes whenever any permission group is changed through
+	 * {@link #add(Permission)}, {@link #remove(Permission)} or {@link #setOwner(UserGroup)} or a
+	 * permission is renamed. Loading
+	 * groups and permissions does not change it. Anything compiled from permission groups other
+	 * than the instances it holds, such as a cache shared by many sessions, is stale if this
+	 * number changed since it was compiled.
+	 * 
+	 * @return a <code>long</code>.
+	 */
+	public static long getModificationCount() {
+		return MODIFICATIONS.get();
+	}
+
+	/**
+	 * Records that a permission group was changed.
+	 */
+	private static void modified() {
+		MODIFICATIONS.incrementAndGet();
+	}
+
+	/**
+	 * Records that a permission was renamed, which may change any group.
+	 */
+	static void renamed() {
+		RENAMES.incrementAndGet();
+		modified();
+	}
+
+	/**
+	 * A {@link PermissionSet}, its wildcards and the state of the group they were compiled from,
+	 * kept together so they are always read consistently.
+	 */
+	final private static class Compiled {
+
+		final private PermissionSet permissionSet;
+
+		final private PermissionTrie permissionTrie;
+
+		final private int version;
+
+		final private long renames;
+
+		final private Set<Permission> source;
+
+		final private int size;
+
+		Compiled(PermissionSet permissionSet, PermissionTrie permissionTrie, int version,
+				long renames, Set<Permission> source) {
+			this.permissionSet = permissionSet;
+			this.permissionTrie = permissionTrie;
+			this.version = version;
+			this.renames = renames;
+			this.source = source;
+			this.size = source.size();
+		}
+
+		boolean isCurrent(int version, long renames, Set<Permission> source) {
+			return this.version == version && this.renames == renames && this.source == source
+					&& this.size == source.size();
+		}
 
 	}
 
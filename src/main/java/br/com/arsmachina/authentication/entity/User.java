@@ -16,10 +16,13 @@ package br.com.arsmachina.authentication.entity;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.CascadeType;
@@ -30,6 +33,8 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.OrderBy;
 import javax.persistence.Table;
@@ -37,10 +42,16 @@ import javax.persistence.Transient;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.validator.Email;
 import org.hibernate.validator.Length;
 import org.hibernate.validator.NotNull;
 
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+import br.com.arsmachina.authentication.permission.PermissionExpression;
+import br.com.arsmachina.authentication.permission.PermissionImplications;
+import br.com.arsmachina.authentication.permission.PermissionSet;
+
 /**
  * Default {@link br.com.arsmachina.authentication.AbstractUser} implementation as a Hibernate/JPA
  * entity.
@@ -50,11 +61,38 @@ import org.hibernate.validator.NotNull;
 @Entity
 @Table(name = "`user`")
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
+@NamedQueries( {
+		@NamedQuery(name = User.FIND_BY_PERMISSION, query = "select u from User u "
+				+ "where exists (select g.id from PermissionGroup g join g.permissions p "
+				+ "where g in elements(u.permissionGroups) and p.name = :name) "
+				+ "and not exists (select r.id from Permission r "
+				+ "where r in elements(u.removedPermissions) and r.name = :name) "
+				+ "order by u.login"),
+		@NamedQuery(name = User.FIND_BY_PERMISSION_AFTER_LOGIN, query = "select u from User u "
+				+ "where u.login > :afterLogin "
+				+ "and exists (select g.id from PermissionGroup g join g.permissions p "
+				+ "where g in elements(u.permissionGroups) and p.name = :name) "
+				+ "and not exists (select r.id from Permission r "
+				+ "where r in elements(u.removedPermissions) and r.name = :name) "
+				+ "order by u.login") })
 final public class User implements br.com.arsmachina.authentication.AbstractUser, Comparable<User>,
 		Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Name of the query that returns, ordered by login, the users that have a permission (the
+	 * <code>name</code> parameter) through one of their own permission groups and did not remove
+	 * it. It is also declared in the PostgreSQL <code>User.hbm.xml</code> mapping.
+	 */
+	public static final String FIND_BY_PERMISSION = "User.findByPermission";
+
+	/**
+	 * Name of the query that returns the same users as {@link #FIND_BY_PERMISSION} whose logins
+	 * are greater than the <code>afterLogin</code> parameter.
+	 */
+	public static final String FIND_BY_PERMISSION_AFTER_LOGIN = "User.findByPermissionAfterLogin";
+
 	/**
 	 * Minimum e-mail length.
 	 */
@@ -91,9 +129,11 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	public static final int MINIMUM_PASSWORD_LENGTH = 6;
 
 	/**
-	 * Maximum name length.
+	 * Maximum encrypted password length. It leaves room for the <code>{id}</code> prefix and the
+	 * parameters stored by
+	 * {@link br.com.arsmachina.authentication.encryption.DelegatingPasswordEncrypter}.
 	 */
-	public static final int MAXIMUM_PASSWORD_LENGTH = 40;
+	public static final int MAXIMUM_PASSWORD_LENGTH = 128;
 
 	private Integer id;
 
@@ -115,12 +155,24 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 
 	private String password;
 
-	private List<PermissionGroup> permissionGroups = new ArrayList<PermissionGroup>();
+	private Set<PermissionGroup> permissionGroups = new LinkedHashSet<PermissionGroup>();
 
-	private List<Permission> removedPermissions = new ArrayList<Permission>();
+	private Set<Permission> removedPermissions = new LinkedHashSet<Permission>();
 
 	private List<Role> roles = new ArrayList<Role>();
 
+	private transient Set<PermissionGroup> inheritedPermissionGroups;
+
+	private transient PermissionImplications permissionImplications;
+
+	private transient int permissionsVersion;
+
+	private transient Compiled compiled;
+
+	private transient int rolesVersion;
+
+	private transient RoleIndex roleIndex;
+
 	/**
 	 * Adds a permission group to this user.
 	 * 
@@ -128,8 +180,8 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	 */
 	public void add(PermissionGroup permissionGroup) {
 
-		if (permissionGroups.contains(permissionGroup) == false) {
-			permissionGroups.add(permissionGroup);
+		if (permissionGroups.add(permissionGroup)) {
+			permissionsVersion++;
 		}
 
 	}
@@ -141,9 +193,10 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	 */
 	public void add(Role role) {
 
-		if (hasRole(role.getClass()) == false) {
+		if (hasRole(getRealClass(role)) == false) {
 			role.setUser(this);
 			roles.add(role);
+			rolesVersion++;
 		}
 
 	}
@@ -159,8 +212,8 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	 */
 	public void addRemovedPermission(Permission permission) {
 
-		if (removedPermissions.contains(permission) == false) {
-			removedPermissions.add(permission);
+		if (removedPermissions.add(permission)) {
+			permissionsVersion++;
 		}
 
 	}
@@ -177,10 +230,10 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 		if (obj == null) {
 			return false;
 		}
-		if (obj instanceof br.com.arsmachina.authentication.AbstractUser == false) {
+		if (obj instanceof User == false) {
 			return false;
 		}
-		br.com.arsmachina.authentication.AbstractUser other = (User) obj;
+		User other = (User) obj;
 		if (getLogin() == null) {
 			if (other.getLogin() != null) {
 				return false;
@@ -235,64 +288,204 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	@OrderBy("name asc")
 	@JoinTable(name = "user_permissiongroup", joinColumns = @JoinColumn(name = "user_id", nullable = false), inverseJoinColumns = @JoinColumn(name = "permissiongroup_id", nullable = false))
 	@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "permission")
-	public List<PermissionGroup> getPermissionGroups() {
+	public Set<PermissionGroup> getPermissionGroups() {
 		return permissionGroups;
 	}
 
+	/**
+	 * Returns an unmodifiable, sorted list containing all the permissions granted to this user.
+	 * It is read from {@link #getEffectivePermissions()}.
+	 * 
+	 * @return a {@link List} of {@link Permission}s.
+	 */
 	@Transient
 	final public List<Permission> getPermissions() {
+		return getEffectivePermissions().getPermissions();
+	}
 
-		Set<Permission> permissions = new HashSet<Permission>();
+	/**
+	 * Returns this user's effective permissions: the ones in its permission groups and inherited
+	 * permission groups, plus the ones they imply, minus its removed permissions. They are
+	 * computed again only after this user's permission groups or removed permissions are changed
+	 * through its methods, the compiled permissions of one of its permission groups change (see
+	 * {@link PermissionGroup#getPermissionSet()}) or its permission implications change (see
+	 * {@link #getPermissionImplications()}). Loading other users, groups and
+	 * permissions does not invalidate them. Changes made directly to the sets returned by
+	 * {@link #getPermissionGroups()} and {@link #getRemovedPermissions()} are not detected.
+	 * 
+	 * @return an {@link EffectivePermissions}.
+	 */
+	@Transient
+	public EffectivePermissions getEffectivePermissions() {
+
+		final PermissionImplications implications = permissionImplications;
+		final long implicationVersion = implications != null ? implications.getModificationCount() : 0;
+		final int version = permissionsVersion;
+		Compiled current = compiled;
+
+		if (current == null || current.isCurrent(version, implicationVersion) == false) {
+
+			Collection<PermissionGroup> groups = permissionGroups;
+
+			if (inheritedPermissionGroups != null && inheritedPermissionGroups.isEmpty() == false) {
+				groups = new LinkedHashSet<PermissionGroup>(permissionGroups);
+				groups.addAll(inheritedPermissionGroups);
+			}
 
-		for (PermissionGroup group : getPermissionGroups()) {
+			// read before compiling, so a group changed meanwhile is compiled again next time
+			final PermissionGroup[] groupArray = groups.toArray(new PermissionGroup[groups.size()]);
+			final Object[] groupStates = new Object[groupArray.length];
 
-			for (Permission permission : group.getPermissions()) {
-				permissions.add(permission);
+			for (int i = 0; i < groupArray.length; i++) {
+				groupStates[i] = groupArray[i].compiledState();
 			}
 
+			final EffectivePermissions effectivePermissions =
+				EffectivePermissions.compile(groups, removedPermissions, implications);
+			current = new Compiled(effectivePermissions, version, implicationVersion, groupArray,
+					groupStates);
+			compiled = current;
+
 		}
 
-		for (Permission permission : getRemovedPermissions()) {
-			permissions.remove(permission);
+		return current.effectivePermissions;
+
+	}
+
+	/**
+	 * Returns the permission groups this user is granted through the user groups it belongs to,
+	 * directly or through nested groups. They are not persisted with the user: they are set by
+	 * {@link br.com.arsmachina.authentication.controller.UserController} when it loads users for
+	 * authentication.
+	 * 
+	 * @return an unmodifiable {@link Set} of {@link PermissionGroup}s.
+	 */
+	@Transient
+	public Set<PermissionGroup> getInheritedPermissionGroups() {
+
+		if (inheritedPermissionGroups == null) {
+			return Collections.emptySet();
 		}
 
-		ArrayList<Permission> list = new ArrayList<Permission>(permissions);
+		return Collections.unmodifiableSet(inheritedPermissionGroups);
 
-		Collections.sort(list);
+	}
+
+	/**
+	 * Sets the permission groups this user is granted through the user groups it belongs to.
+	 * Their permissions are part of {@link #getEffectivePermissions()}, except the removed ones.
+	 * 
+	 * @param permissionGroups a {@link Collection} of {@link PermissionGroup}s. It cannot be null.
+	 */
+	public void setInheritedPermissionGroups(Collection<PermissionGroup> permissionGroups) {
 
-		return Collections.unmodifiableList(list);
+		if (permissionGroups == null) {
+			throw new IllegalArgumentException("Parameter permissionGroups cannot be null");
+		}
+
+		inheritedPermissionGroups = new LinkedHashSet<PermissionGroup>(permissionGroups);
+		permissionsVersion++;
+
+	}
+
+	/**
+	 * Returns the implications between permissions applied to this user's effective permissions.
+	 * They are not persisted with the user: they are set by
+	 * {@link br.com.arsmachina.authentication.controller.UserController} when it loads users for
+	 * authentication.
+	 * 
+	 * @return a {@link PermissionImplications} or <code>null</code> if no permission implies
+	 * others for this user.
+	 */
+	@Transient
+	public PermissionImplications getPermissionImplications() {
+		return permissionImplications;
+	}
+
+	/**
+	 * Sets the implications between permissions applied to this user's effective permissions.
+	 * 
+	 * @param permissionImplications a {@link PermissionImplications} or <code>null</code>.
+	 */
+	public void setPermissionImplications(PermissionImplications permissionImplications) {
+
+		if (this.permissionImplications != permissionImplications) {
+			this.permissionImplications = permissionImplications;
+			permissionsVersion++;
+		}
 
 	}
 
 	/**
 	 * Returns the value of the <code>removedPermissions</code> property.
 	 * 
-	 * @return a {@link List<Permission>}.
+	 * @return a {@link Set<Permission>}.
 	 */
 	@ManyToMany
 	@OrderBy("name asc")
 	@JoinTable(name = "user_removedpermission", joinColumns = @JoinColumn(name = "user_id", nullable = false), inverseJoinColumns = @JoinColumn(name = "permission_id", nullable = false))
 	@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "permission")
-	public List<Permission> getRemovedPermissions() {
+	public Set<Permission> getRemovedPermissions() {
 		return removedPermissions;
 	}
 
+	/**
+	 * Returns this user's role of a given class. Roles are looked up in an index by class, built
+	 * again when the roles are changed through this user's methods or the number of roles changes.
+	 * Hibernate proxies are indexed by, and returned as, their real instances.
+	 * 
+	 * @param <T> a {@link Role} subclass.
+	 * @param clasz a {@link Class<T>}.
+	 * @return a {@link #T} or <code>null</code>.
+	 */
 	@SuppressWarnings("unchecked")
 	public final <T extends Role> T getRole(Class<T> clasz) {
 
-		T role = null;
+		return (T) roleIndex().roles.get(clasz);
 
-		for (Role r : getRoles()) {
-			if (r.getClass().equals(clasz)) {
-				role = (T) r;
-				break;
-			}
+	}
+
+	/**
+	 * Returns the real classes of this user's roles.
+	 * 
+	 * @return an unmodifiable {@link Set} of {@link Class}es.
+	 */
+	@Transient
+	public Set<Class<? extends Role>> getRoleClasses() {
+		return Collections.unmodifiableSet(roleIndex().roles.keySet());
+	}
+
+	private RoleIndex roleIndex() {
+
+		RoleIndex index = roleIndex;
+		final int version = rolesVersion;
+
+		if (index == null || index.version != version || index.size != roles.size()) {
+			index = new RoleIndex(roles, version);
+			roleIndex = index;
+		}
+
+		return index;
+
+	}
+
+	/**
+	 * Returns a role, or the real instance behind it if it is a Hibernate proxy.
+	 */
+	private static Role unproxy(Role role) {
+
+		if (role instanceof HibernateProxy) {
+			return (Role) ((HibernateProxy) role).getHibernateLazyInitializer().getImplementation();
 		}
 
 		return role;
 
 	}
 
+	private static Class<? extends Role> getRealClass(Role role) {
+		return unproxy(role).getClass();
+	}
+
 	@OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
 	@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "user")
 	public List<Role> getRoles() {
@@ -300,22 +493,33 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	}
 
 	public boolean hasPermission(String... permissionNames) {
+		return getEffectivePermissions().hasPermission(permissionNames);
+	}
 
-		boolean result = false;
-
-		for (PermissionGroup permissionGroup : permissionGroups) {
+	public boolean hasAllPermissions(String... permissionNames) {
+		return getEffectivePermissions().hasAllPermissions(permissionNames);
+	}
 
-			if (permissionGroup.hasPermission(permissionNames)) {
-				result = true;
-				break;
-			}
+	public boolean isGranted(PermissionExpression expression) {
 
+		if (expression == null) {
+			throw new IllegalArgumentException("Parameter expression cannot be null");
 		}
 
-		return result;
+		return expression.evaluate(getEffectivePermissions());
 
 	}
 
+	/**
+	 * Returns this user's effective permissions as a {@link PermissionSet}.
+	 * 
+	 * @return a {@link PermissionSet}.
+	 */
+	@Transient
+	public PermissionSet getPermissionSet() {
+		return getEffectivePermissions().getPermissionSet();
+	}
+
 	@Override
 	public int hashCode() {
 		return login != null ? login.hashCode() : super.hashCode();
@@ -347,7 +551,11 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	 * @param role a {@link Role}.
 	 */
 	public void remove(Role role) {
-		permissionGroups.remove(role);
+
+		if (roles.remove(role)) {
+			rolesVersion++;
+		}
+
 	}
 
 	/**
@@ -361,8 +569,9 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 
 			Role role = i.next();
 
-			if (role.getClass().equals(roleClass)) {
+			if (getRealClass(role).equals(roleClass)) {
 				i.remove();
+				rolesVersion++;
 			}
 
 		}
@@ -375,7 +584,11 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	 * @param permissionGroup a {@link PermissionGroup}.
 	 */
 	public void remove(PermissionGroup permissionGroup) {
-		permissionGroups.remove(permissionGroup);
+
+		if (permissionGroups.remove(permissionGroup)) {
+			permissionsVersion++;
+		}
+
 	}
 
 	/**
@@ -384,7 +597,11 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	 * @param permission a {@link Permission}.
 	 */
 	public void removeRemovedPermission(Permission permission) {
-		removedPermissions.remove(permission);
+
+		if (removedPermissions.remove(permission)) {
+			permissionsVersion++;
+		}
+
 	}
 
 	/**
@@ -480,24 +697,26 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	/**
 	 * Changes the value of the <code>permissionGroups</code> property.
 	 * 
-	 * @param permissionGroups a {@link List<PermissionGroup>}.
+	 * @param permissionGroups a {@link Set<PermissionGroup>}.
 	 * @deprecated Use {@link #add(PermissionGroup)} and {@link #remove(PermissionGroup)} instead.
 	 */
 	@Deprecated
-	public void setPermissionGroups(List<PermissionGroup> permissionGroups) {
+	public void setPermissionGroups(Set<PermissionGroup> permissionGroups) {
 		this.permissionGroups = permissionGroups;
+		permissionsVersion++;
 	}
 
 	/**
 	 * Changes the value of the <code>removedPermissions</code> property.
 	 * 
-	 * @param removedPermissions a {@link List<Permission>}.
+	 * @param removedPermissions a {@link Set<Permission>}.
 	 * @deprecated Use {@link #addRemovedPermission(Permission)} and
 	 * {@link #removeRemovedPermisson(Permission)} instead.
 	 */
 	@Deprecated
-	public void setRemovedPermissions(List<Permission> removedRoles) {
+	public void setRemovedPermissions(Set<Permission> removedRoles) {
 		this.removedPermissions = removedRoles;
+		permissionsVersion++;
 	}
 
 	/**
@@ -509,6 +728,7 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 	@Deprecated
 	public void setRoles(List<Role> roles) {
 		this.roles = roles;
+		rolesVersion++;
 	}
 
 	/**
@@ -521,4 +741,82 @@ final public class User implements br.com.arsmachina.authentication.AbstractUser
 		return getName();
 	}
 
+	/**
+	 * This user's roles indexed by their real classes, with the version and number of roles it
+	 * was built from.
+	 */
+	final private static class RoleIndex {
+
+		final private Map<Class<? extends Role>, Role> roles;
+
+		final private int version;
+
+		final private int size;
+
+		RoleIndex(List<Role> roles, int version) {
+
+			this.roles = new HashMap<Class<? extends Role>, Role>(roles.size() * 2);
+			this.version = version;
+			this.size = roles.size();
+
+			for (Role role : roles) {
+
+				final Role real = unproxy(role);
+
+				// the first role of each class wins, like the linear search it replaces
+				if (this.roles.containsKey(real.getClass()) == false) {
+					this.roles.put(real.getClass(), real);
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * The effective permissions and the versions they were computed at, kept together so they are
+	 * always read consistently.
+	 */
+	final private static class Compiled {
+
+		final private EffectivePermissions effectivePermissions;
+
+		final private int version;
+
+		final private long implicationVersion;
+
+		final private PermissionGroup[] groups;
+
+		final private Object[] groupStates;
+
+		Compiled(EffectivePermissions effectivePermissions, int version, long implicationVersion,
+				PermissionGroup[] groups, Object[] groupStates) {
+			this.effectivePermissions = effectivePermissions;
+			this.version = version;
+			this.implicationVersion = implicationVersion;
+			this.groups = groups;
+			this.groupStates = groupStates;
+		}
+
+		boolean isCurrent(int version, long implicationVersion) {
+
+			if (this.version != version || this.implicationVersion != implicationVersion) {
+				return false;
+			}
+
+			for (int i = 0; i < groups.length; i++) {
+
+				if (groups[i].compiledState() != groupStates[i]) {
+					return false;
+				}
+
+			}
+
+			return true;
+
+		}
+
+	}
+
 }
@@ -18,19 +18,41 @@ import java.util.List;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
 import org.hibernate.validator.Length;
 import org.hibernate.validator.NotNull;
 
 /**
- * Class that represents a group of users.
+ * Class that represents a group of users. Groups can have a very large number of members, so
+ * <code>users</code> is extra-lazy: {@link #getUserCount()} and {@link #contains(User)} do not
+ * load the whole collection. To add or remove members, or to go through them in pages, use the
+ * membership methods of {@link br.com.arsmachina.authentication.controller.UserGroupController}.
+ * 
+ * Groups can be nested through the <code>parent</code> property. Members of a group are also
+ * members of all its ancestors and are granted the {@link PermissionGroup}s they own. The
+ * hierarchy is materialized in {@link UserGroupClosure}, which
+ * {@link br.com.arsmachina.authentication.controller.UserGroupController} keeps in sync when
+ * groups are saved, updated, moved or deleted through it.
+ * 
+ * Inherited permission groups are only loaded by
+ * {@link br.com.arsmachina.authentication.controller.UserController#loadForAuthentication(String)}
+ * and {@link br.com.arsmachina.authentication.controller.UserController#loadEverything(String)},
+ * and only when <code>setInheritPermissionGroups(true)</code> was called on
+ * {@link br.com.arsmachina.authentication.controller.impl.UserControllerImpl}. Users loaded in any
+ * other way, such as through <code>findById()</code> or <code>findByPermission()</code>, only
+ * have the permissions of their own permission groups.
  * 
  * @author Thiago H. de Paula Figueiredo
  */
@@ -54,6 +76,8 @@ public class UserGroup {
 
 	private List<User> users = new ArrayList<User>();
 
+	private UserGroup parent;
+
 	/**
 	 * Retorna o valor da propriedade <code>id</code>.
 	 * 
@@ -102,6 +126,7 @@ public class UserGroup {
 	 * @return o valor de <code>users</code>.
 	 */
 	@ManyToMany
+	@LazyCollection(LazyCollectionOption.EXTRA)
 	@JoinTable(name = "usergroup_user",
 			joinColumns = @JoinColumn(name = "usergroup_id", nullable = false),
 			inverseJoinColumns = @JoinColumn(name = "user_id", nullable = false),
@@ -120,4 +145,53 @@ public class UserGroup {
 		this.users = users;
 	}
 
+	/**
+	 * Returns the value of the <code>parent</code> property.
+	 * 
+	 * @return an {@link UserGroup} or <code>null</code>.
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "parent_id")
+	public UserGroup getParent() {
+		return parent;
+	}
+
+	/**
+	 * Changes the value of the <code>parent</code> property. It does not update
+	 * {@link UserGroupClosure}, so persistent groups must be moved through
+	 * {@link br.com.arsmachina.authentication.controller.UserGroupController#setParent(UserGroup, UserGroup)}
+	 * instead.
+	 * 
+	 * @param parent an {@link UserGroup} or <code>null</code>.
+	 */
+	public void setParent(UserGroup parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Returns the number of members of this group without loading them.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	@Transient
+	public int getUserCount() {
+		return users.size();
+	}
+
+	/**
+	 * Tells if an user is a member of this group without loading the other members.
+	 * 
+	 * @param user an {@link User}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean contains(User user) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		return users.contains(user);
+
+	}
+
 }
@@ -0,0 +1,250 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Row of the transitive closure of the {@link UserGroup} hierarchy: each group is linked to
+ * itself, with depth <code>0</code>, and to every one of its ancestors, with their distance. It
+ * lets the groups a user belongs to, directly or through nested groups, and the permission groups
+ * they own, be found in a single query whatever the nesting depth. The unique constraint starts
+ * with <code>descendant_id</code>, so its index answers the lookups by descendant.
+ * 
+ * Rows are maintained by {@link br.com.arsmachina.authentication.dao.UserGroupDAO} when groups are
+ * created, moved or deleted through
+ * {@link br.com.arsmachina.authentication.controller.UserGroupController}, through the named
+ * queries declared here.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+@Entity
+@Table(name = "usergroup_closure", uniqueConstraints = @UniqueConstraint(columnNames = {
+		"descendant_id", "ancestor_id" }))
+@NamedQueries( {
+		@NamedQuery(name = UserGroupClosure.INSERT_SELF, query = "insert into UserGroupClosure "
+				+ "(ancestor, descendant, depth) select g, g, 0 from UserGroup g where g = :group"),
+		@NamedQuery(name = UserGroupClosure.LINK_SUBTREE, query = "insert into UserGroupClosure "
+				+ "(ancestor, descendant, depth) select p.ancestor, s.descendant, "
+				+ "p.depth + s.depth + 1 from UserGroupClosure p, UserGroupClosure s "
+				+ "where p.descendant = :parent and s.ancestor = :group"),
+		@NamedQuery(name = UserGroupClosure.UNLINK_SUBTREE, query = "delete from UserGroupClosure c "
+				+ "where c.descendant in (select s.descendant from UserGroupClosure s "
+				+ "where s.ancestor = :group) and c.ancestor not in (select s.descendant "
+				+ "from UserGroupClosure s where s.ancestor = :group)"),
+		@NamedQuery(name = UserGroupClosure.DELETE_GROUP, query = "delete from UserGroupClosure c "
+				+ "where c.descendant = :group"),
+		@NamedQuery(name = UserGroupClosure.FIND_PARENT_ID, query = "select c.ancestor.id "
+				+ "from UserGroupClosure c where c.descendant = :group and c.depth = 1"),
+		@NamedQuery(name = UserGroupClosure.COUNT_LINKS, query = "select count(c) "
+				+ "from UserGroupClosure c where c.ancestor = :ancestor "
+				+ "and c.descendant = :descendant"),
+		@NamedQuery(name = UserGroupClosure.FIND_INHERITED_PERMISSION_GROUPS, query = "select "
+				+ "distinct p from PermissionGroup p, UserGroupClosure c join c.descendant g "
+				+ "join g.users u where u = :user and p.owner = c.ancestor order by p.name"),
+		@NamedQuery(name = UserGroupClosure.FIND_INHERITED_PERMISSION_GROUPS_BY_USERS, query =
+				"select distinct u.id, p from PermissionGroup p, UserGroupClosure c "
+				+ "join c.descendant g join g.users u where u.id in (:userIds) "
+				+ "and p.owner = c.ancestor order by p.name") })
+public class UserGroupClosure {
+
+	/**
+	 * Name of the query that inserts the row linking a group (the <code>group</code> parameter)
+	 * to itself.
+	 */
+	public static final String INSERT_SELF = "UserGroupClosure.insertSelf";
+
+	/**
+	 * Name of the query that links a group (the <code>group</code> parameter) and all its
+	 * descendants to a new parent (the <code>parent</code> parameter) and all its ancestors: the
+	 * cross product of the parent's ancestor rows and the group's descendant rows. For a new group,
+	 * which only has the row inserted by {@link #INSERT_SELF}, it inserts one row per ancestor.
+	 */
+	public static final String LINK_SUBTREE = "UserGroupClosure.linkSubtree";
+
+	/**
+	 * Name of the query that deletes the rows linking a group (the <code>group</code> parameter)
+	 * and all its descendants to the group's ancestors, keeping the rows inside the subtree.
+	 */
+	public static final String UNLINK_SUBTREE = "UserGroupClosure.unlinkSubtree";
+
+	/**
+	 * Name of the query that deletes all rows of a group (the <code>group</code> parameter) that
+	 * has no descendants.
+	 */
+	public static final String DELETE_GROUP = "UserGroupClosure.deleteGroup";
+
+	/**
+	 * Name of the query that returns the id of the ancestor linked with depth <code>1</code> to a
+	 * group (the <code>group</code> parameter), if any.
+	 */
+	public static final String FIND_PARENT_ID = "UserGroupClosure.findParentId";
+
+	/**
+	 * Name of the query that counts the rows, <code>0</code> or <code>1</code>, linking a group
+	 * (the <code>descendant</code> parameter) to an ancestor (the <code>ancestor</code>
+	 * parameter).
+	 */
+	public static final String COUNT_LINKS = "UserGroupClosure.countLinks";
+
+	/**
+	 * Name of the query that returns, ordered by name, the permission groups owned by the user
+	 * groups an user (the <code>user</code> parameter) belongs to, directly or through nested
+	 * groups.
+	 */
+	public static final String FIND_INHERITED_PERMISSION_GROUPS =
+		"UserGroupClosure.findInheritedPermissionGroups";
+
+	/**
+	 * Name of the query that returns pairs of user id and permission group, ordered by the name of
+	 * the group, for the permission groups inherited by some users (the <code>userIds</code>
+	 * parameter) like {@link #FIND_INHERITED_PERMISSION_GROUPS} does for one.
+	 */
+	public static final String FIND_INHERITED_PERMISSION_GROUPS_BY_USERS =
+		"UserGroupClosure.findInheritedPermissionGroupsByUsers";
+
+	private Integer id;
+
+	private UserGroup ancestor;
+
+	private UserGroup descendant;
+
+	private int depth;
+
+	/**
+	 * No-arg constructor.
+	 */
+	public UserGroupClosure() {
+	}
+
+	/**
+	 * Constructor that receives all properties but the id.
+	 * 
+	 * @param ancestor an {@link UserGroup}. It cannot be null.
+	 * @param descendant an {@link UserGroup}. It cannot be null.
+	 * @param depth an <code>int</code>. It cannot be negative.
+	 */
+	public UserGroupClosure(UserGroup ancestor, UserGroup descendant, int depth) {
+
+		if (ancestor == null) {
+			throw new IllegalArgumentException("Parameter ancestor cannot be null");
+		}
+
+		if (descendant == null) {
+			throw new IllegalArgumentException("Parameter descendant cannot be null");
+		}
+
+		if (depth < 0) {
+			throw new IllegalArgumentException("Parameter depth cannot be negative");
+		}
+
+		this.ancestor = ancestor;
+		this.descendant = descendant;
+		this.depth = depth;
+
+	}
+
+	/**
+	 * Returns the value of the <code>id</code> property.
+	 * 
+	 * @return an {@link Integer}.
+	 */
+	@Id
+	@GeneratedValue
+	@Column(nullable = false)
+	public Integer getId() {
+		return id;
+	}
+
+	/**
+	 * Changes the value of the <code>id</code> property.
+	 * 
+	 * @param id an {@link Integer}.
+	 */
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	/**
+	 * Returns the value of the <code>ancestor</code> property.
+	 * 
+	 * @return an {@link UserGroup}.
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "ancestor_id", nullable = false)
+	public UserGroup getAncestor() {
+		return ancestor;
+	}
+
+	/**
+	 * Changes the value of the <code>ancestor</code> property.
+	 * 
+	 * @param ancestor an {@link UserGroup}.
+	 */
+	public void setAncestor(UserGroup ancestor) {
+		this.ancestor = ancestor;
+	}
+
+	/**
+	 * Returns the value of the <code>descendant</code> property.
+	 * 
+	 * @return an {@link UserGroup}.
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "descendant_id", nullable = false)
+	public UserGroup getDescendant() {
+		return descendant;
+	}
+
+	/**
+	 * Changes the value of the <code>descendant</code> property.
+	 * 
+	 * @param descendant an {@link UserGroup}.
+	 */
+	public void setDescendant(UserGroup descendant) {
+		this.descendant = descendant;
+	}
+
+	/**
+	 * Returns the value of the <code>depth</code> property: <code>0</code> for the link of a
+	 * group to itself, <code>1</code> for its parent and so on.
+	 * 
+	 * @return an <code>int</code>.
+	 */
+	@Column(nullable = false)
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Changes the value of the <code>depth</code> property.
+	 * 
+	 * @param depth an <code>int</code>.
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+}
@@ -17,17 +17,29 @@ package br.com.arsmachina.authentication.exception;
 /**
  * Class that serves as the root of the authentication excpetion classes.
  * 
+ * Exceptions created with <code>writableStackTrace</code> set to <code>false</code> never fill in
+ * their stack trace, so they cost little more than a plain object to create. Instances made
+ * shareable through {@link #clearStackTrace()} also ignore {@link #initCause(Throwable)}, so
+ * threads cannot change what the others see.
+ * 
  * @author Thiago H. de Paula Figueiredo
  */
 public abstract class AuthenticationException extends RuntimeException {
 
 	private static final long serialVersionUID = 1L;
 
+	// false while Throwable's constructor runs, so it never fills in the stack trace itself
+	private boolean writableStackTrace;
+
+	private boolean shared;
+
 	/**
 	 * Constructor without arguments.
 	 */
 	public AuthenticationException() {
 		super();
+		writableStackTrace = true;
+		super.fillInStackTrace();
 	}
 
 	/**
@@ -38,6 +50,8 @@ public abstract class AuthenticationException extends RuntimeException {
 	 */
 	public AuthenticationException(String message, Throwable cause) {
 		super(message, cause);
+		writableStackTrace = true;
+		super.fillInStackTrace();
 	}
 
 	/**
@@ -58,4 +72,63 @@ public abstract class AuthenticationException extends RuntimeException {
 		this(null, cause);
 	}
 
+	/**
+	 * Constructor that can skip the stack trace.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the stack trace is
+	 * never filled in.
+	 */
+	protected AuthenticationException(boolean writableStackTrace) {
+
+		super();
+		this.writableStackTrace = writableStackTrace;
+
+		if (writableStackTrace) {
+			super.fillInStackTrace();
+		}
+
+	}
+
+	/**
+	 * Fills in the stack trace, unless this exception was created without a writable stack trace
+	 * or made shareable through {@link #clearStackTrace()}.
+	 * 
+	 * @return this exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return writableStackTrace ? super.fillInStackTrace() : this;
+	}
+
+	/**
+	 * Sets the cause of this exception, unless it was made shareable through
+	 * {@link #clearStackTrace()}, in which case nothing is done.
+	 * 
+	 * @param cause a {@link Throwable}.
+	 * @return this exception.
+	 */
+	@Override
+	public synchronized Throwable initCause(Throwable cause) {
+		return shared ? this : super.initCause(cause);
+	}
+
+	/**
+	 * Removes the stack trace of this exception and makes it shareable: its stack trace is never
+	 * filled in again and {@link #initCause(Throwable)} does nothing. Used for preallocated
+	 * instances, which are never thrown but returned to tell the outcome of an authentication.
+	 * Suppressed exceptions cannot be disabled after construction, so shareable instances must
+	 * not be thrown: throw new ones created without a writable stack trace instead.
+	 * 
+	 * @return this exception.
+	 */
+	public AuthenticationException clearStackTrace() {
+
+		shared = true;
+		writableStackTrace = false;
+		setStackTrace(new StackTraceElement[0]);
+
+		return this;
+
+	}
+
 }
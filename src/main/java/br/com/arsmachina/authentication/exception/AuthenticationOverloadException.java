@@ -0,0 +1,54 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.exception;
+
+/**
+ * Exception thrown when there is no capacity left to check credentials, typically because the
+ * password hashing pool and its queue are full. The credentials were not checked, so the client
+ * should retry later.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class AuthenticationOverloadException extends AuthenticationException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor without arguments.
+	 */
+	public AuthenticationOverloadException() {
+		super();
+	}
+
+	/**
+	 * Constructor that can skip the stack trace.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the stack trace is
+	 * never filled in.
+	 */
+	public AuthenticationOverloadException(boolean writableStackTrace) {
+		super(writableStackTrace);
+	}
+
+	/**
+	 * Constructor that receives a cause.
+	 * 
+	 * @param cause a {@link Throwable}.
+	 */
+	public AuthenticationOverloadException(Throwable cause) {
+		super(cause);
+	}
+
+}
@@ -24,4 +24,21 @@ public class BadCredentialsException extends AuthenticationException {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Constructor without arguments.
+	 */
+	public BadCredentialsException() {
+		super();
+	}
+
+	/**
+	 * Constructor that can skip the stack trace.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the stack trace is
+	 * never filled in.
+	 */
+	public BadCredentialsException(boolean writableStackTrace) {
+		super(writableStackTrace);
+	}
+
 }
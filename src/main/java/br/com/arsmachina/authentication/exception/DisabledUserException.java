@@ -23,4 +23,21 @@ public class DisabledUserException extends AuthenticationException {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Constructor without arguments.
+	 */
+	public DisabledUserException() {
+		super();
+	}
+
+	/**
+	 * Constructor that can skip the stack trace.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the stack trace is
+	 * never filled in.
+	 */
+	public DisabledUserException(boolean writableStackTrace) {
+		super(writableStackTrace);
+	}
+
 }
@@ -23,4 +23,21 @@ public class ExpiredUserException extends AuthenticationException {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Constructor without arguments.
+	 */
+	public ExpiredUserException() {
+		super();
+	}
+
+	/**
+	 * Constructor that can skip the stack trace.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the stack trace is
+	 * never filled in.
+	 */
+	public ExpiredUserException(boolean writableStackTrace) {
+		super(writableStackTrace);
+	}
+
 }
@@ -23,4 +23,21 @@ public class LockedUserException extends AuthenticationException {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Constructor without arguments.
+	 */
+	public LockedUserException() {
+		super();
+	}
+
+	/**
+	 * Constructor that can skip the stack trace.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the stack trace is
+	 * never filled in.
+	 */
+	public LockedUserException(boolean writableStackTrace) {
+		super(writableStackTrace);
+	}
+
 }
@@ -0,0 +1,296 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+
+/**
+ * Immutable, precomputed permissions of an user: the permissions of its permission groups, plus
+ * the ones they imply (see {@link PermissionImplications}), minus its removed permissions.
+ * Wildcard permissions, such as <code>report:*</code>, are compiled into a {@link PermissionTrie}
+ * that grants the names below them unless they were removed. Both the {@link PermissionSet}, used for checks, and the sorted list of
+ * {@link Permission}s are built together from the same data, so they always agree.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class EffectivePermissions {
+
+	/**
+	 * No permissions at all.
+	 */
+	public static final EffectivePermissions EMPTY = new EffectivePermissions(PermissionSet.EMPTY,
+			PermissionTrie.EMPTY, Collections.<Permission> emptyList());
+
+	final private PermissionSet permissionSet;
+
+	final private PermissionTrie permissionTrie;
+
+	final private List<Permission> permissions;
+
+	private EffectivePermissions(PermissionSet permissionSet, PermissionTrie permissionTrie,
+			List<Permission> permissions) {
+		this.permissionSet = permissionSet;
+		this.permissionTrie = permissionTrie;
+		this.permissions = permissions;
+	}
+
+	/**
+	 * Computes the effective permissions of some permission groups minus some removed
+	 * permissions, without implications.
+	 *
+	 * @param permissionGroups a {@link Collection} of {@link PermissionGroup}s. It cannot be null.
+	 * @param removedPermissions a {@link Collection} of {@link Permission}s. It cannot be null.
+	 * @return an {@link EffectivePermissions}.
+	 */
+	public static EffectivePermissions compile(Collection<PermissionGroup> permissionGroups,
+			Collection<Permission> removedPermissions) {
+		return compile(permissionGroups, removedPermissions, null);
+	}
+
+	/**
+	 * Computes the effective permissions of some permission groups, plus the ones they imply,
+	 * minus some removed permissions. Removed permissions imply nothing and stay removed even when
+	 * another granted permission implies them (see
+	 * {@link PermissionImplications#expand(PermissionSet, PermissionSet)}). A removed wildcard,
+	 * such as <code>report:sales:*</code>, also removes every name below it and what they imply.
+	 *
+	 * @param permissionGroups a {@link Collection} of {@link PermissionGroup}s. It cannot be null.
+	 * @param removedPermissions a {@link Collection} of {@link Permission}s. It cannot be null.
+	 * @param implications a {@link PermissionImplications} or <code>null</code> for none.
+	 * @return an {@link EffectivePermissions}.
+	 */
+	public static EffectivePermissions compile(Collection<PermissionGroup> permissionGroups,
+			Collection<Permission> removedPermissions, PermissionImplications implications) {
+
+		if (permissionGroups == null) {
+			throw new IllegalArgumentException("Parameter permissionGroups cannot be null");
+		}
+
+		if (removedPermissions == null) {
+			throw new IllegalArgumentException("Parameter removedPermissions cannot be null");
+		}
+
+		final PermissionSet.Builder removed = new PermissionSet.Builder();
+
+		for (Permission permission : removedPermissions) {
+			removed.add(permission.getName());
+		}
+
+		final PermissionSet removedSet = removed.build();
+		final PermissionSet.Builder builder = new PermissionSet.Builder();
+
+		for (PermissionGroup permissionGroup : permissionGroups) {
+			builder.addAll(permissionGroup.getPermissionSet());
+		}
+
+		final PermissionSet granted = builder.removeAll(removedSet).build();
+		PermissionSet permissionSet = expand(implications, granted, removedSet);
+		final PermissionTrie removedWildcards = PermissionTrie.compile(removedSet, PermissionSet.EMPTY);
+
+		if (removedWildcards.isEmpty() == false) {
+
+			// names below removed wildcards are removed too, and expanded again without them until
+			// no granted or implied name is below one
+			PermissionSet excluded = removedSet;
+			PermissionSet pruned = prune(permissionSet, removedWildcards);
+
+			while (pruned.isEmpty() == false) {
+				excluded = new PermissionSet.Builder().addAll(excluded).addAll(pruned).build();
+				permissionSet = expand(implications, new PermissionSet.Builder().addAll(granted)
+						.removeAll(excluded).build(), excluded);
+				pruned = prune(permissionSet, removedWildcards);
+			}
+
+		}
+
+		if (permissionSet.isEmpty()) {
+			return EMPTY;
+		}
+
+		// walks the groups again to get one Permission instance per id in the set
+		final Permission[] byId = new Permission[PermissionSymbolTable.size()];
+		final List<Permission> permissions = new ArrayList<Permission>(permissionSet.size());
+
+		for (PermissionGroup permissionGroup : permissionGroups) {
+
+			for (Permission permission : permissionGroup.getPermissions()) {
+
+				final int id = PermissionSymbolTable.getId(permission.getName());
+
+				if (permissionSet.contains(id) && id < byId.length && byId[id] == null) {
+					byId[id] = permission;
+					permissions.add(permission);
+				}
+
+			}
+
+		}
+
+		// implied permissions may not be in any group
+		if (permissions.size() < permissionSet.size()) {
+
+			for (int id = permissionSet.nextId(0); id >= 0; id = permissionSet.nextId(id + 1)) {
+
+				if (id >= byId.length || byId[id] == null) {
+					permissions.add(new Permission(PermissionSymbolTable.getName(id)));
+				}
+
+			}
+
+		}
+
+		Collections.sort(permissions);
+
+		return new EffectivePermissions(permissionSet,
+				PermissionTrie.compile(permissionSet, removedSet),
+				Collections.unmodifiableList(permissions));
+
+	}
+
+	/**
+	 * Adds the permissions implied by a set, if there are implications.
+	 */
+	private static PermissionSet expand(PermissionImplications implications, PermissionSet set,
+			PermissionSet removed) {
+		return implications != null ? implications.expand(set, removed) : set;
+	}
+
+	/**
+	 * Returns the names of a set that are below some removed wildcards.
+	 */
+	private static PermissionSet prune(PermissionSet set, PermissionTrie removedWildcards) {
+
+		final PermissionSet.Builder pruned = new PermissionSet.Builder();
+
+		for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+
+			if (removedWildcards.matches(PermissionSymbolTable.getName(id))) {
+				pruned.add(id);
+			}
+
+		}
+
+		return pruned.build();
+
+	}
+
+	/**
+	 * Returns the effective permissions as a {@link PermissionSet}.
+	 *
+	 * @return a {@link PermissionSet}.
+	 */
+	public PermissionSet getPermissionSet() {
+		return permissionSet;
+	}
+
+	/**
+	 * Returns the wildcard permissions compiled into a {@link PermissionTrie}.
+	 *
+	 * @return a {@link PermissionTrie}.
+	 */
+	public PermissionTrie getPermissionTrie() {
+		return permissionTrie;
+	}
+
+	/**
+	 * Returns the effective permissions as an unmodifiable list sorted by name.
+	 *
+	 * @return a {@link List} of {@link Permission}s.
+	 */
+	public List<Permission> getPermissions() {
+		return permissions;
+	}
+
+	/**
+	 * Tells if at least one of some permissions is effective, directly or through a wildcard.
+	 *
+	 * @param permissionNames an array of {@link String}s. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean hasPermission(String... permissionNames) {
+		return hasPermission(permissionSet, permissionTrie, permissionNames);
+	}
+
+	/**
+	 * Tells if all of some permissions are effective, directly or through a wildcard.
+	 *
+	 * @param permissionNames an array of {@link String}s. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean hasAllPermissions(String... permissionNames) {
+		return hasAllPermissions(permissionSet, permissionTrie, permissionNames);
+	}
+
+	/**
+	 * Tells if at least one of some permissions is in a set or matched by a trie.
+	 *
+	 * @param set a {@link PermissionSet}. It cannot be null.
+	 * @param trie a {@link PermissionTrie}. It cannot be null.
+	 * @param permissionNames an array of {@link String}s. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public static boolean hasPermission(PermissionSet set, PermissionTrie trie,
+			String... permissionNames) {
+
+		if (set.containsAny(permissionNames)) {
+			return true;
+		}
+
+		if (trie.isEmpty() == false) {
+
+			for (String name : permissionNames) {
+
+				if (trie.matches(name)) {
+					return true;
+				}
+
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Tells if all of some permissions are in a set or matched by a trie.
+	 *
+	 * @param set a {@link PermissionSet}. It cannot be null.
+	 * @param trie a {@link PermissionTrie}. It cannot be null.
+	 * @param permissionNames an array of {@link String}s. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public static boolean hasAllPermissions(PermissionSet set, PermissionTrie trie,
+			String... permissionNames) {
+
+		for (String name : permissionNames) {
+
+			if (set.contains(name) == false && trie.matches(name) == false) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+}
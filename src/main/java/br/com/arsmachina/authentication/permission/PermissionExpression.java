@@ -0,0 +1,507 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boolean expression over permission names, such as <code>A and (B or not C)</code>, parsed once
+ * into a tree of predicates over permission ids. Operators are <code>or</code> (or
+ * <code>||</code>), <code>and</code> (or <code>&amp;&amp;</code>) and <code>not</code> (or
+ * <code>!</code>), in increasing order of precedence, and parentheses. Names are sequences of
+ * characters other than whitespace, parentheses, <code>!</code>, <code>&amp;</code> and
+ * <code>|</code>, so wildcard names such as <code>report:*</code> can be used too.
+ *
+ * Parsing does not add names to the {@link PermissionSymbolTable}, so expressions built from user
+ * input cannot make it grow. A name that is not in the table yet is granted only through a
+ * wildcard, and is looked up again when evaluated until it is added.
+ *
+ * The operands of each <code>and</code> and <code>or</code> that are plain names are compiled into
+ * a single {@link PermissionSet}, so they are evaluated with a few word-level bit operations
+ * instead of one lookup per name. Instances are immutable and thread-safe. Use
+ * {@link PermissionExpressionCache} to avoid parsing the same expression again.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class PermissionExpression {
+
+	final private String source;
+
+	final private Node root;
+
+	private PermissionExpression(String source, Node root) {
+		this.source = source;
+		this.root = root;
+	}
+
+	/**
+	 * Parses an expression.
+	 *
+	 * @param source a {@link String}. It cannot be null.
+	 * @return a {@link PermissionExpression}.
+	 * @throws IllegalArgumentException if <code>source</code> is not a valid expression.
+	 */
+	public static PermissionExpression parse(String source) {
+
+		if (source == null) {
+			throw new IllegalArgumentException("Parameter source cannot be null");
+		}
+
+		return new PermissionExpression(source, new Parser(source).parse());
+
+	}
+
+	/**
+	 * Returns the text this expression was parsed from.
+	 *
+	 * @return a {@link String}.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Evaluates this expression against some permissions.
+	 *
+	 * @param set a {@link PermissionSet}. It cannot be null.
+	 * @param trie a {@link PermissionTrie} with the wildcard permissions. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean evaluate(PermissionSet set, PermissionTrie trie) {
+
+		if (set == null) {
+			throw new IllegalArgumentException("Parameter set cannot be null");
+		}
+
+		if (trie == null) {
+			throw new IllegalArgumentException("Parameter trie cannot be null");
+		}
+
+		return root.evaluate(set, trie);
+
+	}
+
+	/**
+	 * Evaluates this expression against an user's effective permissions.
+	 *
+	 * @param permissions an {@link EffectivePermissions}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean evaluate(EffectivePermissions permissions) {
+
+		if (permissions == null) {
+			throw new IllegalArgumentException("Parameter permissions cannot be null");
+		}
+
+		return root.evaluate(permissions.getPermissionSet(), permissions.getPermissionTrie());
+
+	}
+
+	/**
+	 * Returns the text this expression was parsed from.
+	 *
+	 * @return a {@link String}.
+	 */
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/**
+	 * Node of a compiled expression.
+	 */
+	private abstract static class Node {
+
+		abstract boolean evaluate(PermissionSet set, PermissionTrie trie);
+
+	}
+
+	final private static class Name extends Node {
+
+		final private String name;
+
+		private volatile int id;
+
+		Name(String name) {
+			this.name = name;
+			this.id = PermissionSymbolTable.getId(name);
+		}
+
+		/**
+		 * Returns the id of the name, looking it up again while it is not in the
+		 * {@link PermissionSymbolTable}.
+		 * 
+		 * @return an <code>int</code> or <code>-1</code> if the name is still unknown.
+		 */
+		int getId() {
+
+			int current = id;
+
+			if (current < 0) {
+
+				current = PermissionSymbolTable.getId(name);
+
+				if (current >= 0) {
+					id = current;
+				}
+
+			}
+
+			return current;
+
+		}
+
+		@Override
+		boolean evaluate(PermissionSet set, PermissionTrie trie) {
+			return set.contains(getId()) || trie.matches(name);
+		}
+
+	}
+
+	final private static class Not extends Node {
+
+		final private Node operand;
+
+		Not(Node operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		boolean evaluate(PermissionSet set, PermissionTrie trie) {
+			return operand.evaluate(set, trie) == false;
+		}
+
+	}
+
+	/**
+	 * <code>and</code> or <code>or</code> of some operands. Operands that are names are kept in
+	 * a {@link PermissionSet} and checked all at once, once all of them are known.
+	 */
+	final private static class Junction extends Node {
+
+		final private boolean conjunction;
+
+		private volatile PermissionSet names;
+
+		final private Name[] nameNodes;
+
+		final private Node[] others;
+
+		Junction(boolean conjunction, List<Node> operands) {
+
+			final List<Name> nameList = new ArrayList<Name>();
+			final List<Node> otherList = new ArrayList<Node>();
+
+			for (Node operand : operands) {
+
+				if (operand instanceof Name) {
+					nameList.add((Name) operand);
+				}
+				else {
+					otherList.add(operand);
+				}
+
+			}
+
+			this.conjunction = conjunction;
+			this.nameNodes = nameList.toArray(new Name[nameList.size()]);
+			this.others = otherList.toArray(new Node[otherList.size()]);
+			this.names = getNames();
+
+		}
+
+		/**
+		 * Returns the ids of the operands that are names.
+		 * 
+		 * @return a {@link PermissionSet} or <code>null</code> if some name is still unknown.
+		 */
+		private PermissionSet getNames() {
+
+			PermissionSet current = names;
+
+			if (current == null) {
+
+				final PermissionSet.Builder builder = new PermissionSet.Builder();
+
+				for (Name name : nameNodes) {
+
+					final int id = name.getId();
+
+					if (id < 0) {
+						return null;
+					}
+
+					builder.add(id);
+
+				}
+
+				current = builder.build();
+				names = current;
+
+			}
+
+			return current;
+
+		}
+
+		@Override
+		boolean evaluate(PermissionSet set, PermissionTrie trie) {
+			return conjunction ? evaluateAnd(set, trie) : evaluateOr(set, trie);
+		}
+
+		private boolean evaluateAnd(PermissionSet set, PermissionTrie trie) {
+
+			final PermissionSet current = getNames();
+
+			if (current == null || set.containsAll(current) == false) {
+
+				if (trie.isEmpty()) {
+					return false;
+				}
+
+				for (Name name : nameNodes) {
+
+					if (name.evaluate(set, trie) == false) {
+						return false;
+					}
+
+				}
+
+			}
+
+			for (Node other : others) {
+
+				if (other.evaluate(set, trie) == false) {
+					return false;
+				}
+
+			}
+
+			return true;
+
+		}
+
+		private boolean evaluateOr(PermissionSet set, PermissionTrie trie) {
+
+			final PermissionSet current = getNames();
+
+			if (current == null) {
+
+				for (Name name : nameNodes) {
+
+					if (name.evaluate(set, trie)) {
+						return true;
+					}
+
+				}
+
+			}
+			else {
+
+				if (set.intersects(current)) {
+					return true;
+				}
+
+				if (trie.isEmpty() == false) {
+
+					for (Name name : nameNodes) {
+
+						if (trie.matches(name.name)) {
+							return true;
+						}
+
+					}
+
+				}
+
+			}
+
+			for (Node other : others) {
+
+				if (other.evaluate(set, trie)) {
+					return true;
+				}
+
+			}
+
+			return false;
+
+		}
+
+	}
+
+	/**
+	 * Recursive descent parser of expressions.
+	 */
+	final private static class Parser {
+
+		final private String source;
+
+		private int position;
+
+		Parser(String source) {
+			this.source = source;
+		}
+
+		Node parse() {
+
+			final Node node = parseOr();
+			skipWhitespace();
+
+			if (position < source.length()) {
+				throw error("end of expression");
+			}
+
+			return node;
+
+		}
+
+		private Node parseOr() {
+
+			final List<Node> operands = new ArrayList<Node>();
+			operands.add(parseAnd());
+
+			while (acceptOperator("||", "or")) {
+				operands.add(parseAnd());
+			}
+
+			return operands.size() == 1 ? operands.get(0) : new Junction(false, operands);
+
+		}
+
+		private Node parseAnd() {
+
+			final List<Node> operands = new ArrayList<Node>();
+			operands.add(parseNot());
+
+			while (acceptOperator("&&", "and")) {
+				operands.add(parseNot());
+			}
+
+			return operands.size() == 1 ? operands.get(0) : new Junction(true, operands);
+
+		}
+
+		private Node parseNot() {
+
+			if (acceptOperator("!", "not")) {
+				return new Not(parseNot());
+			}
+
+			return parsePrimary();
+
+		}
+
+		private Node parsePrimary() {
+
+			skipWhitespace();
+
+			if (position < source.length() && source.charAt(position) == '(') {
+
+				position++;
+
+				final Node node = parseOr();
+				skipWhitespace();
+
+				if (position == source.length() || source.charAt(position) != ')') {
+					throw error("')'");
+				}
+
+				position++;
+
+				return node;
+
+			}
+
+			final int start = position;
+			final int end = nameEnd(start);
+
+			if (end == start || isKeyword(start, end)) {
+				throw error("a permission name");
+			}
+
+			position = end;
+
+			return new Name(source.substring(start, end));
+
+		}
+
+		/**
+		 * Consumes a symbolic or keyword operator if it is the next token.
+		 */
+		private boolean acceptOperator(String symbol, String keyword) {
+
+			skipWhitespace();
+
+			if (source.startsWith(symbol, position)) {
+				position += symbol.length();
+				return true;
+			}
+
+			final int end = nameEnd(position);
+
+			if (end - position == keyword.length()
+					&& source.regionMatches(true, position, keyword, 0, keyword.length())) {
+				position = end;
+				return true;
+			}
+
+			return false;
+
+		}
+
+		private boolean isKeyword(int start, int end) {
+
+			final String word = source.substring(start, end);
+
+			return word.equalsIgnoreCase("and") || word.equalsIgnoreCase("or")
+					|| word.equalsIgnoreCase("not");
+
+		}
+
+		private int nameEnd(int start) {
+
+			int end = start;
+
+			while (end < source.length() && isNameCharacter(source.charAt(end))) {
+				end++;
+			}
+
+			return end;
+
+		}
+
+		private static boolean isNameCharacter(char c) {
+			return Character.isWhitespace(c) == false && c != '(' && c != ')' && c != '!'
+					&& c != '&' && c != '|';
+		}
+
+		private void skipWhitespace() {
+
+			while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+				position++;
+			}
+
+		}
+
+		private IllegalArgumentException error(String expected) {
+			return new IllegalArgumentException("Invalid permission expression '" + source
+					+ "': expected " + expected + " at position " + position);
+		}
+
+	}
+
+}
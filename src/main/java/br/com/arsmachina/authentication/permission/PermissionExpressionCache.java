@@ -0,0 +1,161 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of {@link PermissionExpression}s keyed by their source text, so each distinct
+ * expression used by an application is parsed once. When there are more than
+ * <code>maximumSize</code> expressions, the least recently used ones are evicted. Invalid
+ * expressions are not cached.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class PermissionExpressionCache {
+
+	/**
+	 * Default maximum number of expressions.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+	final private static PermissionExpressionCache DEFAULT = new PermissionExpressionCache();
+
+	final private int maximumSize;
+
+	final private LinkedHashMap<String, PermissionExpression> expressions;
+
+	final private AtomicLong hits = new AtomicLong();
+
+	final private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor that uses the default maximum number of expressions.
+	 */
+	public PermissionExpressionCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * Constructor that receives the maximum number of expressions.
+	 *
+	 * @param maximumSize an <code>int</code>. It must be positive.
+	 */
+	public PermissionExpressionCache(int maximumSize) {
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Parameter maximumSize must be positive");
+		}
+
+		this.maximumSize = maximumSize;
+
+		expressions = new LinkedHashMap<String, PermissionExpression>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PermissionExpression> eldest) {
+				return size() > PermissionExpressionCache.this.maximumSize;
+			}
+
+		};
+
+	}
+
+	/**
+	 * Returns the cache shared by the whole application.
+	 *
+	 * @return a {@link PermissionExpressionCache}.
+	 */
+	public static PermissionExpressionCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the compiled expression for some source text, parsing it if it is not in this
+	 * cache yet.
+	 *
+	 * @param source a {@link String}. It cannot be null.
+	 * @return a {@link PermissionExpression}.
+	 * @throws IllegalArgumentException if <code>source</code> is not a valid expression.
+	 */
+	public PermissionExpression get(String source) {
+
+		if (source == null) {
+			throw new IllegalArgumentException("Parameter source cannot be null");
+		}
+
+		PermissionExpression expression;
+
+		synchronized (this) {
+			expression = expressions.get(source);
+		}
+
+		if (expression != null) {
+			hits.incrementAndGet();
+			return expression;
+		}
+
+		misses.incrementAndGet();
+
+		// parsed outside the lock: two threads may parse the same text, but both get equivalent
+		// expressions
+		expression = PermissionExpression.parse(source);
+
+		synchronized (this) {
+			expressions.put(source, expression);
+		}
+
+		return expression;
+
+	}
+
+	/**
+	 * Removes all expressions.
+	 */
+	public synchronized void clear() {
+		expressions.clear();
+	}
+
+	/**
+	 * Returns the number of expressions in this cache.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public synchronized int getSize() {
+		return expressions.size();
+	}
+
+	/**
+	 * Returns the number of times an expression was found in this cache.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of times an expression was parsed.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+}
@@ -0,0 +1,409 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Graph of implications between permissions, for example
+ * {@link br.com.arsmachina.authentication.entity.Permission#ADMINISTRATOR_ROLE_NAME} implying a set
+ * of finer-grained permissions, so they do not have to be added to every permission group. The
+ * transitive closure of the graph is kept up to date as the graph changes and applied by
+ * {@link EffectivePermissions#compile(java.util.Collection, java.util.Collection, PermissionImplications)},
+ * so checks never walk the graph and cost the same however many implications there are.
+ *
+ * Each instance is an independent graph. The one used by an application is owned by
+ * {@link br.com.arsmachina.authentication.controller.PermissionController#getPermissionImplications()}.
+ * Changes to an instance are serialized and published as immutable snapshots, so reads do not
+ * lock.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class PermissionImplications {
+
+	final private AtomicLong modifications = new AtomicLong();
+
+	private volatile Graph graph = new Graph(new PermissionSet[0], new PermissionSet[0], 0);
+
+	/**
+	 * Makes a permission imply others. Only the closures of the permission and of the permissions
+	 * that imply it are updated: each gets the new implied permissions and their own closures.
+	 *
+	 * @param permission a {@link String}. It cannot be null.
+	 * @param implied an array of {@link String}s. None of them can be null.
+	 */
+	public synchronized void imply(String permission, String... implied) {
+
+		if (permission == null) {
+			throw new IllegalArgumentException("Parameter permission cannot be null");
+		}
+
+		final int id = PermissionSymbolTable.intern(permission);
+		final PermissionSet.Builder builder = new PermissionSet.Builder();
+
+		for (String name : implied) {
+
+			if (name == null) {
+				throw new IllegalArgumentException("Implied permissions cannot be null");
+			}
+
+			builder.add(name);
+
+		}
+
+		final Graph current = graph;
+		final PermissionSet added = builder.build();
+		final PermissionSet previous = current.getDirect(id);
+
+		if (previous.containsAll(added)) {
+			return;
+		}
+
+		final PermissionSet[] direct = current.copyDirect(id);
+		direct[id] = new PermissionSet.Builder().addAll(previous).addAll(added).build();
+
+		// everything reachable through the new edges: the implied permissions and their closures
+		final PermissionSet.Builder reachable = new PermissionSet.Builder().addAll(added);
+
+		for (int next = added.nextId(0); next >= 0; next = added.nextId(next + 1)) {
+			reachable.addAll(current.getClosure(next));
+		}
+
+		final PermissionSet reached = reachable.build();
+		final PermissionSet[] closure = Arrays.copyOf(current.closure, direct.length);
+
+		// a new path can only start at the permission itself or at one that already implied it
+		for (int source = 0; source < closure.length; source++) {
+
+			final PermissionSet old = closure[source];
+
+			if (source == id || (old != null && old.contains(id))) {
+				closure[source] = old == null ? reached : new PermissionSet.Builder().addAll(old)
+						.addAll(reached).build();
+			}
+
+		}
+
+		publish(new Graph(direct, closure, current.edges + direct[id].size() - previous.size()));
+
+	}
+
+	/**
+	 * Makes a permission no longer imply another one directly. The closure is computed again
+	 * from scratch, since a path may no longer exist.
+	 *
+	 * @param permission a {@link String}. It cannot be null.
+	 * @param implied a {@link String}. It cannot be null.
+	 */
+	public synchronized void revoke(String permission, String implied) {
+
+		if (permission == null) {
+			throw new IllegalArgumentException("Parameter permission cannot be null");
+		}
+
+		if (implied == null) {
+			throw new IllegalArgumentException("Parameter implied cannot be null");
+		}
+
+		final int id = PermissionSymbolTable.getId(permission);
+
+		if (id < 0 || graph.getDirect(id).contains(implied) == false) {
+			return;
+		}
+
+		final PermissionSet[] direct = graph.copyDirect(id);
+		direct[id] = new PermissionSet.Builder().addAll(direct[id]).remove(implied).build();
+		publish(computeClosure(direct));
+
+	}
+
+	/**
+	 * Removes all implications.
+	 */
+	public synchronized void clear() {
+		publish(new Graph(new PermissionSet[0], new PermissionSet[0], 0));
+	}
+
+	/**
+	 * Returns the permissions implied by a given one, directly or transitively.
+	 *
+	 * @param permission a {@link String}. It cannot be null.
+	 * @return a {@link PermissionSet}.
+	 */
+	public PermissionSet getImplied(String permission) {
+
+		if (permission == null) {
+			throw new IllegalArgumentException("Parameter permission cannot be null");
+		}
+
+		return graph.getClosure(PermissionSymbolTable.getId(permission));
+
+	}
+
+	/**
+	 * Returns a set with the permissions of another one plus all the permissions they imply.
+	 *
+	 * @param set a {@link PermissionSet}. It cannot be null.
+	 * @return a {@link PermissionSet}.
+	 */
+	public PermissionSet expand(PermissionSet set) {
+
+		if (set == null) {
+			throw new IllegalArgumentException("Parameter set cannot be null");
+		}
+
+		final Graph current = graph;
+
+		if (current.edges == 0) {
+			return set;
+		}
+
+		PermissionSet.Builder builder = null;
+
+		for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+
+			final PermissionSet implied = current.getClosure(id);
+
+			if (implied.isEmpty() == false) {
+
+				if (builder == null) {
+					builder = new PermissionSet.Builder().addAll(set);
+				}
+
+				builder.addAll(implied);
+
+			}
+
+		}
+
+		return builder != null ? builder.build() : set;
+
+	}
+
+	/**
+	 * Returns a set with the permissions of another one plus all the permissions they imply
+	 * without going through removed permissions: a removed permission is never added and implies
+	 * nothing, even when another permission of the set implies it. The precomputed closure is used
+	 * for every permission whose closure has no removed permission, so the graph is only walked
+	 * for the others.
+	 *
+	 * @param set a {@link PermissionSet}. It cannot be null and should have no removed
+	 * permissions.
+	 * @param removed a {@link PermissionSet}. It cannot be null.
+	 * @return a {@link PermissionSet}.
+	 */
+	public PermissionSet expand(PermissionSet set, PermissionSet removed) {
+
+		if (set == null) {
+			throw new IllegalArgumentException("Parameter set cannot be null");
+		}
+
+		if (removed == null) {
+			throw new IllegalArgumentException("Parameter removed cannot be null");
+		}
+
+		final Graph current = graph;
+
+		if (removed.isEmpty() || current.edges == 0) {
+			return expand(set);
+		}
+
+		PermissionSet.Builder builder = null;
+
+		for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+
+			final PermissionSet implied = current.getClosure(id);
+
+			if (implied.isEmpty()) {
+				continue;
+			}
+
+			if (builder == null) {
+				builder = new PermissionSet.Builder().addAll(set);
+			}
+
+			if (implied.intersects(removed)) {
+				walk(current, id, removed, builder);
+			}
+			else {
+				builder.addAll(implied);
+			}
+
+		}
+
+		return builder != null ? builder.build() : set;
+
+	}
+
+	/**
+	 * Adds the permissions reachable from <code>source</code> to a builder through a breadth-first
+	 * search that skips removed permissions.
+	 */
+	private static void walk(Graph current, int source, PermissionSet removed,
+			PermissionSet.Builder builder) {
+
+		final int length = current.direct.length;
+		final int[] queue = new int[length];
+		final boolean[] queued = new boolean[length];
+		int head = 0;
+		int tail = 0;
+
+		queue[tail++] = source;
+		queued[source] = true;
+
+		while (head < tail) {
+
+			final PermissionSet next = current.getDirect(queue[head++]);
+
+			for (int id = next.nextId(0); id >= 0; id = next.nextId(id + 1)) {
+
+				if (removed.contains(id)) {
+					continue;
+				}
+
+				builder.add(id);
+
+				if (id < length && queued[id] == false) {
+					queued[id] = true;
+					queue[tail++] = id;
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Returns the number of direct implications.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getImplicationCount() {
+		return graph.edges;
+	}
+
+	/**
+	 * Returns a number that changes every time the implications change, so compiled permissions
+	 * can tell whether they are stale.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getModificationCount() {
+		return modifications.get();
+	}
+
+	/**
+	 * Publishes a new snapshot of the implications.
+	 */
+	private void publish(Graph next) {
+		graph = next;
+		modifications.incrementAndGet();
+	}
+
+	/**
+	 * Computes the closure of some direct implications with a breadth-first search from every
+	 * permission.
+	 */
+	private static Graph computeClosure(PermissionSet[] direct) {
+
+		final PermissionSet[] closure = new PermissionSet[direct.length];
+		final int[] queue = new int[direct.length];
+		int edges = 0;
+
+		for (int source = 0; source < direct.length; source++) {
+
+			if (direct[source] == null || direct[source].isEmpty()) {
+				continue;
+			}
+
+			edges += direct[source].size();
+
+			// breadth-first search from source, using the builder as the visited set
+			final PermissionSet.Builder reached = new PermissionSet.Builder();
+			final boolean[] queued = new boolean[direct.length];
+			int head = 0;
+			int tail = 0;
+
+			queue[tail++] = source;
+			queued[source] = true;
+
+			while (head < tail) {
+
+				final PermissionSet next = direct[queue[head++]];
+
+				if (next == null) {
+					continue;
+				}
+
+				for (int id = next.nextId(0); id >= 0; id = next.nextId(id + 1)) {
+
+					reached.add(id);
+
+					if (id < direct.length && queued[id] == false) {
+						queued[id] = true;
+						queue[tail++] = id;
+					}
+
+				}
+
+			}
+
+			closure[source] = reached.build();
+
+		}
+
+		return new Graph(direct, closure, edges);
+
+	}
+
+	/**
+	 * Immutable snapshot of the implications and their closure, both indexed by permission id.
+	 */
+	final private static class Graph {
+
+		final private PermissionSet[] direct;
+
+		final private PermissionSet[] closure;
+
+		final private int edges;
+
+		Graph(PermissionSet[] direct, PermissionSet[] closure, int edges) {
+			this.direct = direct;
+			this.closure = closure;
+			this.edges = edges;
+		}
+
+		PermissionSet getDirect(int id) {
+			return id >= 0 && id < direct.length && direct[id] != null ? direct[id]
+					: PermissionSet.EMPTY;
+		}
+
+		PermissionSet getClosure(int id) {
+			return id >= 0 && id < closure.length && closure[id] != null ? closure[id]
+					: PermissionSet.EMPTY;
+		}
+
+		/**
+		 * Returns a copy of the direct implications with room for a given id.
+		 */
+		PermissionSet[] copyDirect(int id) {
+			return Arrays.copyOf(direct, Math.max(direct.length, id + 1));
+		}
+
+	}
+
+}
@@ -0,0 +1,373 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of permissions, stored as a bit set indexed by the ids assigned by
+ * {@link PermissionSymbolTable}. Lookups are a single bit test and do not allocate.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class PermissionSet {
+
+	/**
+	 * The empty set.
+	 */
+	public static final PermissionSet EMPTY = new PermissionSet(new long[0]);
+
+	final private long[] words;
+
+	private PermissionSet(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * Tells if this set contains a permission id.
+	 *
+	 * @param id an <code>int</code>. Negative ids are never contained.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean contains(int id) {
+
+		final int word = id >> 6;
+
+		return id >= 0 && word < words.length && (words[word] & (1L << id)) != 0;
+
+	}
+
+	/**
+	 * Tells if this set contains a permission name.
+	 *
+	 * @param name a {@link String} or <code>null</code>.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean contains(String name) {
+		return contains(PermissionSymbolTable.getId(name));
+	}
+
+	/**
+	 * Tells if this set contains at least one of some permission names.
+	 *
+	 * @param names an array of {@link String}s. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean containsAny(String... names) {
+
+		for (String name : names) {
+
+			if (contains(name)) {
+				return true;
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Tells if this set contains all of some permission names.
+	 *
+	 * @param names an array of {@link String}s. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean containsAll(String... names) {
+
+		for (String name : names) {
+
+			if (contains(name) == false) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Tells if this set contains all the permissions of another one, comparing whole words.
+	 *
+	 * @param other a {@link PermissionSet}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean containsAll(PermissionSet other) {
+
+		final long[] otherWords = other.words;
+
+		if (otherWords.length > words.length) {
+			return false;
+		}
+
+		for (int i = 0; i < otherWords.length; i++) {
+
+			if ((words[i] & otherWords[i]) != otherWords[i]) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Tells if this set has at least one permission in common with another one, comparing whole
+	 * words.
+	 *
+	 * @param other a {@link PermissionSet}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean intersects(PermissionSet other) {
+
+		final int length = Math.min(words.length, other.words.length);
+
+		for (int i = 0; i < length; i++) {
+
+			if ((words[i] & other.words[i]) != 0) {
+				return true;
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Returns the first id in this set greater than or equal to <code>from</code>.
+	 *
+	 * @param from an <code>int</code>.
+	 * @return an <code>int</code> or <code>-1</code> if there is none.
+	 */
+	public int nextId(int from) {
+
+		if (from < 0) {
+			from = 0;
+		}
+
+		int word = from >> 6;
+
+		if (word >= words.length) {
+			return -1;
+		}
+
+		long bits = words[word] & (-1L << from);
+
+		while (true) {
+
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+
+			if (++word == words.length) {
+				return -1;
+			}
+
+			bits = words[word];
+
+		}
+
+	}
+
+	/**
+	 * Returns the number of permissions in this set.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int size() {
+
+		int size = 0;
+
+		for (long word : words) {
+			size += Long.bitCount(word);
+		}
+
+		return size;
+
+	}
+
+	/**
+	 * Tells if this set is empty.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isEmpty() {
+		return words.length == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(words);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PermissionSet && Arrays.equals(words, ((PermissionSet) obj).words);
+	}
+
+	/**
+	 * Returns the permission names in this set.
+	 *
+	 * @return a {@link String}.
+	 */
+	@Override
+	public String toString() {
+
+		final StringBuilder builder = new StringBuilder("[");
+
+		for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+
+			builder.append(PermissionSymbolTable.getName(id));
+
+		}
+
+		return builder.append(']').toString();
+
+	}
+
+	/**
+	 * Mutable builder of {@link PermissionSet}s. It is not thread-safe.
+	 */
+	public static class Builder {
+
+		private long[] words = new long[1];
+
+		/**
+		 * Adds a permission name, interning it.
+		 *
+		 * @param name a {@link String}. It cannot be null.
+		 * @return this builder.
+		 */
+		public Builder add(String name) {
+			return add(PermissionSymbolTable.intern(name));
+		}
+
+		/**
+		 * Adds a permission id.
+		 *
+		 * @param id an <code>int</code>. It cannot be negative.
+		 * @return this builder.
+		 */
+		public Builder add(int id) {
+
+			if (id < 0) {
+				throw new IllegalArgumentException("Parameter id cannot be negative");
+			}
+
+			final int word = id >> 6;
+
+			if (word >= words.length) {
+				words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+			}
+
+			words[word] |= 1L << id;
+
+			return this;
+
+		}
+
+		/**
+		 * Adds all permissions of a set.
+		 *
+		 * @param set a {@link PermissionSet}. It cannot be null.
+		 * @return this builder.
+		 */
+		public Builder addAll(PermissionSet set) {
+
+			if (set.words.length > words.length) {
+				words = Arrays.copyOf(words, set.words.length);
+			}
+
+			for (int i = 0; i < set.words.length; i++) {
+				words[i] |= set.words[i];
+			}
+
+			return this;
+
+		}
+
+		/**
+		 * Removes a permission name.
+		 *
+		 * @param name a {@link String} or <code>null</code>.
+		 * @return this builder.
+		 */
+		public Builder remove(String name) {
+			return remove(PermissionSymbolTable.getId(name));
+		}
+
+		/**
+		 * Removes a permission id.
+		 *
+		 * @param id an <code>int</code>. Negative ids are ignored.
+		 * @return this builder.
+		 */
+		public Builder remove(int id) {
+
+			final int word = id >> 6;
+
+			if (id >= 0 && word < words.length) {
+				words[word] &= ~(1L << id);
+			}
+
+			return this;
+
+		}
+
+		/**
+		 * Removes all permissions of a set.
+		 *
+		 * @param set a {@link PermissionSet}. It cannot be null.
+		 * @return this builder.
+		 */
+		public Builder removeAll(PermissionSet set) {
+
+			final int length = Math.min(words.length, set.words.length);
+
+			for (int i = 0; i < length; i++) {
+				words[i] &= ~set.words[i];
+			}
+
+			return this;
+
+		}
+
+		/**
+		 * Creates a {@link PermissionSet} with the permissions added so far.
+		 *
+		 * @return a {@link PermissionSet}.
+		 */
+		public PermissionSet build() {
+
+			int length = words.length;
+
+			while (length > 0 && words[length - 1] == 0) {
+				length--;
+			}
+
+			return length == 0 ? EMPTY : new PermissionSet(Arrays.copyOf(words, length));
+
+		}
+
+	}
+
+}
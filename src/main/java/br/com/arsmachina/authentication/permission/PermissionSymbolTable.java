@@ -0,0 +1,126 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns a dense <code>int</code> id to each permission name, so sets of permissions can be
+ * represented as bit sets (see {@link PermissionSet}). Ids are assigned in the order names are
+ * first seen and are never reused, so they are only meaningful inside this process: they must not
+ * be stored nor sent to other processes.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class PermissionSymbolTable {
+
+	final private static ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+
+	private static volatile String[] names = new String[64];
+
+	private static int size;
+
+	/**
+	 * No instances of this class.
+	 */
+	private PermissionSymbolTable() {
+	}
+
+	/**
+	 * Returns the id of a permission name, assigning one if it was not seen yet.
+	 *
+	 * @param name a {@link String}. It cannot be null.
+	 * @return an <code>int</code>.
+	 */
+	public static int intern(String name) {
+
+		if (name == null) {
+			throw new IllegalArgumentException("Parameter name cannot be null");
+		}
+
+		final Integer id = IDS.get(name);
+
+		return id != null ? id.intValue() : assign(name);
+
+	}
+
+	private static synchronized int assign(String name) {
+
+		final Integer existing = IDS.get(name);
+
+		if (existing != null) {
+			return existing.intValue();
+		}
+
+		String[] current = names;
+
+		if (size == current.length) {
+			final String[] grown = new String[current.length * 2];
+			System.arraycopy(current, 0, grown, 0, size);
+			current = grown;
+		}
+
+		final int id = size;
+		current[id] = name;
+		size++;
+
+		// publish the name before the id, so getName() works for any id returned by getId()
+		names = current;
+		IDS.put(name, id);
+
+		return id;
+
+	}
+
+	/**
+	 * Returns the id of a permission name without assigning one.
+	 *
+	 * @param name a {@link String} or <code>null</code>.
+	 * @return an <code>int</code> or <code>-1</code> if the name was never interned, which means
+	 * no {@link PermissionSet} contains it.
+	 */
+	public static int getId(String name) {
+
+		final Integer id = name != null ? IDS.get(name) : null;
+
+		return id != null ? id.intValue() : -1;
+
+	}
+
+	/**
+	 * Returns the permission name with a given id.
+	 *
+	 * @param id an <code>int</code>.
+	 * @return a {@link String} or <code>null</code> if no name has this id.
+	 */
+	public static String getName(int id) {
+
+		final String[] current = names;
+
+		return id >= 0 && id < current.length ? current[id] : null;
+
+	}
+
+	/**
+	 * Returns the number of ids assigned so far.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public static int size() {
+		return IDS.size();
+	}
+
+}
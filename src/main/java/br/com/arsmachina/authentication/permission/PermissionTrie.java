@@ -0,0 +1,319 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+/**
+ * Compiled wildcard permissions. Permission names are hierarchical, with segments separated by
+ * {@link #SEPARATOR}, and a name whose last segment is {@link #WILDCARD}, such as
+ * <code>report:*</code>, grants every name below its prefix, such as <code>report:sales</code>
+ * and <code>report:sales:*</code>. A lone <code>*</code> grants everything. Wildcards are only
+ * allowed as the last segment.
+ *
+ * The wildcard names of a {@link PermissionSet} are compiled once into a trie of segments, so
+ * {@link #matches(String)} costs O(length of the name) however many wildcards were granted, and
+ * allocates nothing: segments are looked up by their range in the name.
+ * Exact names are not stored here: they are checked against the {@link PermissionSet} itself.
+ *
+ * Excluded names are never matched. An excluded wildcard, such as <code>report:sales:*</code>,
+ * prunes its whole subtree, even below a broader granted wildcard such as <code>report:*</code>.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class PermissionTrie {
+
+	/**
+	 * Separator of permission name segments.
+	 */
+	public static final char SEPARATOR = ':';
+
+	/**
+	 * Segment that matches one or more segments.
+	 */
+	public static final String WILDCARD = "*";
+
+	/**
+	 * Trie without any wildcards.
+	 */
+	public static final PermissionTrie EMPTY =
+		new PermissionTrie(new Node(), PermissionSet.EMPTY, null);
+
+	final private Node root;
+
+	final private PermissionSet excluded;
+
+	final private Node excludedRoot;
+
+	private PermissionTrie(Node root, PermissionSet excluded, Node excludedRoot) {
+		this.root = root;
+		this.excluded = excluded;
+		this.excludedRoot = excludedRoot;
+	}
+
+	/**
+	 * Compiles the wildcard names of a set.
+	 *
+	 * @param granted a {@link PermissionSet}. It cannot be null.
+	 * @param excluded a {@link PermissionSet} with names that must not be matched even if a
+	 * wildcard covers them, such as an user's removed permissions. Its wildcards exclude every
+	 * name below them. It cannot be null.
+	 * @return a {@link PermissionTrie}.
+	 */
+	public static PermissionTrie compile(PermissionSet granted, PermissionSet excluded) {
+
+		if (granted == null) {
+			throw new IllegalArgumentException("Parameter granted cannot be null");
+		}
+
+		if (excluded == null) {
+			throw new IllegalArgumentException("Parameter excluded cannot be null");
+		}
+
+		final Node root = compileWildcards(granted);
+
+		return root != null ? new PermissionTrie(root, excluded, compileWildcards(excluded))
+				: EMPTY;
+
+	}
+
+	/**
+	 * Builds a trie with the wildcard names of a set.
+	 *
+	 * @return a {@link Node} or <code>null</code> if the set has no wildcards.
+	 */
+	private static Node compileWildcards(PermissionSet set) {
+
+		Node root = null;
+
+		for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+
+			final String name = PermissionSymbolTable.getName(id);
+
+			if (isWildcard(name)) {
+
+				if (root == null) {
+					root = new Node();
+				}
+
+				root.add(name);
+
+			}
+
+		}
+
+		return root;
+
+	}
+
+	/**
+	 * Tells if a name ends with a wildcard segment.
+	 *
+	 * @param name a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public static boolean isWildcard(String name) {
+
+		final int separator = name.length() - WILDCARD.length() - 1;
+
+		return name.endsWith(WILDCARD) && (separator < 0 || name.charAt(separator) == SEPARATOR);
+
+	}
+
+	/**
+	 * Tells if a name is covered by one of the compiled wildcards and is not excluded.
+	 *
+	 * @param name a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean matches(String name) {
+
+		if (isEmpty() || covers(root, name) == false) {
+			return false;
+		}
+
+		return excluded.contains(name) == false
+				&& (excludedRoot == null || covers(excludedRoot, name) == false);
+
+	}
+
+	/**
+	 * Tells if a name is below one of the wildcards of a trie.
+	 */
+	private static boolean covers(Node root, String name) {
+
+		Node node = root;
+		int start = 0;
+
+		while (node.wildcard == false) {
+
+			final int end = name.indexOf(SEPARATOR, start);
+
+			if (end < 0 || node.children == null) {
+				return false;
+			}
+
+			node = node.child(name, start, end);
+
+			if (node == null) {
+				return false;
+			}
+
+			start = end + 1;
+
+		}
+
+		return start < name.length();
+
+	}
+
+	/**
+	 * Tells if this trie has no wildcards.
+	 *
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isEmpty() {
+		return root.children == null && root.wildcard == false;
+	}
+
+	/**
+	 * Returns the names that are never matched. Names below its wildcards are not matched either.
+	 *
+	 * @return a {@link PermissionSet}.
+	 */
+	public PermissionSet getExcluded() {
+		return excluded;
+	}
+
+	/**
+	 * Node of the trie: one per distinct prefix of the wildcard names. Its children are kept in an
+	 * open addressing hash table of segments, so they can be found by a range of a name without
+	 * extracting it.
+	 */
+	final private static class Node {
+
+		private String[] segments;
+
+		private Node[] children;
+
+		private int size;
+
+		private boolean wildcard;
+
+		void add(String name) {
+
+			Node node = this;
+			int start = 0;
+			int end;
+
+			while ((end = name.indexOf(SEPARATOR, start)) >= 0) {
+
+				Node child = node.child(name, start, end);
+
+				if (child == null) {
+					child = new Node();
+					node.put(name.substring(start, end), child);
+				}
+
+				node = child;
+				start = end + 1;
+
+			}
+
+			node.wildcard = true;
+
+		}
+
+		/**
+		 * Returns the child whose segment is <code>name.substring(start, end)</code>.
+		 */
+		Node child(String name, int start, int end) {
+
+			if (children == null) {
+				return null;
+			}
+
+			final int length = end - start;
+			final int mask = segments.length - 1;
+
+			for (int i = hash(name, start, end) & mask; segments[i] != null; i = (i + 1) & mask) {
+
+				final String segment = segments[i];
+
+				if (segment.length() == length && name.regionMatches(start, segment, 0, length)) {
+					return children[i];
+				}
+
+			}
+
+			return null;
+
+		}
+
+		private void put(String segment, Node child) {
+
+			if (children == null) {
+				segments = new String[4];
+				children = new Node[4];
+			}
+			else if ((size + 1) * 2 > segments.length) {
+
+				final String[] oldSegments = segments;
+				final Node[] oldChildren = children;
+				segments = new String[oldSegments.length * 2];
+				children = new Node[oldSegments.length * 2];
+
+				for (int i = 0; i < oldSegments.length; i++) {
+
+					if (oldSegments[i] != null) {
+						insert(oldSegments[i], oldChildren[i]);
+					}
+
+				}
+
+			}
+
+			insert(segment, child);
+			size++;
+
+		}
+
+		private void insert(String segment, Node child) {
+
+			final int mask = segments.length - 1;
+			int i = hash(segment, 0, segment.length()) & mask;
+
+			while (segments[i] != null) {
+				i = (i + 1) & mask;
+			}
+
+			segments[i] = segment;
+			children[i] = child;
+
+		}
+
+		private static int hash(String name, int start, int end) {
+
+			int hash = 0;
+
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + name.charAt(i);
+			}
+
+			return hash ^ (hash >>> 16);
+
+		}
+
+	}
+
+}
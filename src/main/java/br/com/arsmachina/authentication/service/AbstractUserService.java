@@ -0,0 +1,75 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service;
+
+import br.com.arsmachina.authentication.AbstractUser;
+import br.com.arsmachina.authentication.UserPrincipal;
+import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.permission.PermissionExpression;
+import br.com.arsmachina.authentication.permission.PermissionExpressionCache;
+
+/**
+ * Base class for {@link UserService} implementations written before the principal and permission
+ * expression methods were added, so they keep compiling. {@link #getPrincipal()} returns the
+ * {@link User} itself, {@link #setPrincipal(UserPrincipal)} is not supported until overridden and
+ * {@link #isGranted(String)} evaluates the expression against {@link #getPrincipal()}.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public abstract class AbstractUserService implements UserService {
+
+	/**
+	 * Returns {@link #getUser()}.
+	 * 
+	 * @return an {@link AbstractUser} or null.
+	 */
+	public AbstractUser getPrincipal() {
+		return getUser();
+	}
+
+	/**
+	 * Not supported: subclasses that keep principals must override this method and
+	 * {@link #getPrincipal()}.
+	 * 
+	 * @param principal an {@link UserPrincipal}.
+	 * @throws UnsupportedOperationException always.
+	 */
+	public void setPrincipal(UserPrincipal principal) {
+		throw new UnsupportedOperationException(getClass().getName()
+				+ " does not support principals");
+	}
+
+	/**
+	 * Evaluates an expression, compiled through {@link PermissionExpressionCache#getDefault()},
+	 * against {@link #getPrincipal()}.
+	 * 
+	 * @param expression a {@link String}. It cannot be null.
+	 * @return a <code>boolean</code>.
+	 * @throws IllegalArgumentException if <code>expression</code> is not a valid expression.
+	 */
+	public boolean isGranted(String expression) {
+
+		if (expression == null) {
+			throw new IllegalArgumentException("Parameter expression cannot be null");
+		}
+
+		final PermissionExpression compiled = PermissionExpressionCache.getDefault().get(expression);
+		final AbstractUser principal = getPrincipal();
+
+		return principal != null && principal.isGranted(compiled);
+
+	}
+
+}
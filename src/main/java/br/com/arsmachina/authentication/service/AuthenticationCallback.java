@@ -0,0 +1,44 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service;
+
+import br.com.arsmachina.authentication.entity.User;
+
+/**
+ * Receives the result of
+ * {@link AuthenticationService#authenticateAsync(String, String, java.util.concurrent.Executor, AuthenticationCallback)}
+ * in the thread that did the authentication, so non-blocking callers do not need to wait on the
+ * returned future.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public interface AuthenticationCallback {
+
+	/**
+	 * Invoked when the user was authenticated.
+	 * 
+	 * @param user an {@link User}. It is never null.
+	 */
+	void authenticated(User user);
+
+	/**
+	 * Invoked when the authentication failed. <code>exception</code> is usually an
+	 * {@link br.com.arsmachina.authentication.exception.AuthenticationException}.
+	 * 
+	 * @param exception a {@link Throwable}. It is never null.
+	 */
+	void failed(Throwable exception);
+
+}
@@ -0,0 +1,177 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service;
+
+import br.com.arsmachina.authentication.exception.AuthenticationException;
+import br.com.arsmachina.authentication.exception.AuthenticationOverloadException;
+import br.com.arsmachina.authentication.exception.BadCredentialsException;
+import br.com.arsmachina.authentication.exception.DisabledUserException;
+import br.com.arsmachina.authentication.exception.ExpiredUserException;
+import br.com.arsmachina.authentication.exception.LockedUserException;
+import br.com.arsmachina.authentication.exception.SimultaneousLoginForbiddenException;
+
+/**
+ * Possible outcomes of an authentication. Each failure outcome corresponds to one
+ * {@link AuthenticationException} subclass.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public enum AuthenticationOutcome {
+
+	/**
+	 * The user was authenticated.
+	 */
+	SUCCESS(null),
+
+	/**
+	 * The login/password pair is invalid.
+	 */
+	BAD_CREDENTIALS(new BadCredentialsException()),
+
+	/**
+	 * The user is expired.
+	 */
+	EXPIRED(new ExpiredUserException()),
+
+	/**
+	 * The user is locked.
+	 */
+	LOCKED(new LockedUserException()),
+
+	/**
+	 * The user is disabled.
+	 */
+	DISABLED(new DisabledUserException()),
+
+	/**
+	 * The user is already logged in and simultaneous logins are not allowed.
+	 */
+	SIMULTANEOUS_LOGIN_FORBIDDEN(new SimultaneousLoginForbiddenException()),
+
+	/**
+	 * There was no capacity left to check the credentials.
+	 */
+	OVERLOADED(new AuthenticationOverloadException());
+
+	final private AuthenticationException exception;
+
+	private AuthenticationOutcome(AuthenticationException exception) {
+		this.exception = exception != null ? exception.clearStackTrace() : null;
+	}
+
+	/**
+	 * Tells if this outcome is {@link #SUCCESS}.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isSuccessful() {
+		return this == SUCCESS;
+	}
+
+	/**
+	 * Returns the preallocated exception corresponding to this outcome. It has no stack trace and
+	 * is shared by all threads, so it must not be thrown, as suppressed exceptions added to it
+	 * would be seen by every thread. Throw {@link #newException(boolean)} instead.
+	 * 
+	 * @return an {@link AuthenticationException} or <code>null</code> if this outcome is
+	 * {@link #SUCCESS}.
+	 */
+	public AuthenticationException getException() {
+		return exception;
+	}
+
+	/**
+	 * Returns the failure outcome corresponding to an exception.
+	 * 
+	 * @param exception an {@link AuthenticationException}. It cannot be null.
+	 * @return an {@link AuthenticationOutcome} or <code>null</code> if the exception is not an
+	 * instance of the subclasses listed here.
+	 */
+	public static AuthenticationOutcome of(AuthenticationException exception) {
+
+		if (exception == null) {
+			throw new IllegalArgumentException("Parameter exception cannot be null");
+		}
+
+		for (AuthenticationOutcome outcome : values()) {
+
+			if (outcome.exception != null && outcome.exception.getClass().isInstance(exception)) {
+				return outcome;
+			}
+
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Creates a new exception, with stack trace, corresponding to this outcome.
+	 * 
+	 * @return an {@link AuthenticationException} or <code>null</code> if this outcome is
+	 * {@link #SUCCESS}.
+	 */
+	public AuthenticationException newException() {
+		return newException(true);
+	}
+
+	/**
+	 * Creates a new exception corresponding to this outcome.
+	 * 
+	 * @param writableStackTrace a <code>boolean</code>. If <code>false</code>, the exception has no
+	 * stack trace, so it costs little more than a plain object to create.
+	 * @return an {@link AuthenticationException} or <code>null</code> if this outcome is
+	 * {@link #SUCCESS}.
+	 */
+	public AuthenticationException newException(boolean writableStackTrace) {
+
+		AuthenticationException newException = null;
+
+		switch (this) {
+
+			case BAD_CREDENTIALS:
+				newException = new BadCredentialsException(writableStackTrace);
+				break;
+
+			case EXPIRED:
+				newException = new ExpiredUserException(writableStackTrace);
+				break;
+
+			case LOCKED:
+				newException = new LockedUserException(writableStackTrace);
+				break;
+
+			case DISABLED:
+				newException = new DisabledUserException(writableStackTrace);
+				break;
+
+			case SIMULTANEOUS_LOGIN_FORBIDDEN:
+				newException = new SimultaneousLoginForbiddenException(writableStackTrace);
+				break;
+
+			case OVERLOADED:
+				newException = new AuthenticationOverloadException(writableStackTrace);
+				break;
+
+			default:
+				break;
+
+		}
+
+		return newException;
+
+	}
+
+}
@@ -0,0 +1,163 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service;
+
+import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.exception.AuthenticationException;
+
+/**
+ * Immutable result of {@link AuthenticationService#tryAuthenticate(String, String)}. Failure
+ * results carry no user and are shared, one per {@link AuthenticationOutcome}, so a failed
+ * authentication allocates nothing. The exceptions are failures caused by an exception thrown by
+ * an overridable check, which carry that exception.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+final public class AuthenticationResult {
+
+	final private static AuthenticationResult[] FAILURES;
+
+	static {
+
+		final AuthenticationOutcome[] outcomes = AuthenticationOutcome.values();
+		FAILURES = new AuthenticationResult[outcomes.length];
+
+		for (AuthenticationOutcome outcome : outcomes) {
+
+			if (outcome.isSuccessful() == false) {
+				FAILURES[outcome.ordinal()] = new AuthenticationResult(outcome, null, null);
+			}
+
+		}
+
+	}
+
+	final private AuthenticationOutcome outcome;
+
+	final private User user;
+
+	final private AuthenticationException exception;
+
+	private AuthenticationResult(AuthenticationOutcome outcome, User user,
+			AuthenticationException exception) {
+		this.outcome = outcome;
+		this.user = user;
+		this.exception = exception;
+	}
+
+	/**
+	 * Returns a successful result.
+	 * 
+	 * @param user an {@link User}. It cannot be null.
+	 * @return an {@link AuthenticationResult}.
+	 */
+	public static AuthenticationResult success(User user) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		return new AuthenticationResult(AuthenticationOutcome.SUCCESS, user, null);
+
+	}
+
+	/**
+	 * Returns the shared result for a failure outcome.
+	 * 
+	 * @param outcome an {@link AuthenticationOutcome}. It cannot be null nor
+	 * {@link AuthenticationOutcome#SUCCESS}.
+	 * @return an {@link AuthenticationResult}.
+	 */
+	public static AuthenticationResult failure(AuthenticationOutcome outcome) {
+
+		if (outcome == null) {
+			throw new IllegalArgumentException("Parameter outcome cannot be null");
+		}
+
+		if (outcome.isSuccessful()) {
+			throw new IllegalArgumentException("Parameter outcome cannot be SUCCESS");
+		}
+
+		return FAILURES[outcome.ordinal()];
+
+	}
+
+	/**
+	 * Returns a failure result that carries the exception that caused it, such as one thrown by
+	 * an overridden
+	 * {@link br.com.arsmachina.authentication.service.impl.AuthenticationServiceImpl#verifyExpired(User)}
+	 * or an {@link br.com.arsmachina.authentication.exception.AuthenticationOverloadException}
+	 * with its cause.
+	 * 
+	 * @param outcome an {@link AuthenticationOutcome}. It cannot be null nor
+	 * {@link AuthenticationOutcome#SUCCESS}.
+	 * @param exception an {@link AuthenticationException}. It cannot be null.
+	 * @return an {@link AuthenticationResult}.
+	 */
+	public static AuthenticationResult failure(AuthenticationOutcome outcome,
+			AuthenticationException exception) {
+
+		if (exception == null) {
+			throw new IllegalArgumentException("Parameter exception cannot be null");
+		}
+
+		return new AuthenticationResult(failure(outcome).outcome, null, exception);
+
+	}
+
+	/**
+	 * Returns the outcome of the authentication.
+	 * 
+	 * @return an {@link AuthenticationOutcome}.
+	 */
+	public AuthenticationOutcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns the authenticated user.
+	 * 
+	 * @return an {@link User} or <code>null</code> if the authentication failed.
+	 */
+	public User getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the exception that caused the failure, if it was not detected by the authentication
+	 * service itself.
+	 * 
+	 * @return an {@link AuthenticationException} or <code>null</code>. In this case, use
+	 * {@link AuthenticationOutcome#getException()} or {@link AuthenticationOutcome#newException()}.
+	 */
+	public AuthenticationException getException() {
+		return exception;
+	}
+
+	/**
+	 * Tells if the authentication succeeded.
+	 * 
+	 * @return a <code>boolean</code>.
+	 */
+	public boolean isSuccessful() {
+		return outcome.isSuccessful();
+	}
+
+	@Override
+	public String toString() {
+		return user != null ? outcome + " " + user.getLogin() : outcome.toString();
+	}
+
+}
@@ -14,7 +14,11 @@
 
 package br.com.arsmachina.authentication.service;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
 import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.exception.AuthenticationOverloadException;
 import br.com.arsmachina.authentication.exception.BadCredentialsException;
 import br.com.arsmachina.authentication.exception.DisabledUserException;
 import br.com.arsmachina.authentication.exception.LockedUserException;
@@ -37,7 +41,37 @@ public interface AuthenticationService {
 	 * @throws LockedUserException if the user is locked.
 	 * @throws ExpiredUserException if the user is expired.
 	 * @throws DisabledUserException if the user is disabled.
+	 * @throws AuthenticationOverloadException if there is no capacity left to check the
+	 * credentials.
 	 */
 	User authenticate(String login, String password);
+
+	/**
+	 * Authenticates a login/password pair like {@link #authenticate(String, String)}, but returns
+	 * failures instead of throwing them. Failed results are shared instances, so this is the
+	 * cheapest way to reject invalid credentials.
+	 * 
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @return an {@link AuthenticationResult}.
+	 */
+	AuthenticationResult tryAuthenticate(String login, String password);
+
+	/**
+	 * Authenticates a login/password pair in <code>executor</code>, so the calling thread does not
+	 * block. The returned {@link Future} fails with the same exceptions thrown by
+	 * {@link #authenticate(String, String)}, wrapped in an
+	 * {@link java.util.concurrent.ExecutionException}. As {@link UserService} is bound to threads,
+	 * the authenticated user is not set in it: the caller must do that in its own thread.
+	 * 
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @param executor an {@link Executor}. It cannot be null.
+	 * @param callback an {@link AuthenticationCallback} notified when the authentication
+	 * finishes or <code>null</code>.
+	 * @return a {@link Future} of an {@link User}.
+	 */
+	Future<User> authenticateAsync(String login, String password, Executor executor,
+			AuthenticationCallback callback);
 	
 }
@@ -14,7 +14,11 @@
 
 package br.com.arsmachina.authentication.service;
 
+import br.com.arsmachina.authentication.AbstractUser;
+import br.com.arsmachina.authentication.UserPrincipal;
 import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.permission.PermissionExpression;
+import br.com.arsmachina.authentication.permission.PermissionExpressionCache;
 
 /**
  * Service that provides a method, {@link #getUser()}, that returns the user using the application
@@ -38,6 +42,24 @@ public interface UserService {
 	 */
 	void setUser(User user);
 
+	/**
+	 * Returns the user using the application in this thread without loading the {@link User}
+	 * entity: the {@link UserPrincipal} set by {@link #setPrincipal(UserPrincipal)} or the
+	 * {@link User} set by {@link #setUser(User)}.
+	 * 
+	 * @return an {@link AbstractUser} or null.
+	 */
+	AbstractUser getPrincipal();
+
+	/**
+	 * Sets the logged in user as a compact {@link UserPrincipal}, meant to be kept in HTTP
+	 * sessions instead of the {@link User} entity. {@link #getUser()} loads the entity by its id
+	 * when needed.
+	 * 
+	 * @param principal an {@link UserPrincipal}. It cannot be null.
+	 */
+	void setPrincipal(UserPrincipal principal);
+
 	/**
 	 * Tells if the user using this application in this thread is logged in.
 	 * 
@@ -71,6 +93,19 @@ public interface UserService {
 	 * @return a <code>boolean</code>.
 	 */
 	boolean hasAllPermissions(String... permissionNames);
+
+	/**
+	 * Tells if the permissions of the user using this application satisfy a permission
+	 * expression, such as <code>A and (B or not C)</code>. Expressions should be compiled through
+	 * {@link PermissionExpressionCache#getDefault()}, so each one is parsed only once. Unlogged
+	 * users have no permissions.
+	 * 
+	 * @param expression a {@link String} in the {@link PermissionExpression} syntax. It cannot be
+	 * null.
+	 * @return a <code>boolean</code>.
+	 * @throws IllegalArgumentException if <code>expression</code> is not a valid expression.
+	 */
+	boolean isGranted(String expression);
 	
 	/**
 	 * Unlogs the current user.
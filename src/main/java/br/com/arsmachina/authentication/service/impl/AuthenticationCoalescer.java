@@ -0,0 +1,141 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.authentication.exception.AuthenticationOverloadException;
+
+/**
+ * Coalesces concurrent authentications with the same credentials, so a client that sends many
+ * parallel requests with the same login and password costs one user query and one password hash.
+ * The first caller runs the task and the others wait for its result.
+ *
+ * Calls are grouped by an HMAC-SHA256 of the login and password, computed with a random key
+ * generated when this object is created. Different passwords never share a result, and
+ * the password itself is neither kept nor derivable from what is kept. Results are only shared
+ * while the task is running: they are not cached. As the result is handed to all waiting threads,
+ * it should be an immutable value, such as an id, and not an entity bound to the session of the
+ * thread that ran the task.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class AuthenticationCoalescer {
+
+	final private ConcurrentMap<CredentialKey, FutureTask<?>> flights =
+		new ConcurrentHashMap<CredentialKey, FutureTask<?>>();
+
+	final private AtomicLong coalesced = new AtomicLong();
+
+	final private CredentialKey.Factory keyFactory = new CredentialKey.Factory();
+
+	/**
+	 * Runs <code>task</code> or, if another thread is already running a task for the same login
+	 * and password, waits for that task and returns its result. Runtime exceptions thrown by the
+	 * task are rethrown, as they are, to all waiting callers.
+	 *
+	 * @param <T> the type of the task result.
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @param task a {@link Callable}. It cannot be null.
+	 * @return the task result.
+	 * @throws AuthenticationOverloadException if the calling thread was interrupted while waiting.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String login, String password, Callable<T> task) {
+
+		if (login == null) {
+			throw new IllegalArgumentException("Parameter login cannot be null");
+		}
+
+		if (password == null) {
+			throw new IllegalArgumentException("Parameter password cannot be null");
+		}
+
+		if (task == null) {
+			throw new IllegalArgumentException("Parameter task cannot be null");
+		}
+
+		final CredentialKey flight = keyFactory.create(login, password);
+		final FutureTask<T> future = new FutureTask<T>(task);
+		final FutureTask<?> running = flights.putIfAbsent(flight, future);
+
+		if (running != null) {
+			coalesced.incrementAndGet();
+			return (T) get(running);
+		}
+
+		try {
+			future.run();
+		}
+		finally {
+			flights.remove(flight, future);
+		}
+
+		return get(future);
+
+	}
+
+	/**
+	 * Returns the number of calls that were served by another caller's task.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Returns the number of distinct login and password pairs being authenticated now.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getRunningCount() {
+		return flights.size();
+	}
+
+	private static <T> T get(FutureTask<T> future) {
+
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AuthenticationOverloadException(e);
+		}
+		catch (ExecutionException e) {
+
+			final Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			else {
+				throw new IllegalStateException(cause);
+			}
+
+		}
+
+	}
+
+}
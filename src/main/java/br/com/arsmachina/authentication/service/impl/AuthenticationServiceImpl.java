@@ -14,14 +14,24 @@
 
 package br.com.arsmachina.authentication.service.impl;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import br.com.arsmachina.authentication.UserPrincipal;
+import br.com.arsmachina.authentication.controller.PasswordChange;
 import br.com.arsmachina.authentication.controller.UserController;
 import br.com.arsmachina.authentication.encryption.PasswordEncrypter;
 import br.com.arsmachina.authentication.entity.User;
-import br.com.arsmachina.authentication.exception.BadCredentialsException;
-import br.com.arsmachina.authentication.exception.DisabledUserException;
+import br.com.arsmachina.authentication.exception.AuthenticationException;
+import br.com.arsmachina.authentication.exception.AuthenticationOverloadException;
 import br.com.arsmachina.authentication.exception.ExpiredUserException;
-import br.com.arsmachina.authentication.exception.SimultaneousLoginForbiddenException;
-import br.com.arsmachina.authentication.exception.LockedUserException;
+import br.com.arsmachina.authentication.service.AuthenticationCallback;
+import br.com.arsmachina.authentication.service.AuthenticationOutcome;
+import br.com.arsmachina.authentication.service.AuthenticationResult;
 import br.com.arsmachina.authentication.service.AuthenticationService;
 import br.com.arsmachina.authentication.service.UserService;
 
@@ -32,6 +42,8 @@ import br.com.arsmachina.authentication.service.UserService;
  */
 public class AuthenticationServiceImpl implements AuthenticationService {
 
+	final private static String DUMMY_PASSWORD = "dummy password";
+
 	final private UserService userService;
 
 	final private PasswordEncrypter passwordEncrypter;
@@ -40,6 +52,20 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
 	final private boolean allowSimultaneousLogins;
 
+	private PasswordUpgradeQueue passwordUpgradeQueue;
+
+	private HashingExecutor hashingExecutor;
+
+	private boolean stacklessExceptions;
+
+	private AuthenticationCoalescer authenticationCoalescer;
+
+	private CredentialCache credentialCache;
+
+	private boolean usePrincipal;
+
+	private volatile String dummyEncryptedPassword;
+
 	/**
 	 * Single constructor of this class.
 	 * 
@@ -72,6 +98,43 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
 	public User authenticate(String login, String password) {
 
+		final User user = verify(login, password);
+		store(user);
+
+		return user;
+
+	}
+
+	public AuthenticationResult tryAuthenticate(String login, String password) {
+
+		final AuthenticationResult result = check(login, password);
+
+		if (result.isSuccessful()) {
+			store(result.getUser());
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Stores the authenticated user in the {@link UserService}, as an {@link UserPrincipal} if
+	 * {@link #setUsePrincipal(boolean)} was set.
+	 */
+	private void store(User user) {
+
+		if (usePrincipal) {
+			userService.setPrincipal(UserPrincipal.of(user));
+		}
+		else {
+			userService.setUser(user);
+		}
+
+	}
+
+	public Future<User> authenticateAsync(final String login, final String password,
+			Executor executor, AuthenticationCallback callback) {
+
 		if (login == null) {
 			throw new IllegalArgumentException("Parameter login cannot be null");
 		}
@@ -80,37 +143,406 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 			throw new IllegalArgumentException("Parameter password cannot be null");
 		}
 
-		String encryptedPassword = passwordEncrypter.encrypt(password);
+		if (executor == null) {
+			throw new IllegalArgumentException("Parameter executor cannot be null");
+		}
 
-		final User user = userController.findByLoginAndPassword(login, encryptedPassword);
+		final AuthenticationTask task = new AuthenticationTask(new Callable<User>() {
+
+			public User call() {
+				return verify(login, password);
+			}
+
+		}, callback);
+
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			task.fail(new AuthenticationOverloadException(e));
+		}
+
+		return task;
+
+	}
+
+	/**
+	 * Checks the credentials and the user state and marks the user as logged in, without setting
+	 * it in the {@link UserService}.
+	 * 
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @return an {@link User}.
+	 * @throws AuthenticationException if the authentication fails.
+	 */
+	private User verify(String login, String password) {
+
+		final AuthenticationResult result = check(login, password);
+		final AuthenticationOutcome outcome = result.getOutcome();
+
+		if (outcome.isSuccessful() == false) {
+
+			if (result.getException() != null) {
+				throw result.getException();
+			}
+
+			throw outcome.newException(stacklessExceptions == false);
 
-		if (user == null) {
-			throw new BadCredentialsException();
 		}
 
-		verifyExpired(user);
+		return result.getUser();
+
+	}
+
+	/**
+	 * Checks the credentials and the user state and marks the user as logged in, without setting
+	 * it in the {@link UserService}. Failures are returned, not thrown.
+	 * 
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @return an {@link AuthenticationResult}.
+	 */
+	private AuthenticationResult check(String login, String password) {
+
+		if (login == null) {
+			throw new IllegalArgumentException("Parameter login cannot be null");
+		}
+
+		if (password == null) {
+			throw new IllegalArgumentException("Parameter password cannot be null");
+		}
+
+		User user = null;
+		long cacheVersion = 0;
+
+		if (credentialCache != null) {
+
+			cacheVersion = credentialCache.getVersion();
+
+			final CredentialCache.CachedCredentials credentials = credentialCache.get(login, password);
+
+			if (credentials != null) {
+
+				// looked up by id, so it comes from the second-level cache instead of a query
+				final User loaded = userController.loadForAuthentication(credentials.getUserId());
+
+				if (credentials.matches(loaded)) {
+					user = loaded;
+				}
+				else {
+					credentialCache.userChanged(credentials.getUserId());
+					cacheVersion = credentialCache.getVersion();
+				}
+
+			}
+
+		}
+
+		final boolean cached = user != null;
+
+		if (cached == false) {
+
+			try {
+				user = loadAndCheckPassword(login, password);
+			}
+			catch (AuthenticationOverloadException e) {
+				return AuthenticationResult.failure(AuthenticationOutcome.OVERLOADED, e);
+			}
+
+			if (user == null) {
+				return AuthenticationResult.failure(AuthenticationOutcome.BAD_CREDENTIALS);
+			}
+
+		}
+
+		// verifyExpired() may be overridden, so it is still called, but only with a valid password
+		try {
+			verifyExpired(user);
+		}
+		catch (AuthenticationException e) {
+
+			// subclasses may throw their own exceptions, which are rethrown unchanged
+			final AuthenticationOutcome outcome = AuthenticationOutcome.of(e);
+
+			return AuthenticationResult.failure(outcome != null ? outcome
+					: AuthenticationOutcome.EXPIRED, e);
+
+		}
 
 		if (user.isLocked()) {
-			throw new LockedUserException();
+			return AuthenticationResult.failure(AuthenticationOutcome.LOCKED);
 		}
 
 		if (user.isEnabled() == false) {
-			throw new DisabledUserException();
+			return AuthenticationResult.failure(AuthenticationOutcome.DISABLED);
 		}
 
 		final boolean loggedIn = user.isLoggedIn();
 		
 		if (allowSimultaneousLogins == false && loggedIn) {
-			throw new SimultaneousLoginForbiddenException();
+			return AuthenticationResult.failure(AuthenticationOutcome.SIMULTANEOUS_LOGIN_FORBIDDEN);
 		}
 		
 		if (loggedIn == false) {
 			userController.markLoggedIn(user);
 		}
-		
-		userService.setUser(user);
 
-		return user;
+		if (credentialCache != null && cached == false) {
+			credentialCache.put(login, password, user, cacheVersion);
+		}
+
+		return AuthenticationResult.success(user);
+
+	}
+
+	/**
+	 * Loads the user with a given login and checks its password. When an
+	 * {@link AuthenticationCoalescer} was set, concurrent calls with the same credentials share
+	 * one password check. Only the id of the verified user is shared: the other callers load
+	 * their own {@link User} instance, as the one loaded by the first caller belongs to its
+	 * session.
+	 * 
+	 * @param login a {@link String}.
+	 * @param password a {@link String}.
+	 * @return an {@link User} or <code>null</code> if the credentials are invalid.
+	 */
+	private User loadAndCheckPassword(final String login, final String password) {
+
+		if (authenticationCoalescer == null) {
+			return loadAndCheckPasswordNow(login, password);
+		}
+
+		// only set in the thread that runs the task
+		final User[] verified = new User[1];
+
+		final Integer id = authenticationCoalescer.execute(login, password, new Callable<Integer>() {
+
+			public Integer call() {
+
+				verified[0] = loadAndCheckPasswordNow(login, password);
+
+				return verified[0] != null ? verified[0].getId() : null;
+
+			}
+
+		});
+
+		if (verified[0] != null || id == null) {
+			return verified[0];
+		}
+
+		final User user = userController.loadForAuthentication(login);
+
+		return user != null && id.equals(user.getId()) ? user : null;
+
+	}
+
+	private User loadAndCheckPasswordNow(String login, String password) {
+
+		final User user = userController.loadForAuthentication(login);
+
+		return checkPassword(user, password) ? user : null;
+
+	}
+
+	/**
+	 * Checks the password of an user, using the {@link HashingExecutor} if one was set.
+	 * 
+	 * @param user an {@link User} or <code>null</code>.
+	 * @param password a {@link String}.
+	 * @return <code>true</code> if <code>user</code> is not null and the password matches.
+	 */
+	private boolean checkPassword(final User user, final String password) {
+
+		if (hashingExecutor == null) {
+			return verifyPassword(user, password);
+		}
+
+		return hashingExecutor.execute(new Callable<Boolean>() {
+
+			public Boolean call() {
+				return verifyPassword(user, password);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Does the actual password hashing, in the calling thread.
+	 * 
+	 * @param user an {@link User} or <code>null</code>.
+	 * @param password a {@link String}.
+	 * @return <code>true</code> if <code>user</code> is not null and the password matches.
+	 */
+	private boolean verifyPassword(User user, String password) {
+
+		if (user == null) {
+
+			// spend the same time as a wrong password so logins cannot be probed by timing.
+			// encrypt() could return the password unchanged if it looks encrypted already
+			passwordEncrypter.matches(password, getDummyEncryptedPassword());
+			return false;
+
+		}
+
+		if (passwordEncrypter.matches(password, user.getPassword()) == false) {
+			return false;
+		}
+
+		upgradePassword(user, password);
+
+		return true;
+
+	}
+
+	/**
+	 * Returns a password encrypted with the current scheme, encrypted once and reused.
+	 */
+	private String getDummyEncryptedPassword() {
+
+		String encrypted = dummyEncryptedPassword;
+
+		if (encrypted == null) {
+			encrypted = passwordEncrypter.encrypt(DUMMY_PASSWORD);
+			dummyEncryptedPassword = encrypted;
+		}
+
+		return encrypted;
+
+	}
+
+	/**
+	 * Queues the upgrade of the user's stored password if it was encrypted with an older scheme
+	 * and a {@link PasswordUpgradeQueue} was set.
+	 * 
+	 * @param user an {@link User}.
+	 * @param password a {@link String} containing the password, already verified.
+	 */
+	private void upgradePassword(User user, String password) {
+
+		if (passwordUpgradeQueue != null) {
+
+			final String encryptedPassword = user.getPassword();
+			final String rehashed = passwordEncrypter.rehash(password, encryptedPassword);
+
+			if (rehashed != null) {
+				passwordUpgradeQueue.add(new PasswordChange(user.getId(), encryptedPassword,
+						rehashed));
+			}
+
+		}
+
+	}
+
+	/**
+	 * Sets the queue used to upgrade the stored passwords that were encrypted with an older
+	 * scheme. If it is not set, passwords are never upgraded.
+	 * 
+	 * @param passwordUpgradeQueue a {@link PasswordUpgradeQueue} or <code>null</code>.
+	 */
+	public void setPasswordUpgradeQueue(PasswordUpgradeQueue passwordUpgradeQueue) {
+		this.passwordUpgradeQueue = passwordUpgradeQueue;
+	}
+
+	/**
+	 * Sets the pool where passwords are hashed. If it is not set, passwords are hashed in the
+	 * thread calling {@link #authenticate(String, String)}.
+	 * 
+	 * @param hashingExecutor a {@link HashingExecutor} or <code>null</code>.
+	 */
+	public void setHashingExecutor(HashingExecutor hashingExecutor) {
+		this.hashingExecutor = hashingExecutor;
+	}
+
+	/**
+	 * Sets the object that coalesces concurrent authentications with the same credentials. Only
+	 * the credentials check is shared: the user state is verified, and the user marked as logged
+	 * in, by each caller. If it is not set, each authentication is done separately.
+	 * 
+	 * @param authenticationCoalescer an {@link AuthenticationCoalescer} or <code>null</code>.
+	 */
+	public void setAuthenticationCoalescer(AuthenticationCoalescer authenticationCoalescer) {
+		this.authenticationCoalescer = authenticationCoalescer;
+	}
+
+	/**
+	 * Sets the cache of verified credentials. Users found in it are loaded by id, which Hibernate
+	 * serves from its second-level cache, instead of by login, and their passwords are not hashed
+	 * again. They are only loaded by login and checked again when the entry is stale, that is,
+	 * when the user's stored password or state differ from the ones in the entry. If it is not
+	 * set, every authentication queries the user and checks the password.
+	 * 
+	 * @param credentialCache a {@link CredentialCache} or <code>null</code>.
+	 */
+	public void setCredentialCache(CredentialCache credentialCache) {
+		this.credentialCache = credentialCache;
+	}
+
+	/**
+	 * Defines whether {@link #authenticate(String, String)} throws exceptions without stack trace,
+	 * created by {@link AuthenticationOutcome#newException(boolean)}, which cost little more than
+	 * a plain object to create. The default value is <code>false</code>.
+	 * 
+	 * @param stacklessExceptions a <code>boolean</code>.
+	 */
+	public void setStacklessExceptions(boolean stacklessExceptions) {
+		this.stacklessExceptions = stacklessExceptions;
+	}
+
+	/**
+	 * Defines whether authenticated users are stored in the {@link UserService} as compact
+	 * {@link UserPrincipal}s, through {@link UserService#setPrincipal(UserPrincipal)}, instead of
+	 * whole {@link User} entities. The default value is <code>false</code>.
+	 * 
+	 * @param usePrincipal a <code>boolean</code>.
+	 */
+	public void setUsePrincipal(boolean usePrincipal) {
+		this.usePrincipal = usePrincipal;
+	}
+
+	/**
+	 * {@link FutureTask} returned by
+	 * {@link AuthenticationServiceImpl#authenticateAsync(String, String, Executor, AuthenticationCallback)}.
+	 * It notifies the callback, if any, as soon as it finishes.
+	 */
+	private static class AuthenticationTask extends FutureTask<User> {
+
+		final private AuthenticationCallback callback;
+
+		public AuthenticationTask(Callable<User> callable, AuthenticationCallback callback) {
+			super(callable);
+			this.callback = callback;
+		}
+
+		void fail(Throwable exception) {
+			setException(exception);
+		}
+
+		@Override
+		protected void done() {
+
+			if (callback == null || isCancelled()) {
+				return;
+			}
+
+			final User user;
+
+			try {
+				user = get();
+			}
+			catch (ExecutionException e) {
+				callback.failed(e.getCause());
+				return;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			callback.authenticated(user);
+
+		}
 
 	}
 
@@ -0,0 +1,348 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.authentication.controller.UserChangeListener;
+import br.com.arsmachina.authentication.encryption.EncryptionUtils;
+import br.com.arsmachina.authentication.entity.User;
+
+/**
+ * Short-lived cache of successfully verified credentials, for clients that send their login and
+ * password in every request. A hit skips the password hash. Entries are keyed by an HMAC-SHA256
+ * of the login and password (see {@link AuthenticationCoalescer}), so the cache never holds
+ * passwords, and keep only the id, the stored encrypted password and the account state flags of
+ * the verified user, as {@link CachedCredentials}. Callers load the {@link User} by id, which
+ * Hibernate serves from its second-level cache without a query, and use the entry only if it
+ * still matches (see {@link CachedCredentials#matches(User)}), so changes that reached that
+ * cache, including the ones made by other nodes in a clustered cache, are detected too.
+ *
+ * Entries live at most <code>timeToLive</code> milliseconds and the least recently used ones are
+ * evicted when there are more than <code>maximumSize</code>. Register this object as an
+ * {@link UserChangeListener} in
+ * {@link br.com.arsmachina.authentication.controller.impl.UserControllerImpl} so the entries of an
+ * user are dropped as soon as the user is changed.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class CredentialCache implements UserChangeListener {
+
+	/**
+	 * Default entry lifetime, in milliseconds.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+	/**
+	 * Default maximum number of entries.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	final private long timeToLive;
+
+	final private int maximumSize;
+
+	final private CredentialKey.Factory keyFactory = new CredentialKey.Factory();
+
+	final private LinkedHashMap<CredentialKey, CachedCredentials> entries;
+
+	final private Map<Integer, Set<CredentialKey>> keysByUser =
+		new HashMap<Integer, Set<CredentialKey>>();
+
+	final private AtomicLong version = new AtomicLong();
+
+	final private AtomicLong hits = new AtomicLong();
+
+	final private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor that uses the default entry lifetime and maximum number of entries.
+	 */
+	public CredentialCache() {
+		this(DEFAULT_TIME_TO_LIVE, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * Constructor that receives all parameters.
+	 *
+	 * @param timeToLive a <code>long</code> containing the entry lifetime in milliseconds. It must
+	 * be positive.
+	 * @param maximumSize an <code>int</code> containing the maximum number of entries. It must be
+	 * positive.
+	 */
+	public CredentialCache(long timeToLive, int maximumSize) {
+
+		if (timeToLive <= 0) {
+			throw new IllegalArgumentException("Parameter timeToLive must be positive");
+		}
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("Parameter maximumSize must be positive");
+		}
+
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+		this.maximumSize = maximumSize;
+
+		entries = new LinkedHashMap<CredentialKey, CachedCredentials>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CredentialKey, CachedCredentials> eldest) {
+
+				final boolean full = size() > CredentialCache.this.maximumSize;
+
+				if (full) {
+					unindex(eldest.getKey(), eldest.getValue().userId);
+				}
+
+				return full;
+
+			}
+
+		};
+
+	}
+
+	/**
+	 * Returns what was kept about the user whose credentials were verified with this login and
+	 * password, if it is still in this cache.
+	 *
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @return a {@link CachedCredentials} or <code>null</code>.
+	 */
+	public CachedCredentials get(String login, String password) {
+
+		final CredentialKey key = keyFactory.create(login, password);
+		CachedCredentials credentials = null;
+
+		synchronized (this) {
+
+			final CachedCredentials entry = entries.get(key);
+
+			if (entry != null) {
+
+				if (System.nanoTime() - entry.created < timeToLive) {
+					credentials = entry;
+				}
+				else {
+					remove(key, entry.userId);
+				}
+
+			}
+
+		}
+
+		(credentials != null ? hits : misses).incrementAndGet();
+
+		return credentials;
+
+	}
+
+	/**
+	 * Returns a number that changes whenever an user is changed. Pass the value read before
+	 * loading an user to {@link #put(String, String, User, long)}, so an user changed in the
+	 * meantime is not cached.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Caches a verified login and password pair.
+	 *
+	 * @param login a {@link String}. It cannot be null.
+	 * @param password a {@link String}. It cannot be null.
+	 * @param user an {@link User} whose credentials are <code>login</code> and
+	 * <code>password</code>. It cannot be null. Only its id, encrypted password and state flags
+	 * are kept.
+	 * @param version a <code>long</code> returned by {@link #getVersion()} before
+	 * <code>user</code> was loaded.
+	 */
+	public void put(String login, String password, User user, long version) {
+
+		if (user == null) {
+			throw new IllegalArgumentException("Parameter user cannot be null");
+		}
+
+		final CredentialKey key = keyFactory.create(login, password);
+		final Integer id = user.getId();
+
+		synchronized (this) {
+
+			// some user was changed after this one was loaded, maybe this one
+			if (this.version.get() != version) {
+				return;
+			}
+
+			final CachedCredentials previous =
+				entries.put(key, new CachedCredentials(user, System.nanoTime()));
+
+			if (previous != null) {
+				unindex(key, previous.userId);
+			}
+
+			Set<CredentialKey> keys = keysByUser.get(id);
+
+			if (keys == null) {
+				keys = new HashSet<CredentialKey>(2);
+				keysByUser.put(id, keys);
+			}
+
+			keys.add(key);
+
+		}
+
+	}
+
+	/**
+	 * Removes all entries of an user.
+	 *
+	 * @param id an {@link Integer}. It cannot be null.
+	 */
+	public synchronized void userChanged(Integer id) {
+
+		version.incrementAndGet();
+
+		final Set<CredentialKey> keys = keysByUser.remove(id);
+
+		if (keys != null) {
+
+			for (CredentialKey key : keys) {
+				entries.remove(key);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+
+		version.incrementAndGet();
+		entries.clear();
+		keysByUser.clear();
+
+	}
+
+	/**
+	 * Returns the number of entries, including expired ones not removed yet.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found a valid entry.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a valid entry.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private void remove(CredentialKey key, Integer id) {
+		entries.remove(key);
+		unindex(key, id);
+	}
+
+	private void unindex(CredentialKey key, Integer id) {
+
+		final Set<CredentialKey> keys = keysByUser.get(id);
+
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			keysByUser.remove(id);
+		}
+
+	}
+
+	/**
+	 * Immutable snapshot of a verified user kept by {@link CredentialCache}: its id, its stored
+	 * encrypted password, which changes whenever its credentials do, and its account state flags.
+	 */
+	final public static class CachedCredentials {
+
+		final private Integer userId;
+
+		final private String credentialVersion;
+
+		final private boolean enabled;
+
+		final private boolean locked;
+
+		final private boolean expired;
+
+		final private long created;
+
+		CachedCredentials(User user, long created) {
+			this.userId = user.getId();
+			this.credentialVersion = user.getPassword();
+			this.enabled = user.isEnabled();
+			this.locked = user.isLocked();
+			this.expired = user.isExpired();
+			this.created = created;
+		}
+
+		/**
+		 * Returns the id of the verified user.
+		 *
+		 * @return an {@link Integer}.
+		 */
+		public Integer getUserId() {
+			return userId;
+		}
+
+		/**
+		 * Tells if an user loaded now is the verified one and its credentials and state did not
+		 * change since it was verified.
+		 *
+		 * @param user an {@link User} or <code>null</code>.
+		 * @return a <code>boolean</code>.
+		 */
+		public boolean matches(User user) {
+
+			return user != null && userId != null && userId.equals(user.getId())
+					&& enabled == user.isEnabled() && locked == user.isLocked()
+					&& expired == user.isExpired() && credentialVersion != null
+					&& user.getPassword() != null
+					&& EncryptionUtils.constantTimeEquals(credentialVersion, user.getPassword());
+
+		}
+
+	}
+
+}
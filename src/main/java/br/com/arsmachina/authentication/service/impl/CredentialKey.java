@@ -0,0 +1,129 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import br.com.arsmachina.authentication.encryption.MessageDigestHasher;
+
+/**
+ * Map key derived from a login and a password with HMAC-SHA256, so credentials can be compared
+ * without keeping the password. Keys are only comparable when created by the same
+ * {@link Factory}, whose secret is random and never leaves this process.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+final class CredentialKey {
+
+	final private byte[] mac;
+
+	final private int hashCode;
+
+	private CredentialKey(byte[] mac) {
+		this.mac = mac;
+		hashCode = Arrays.hashCode(mac);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+
+		if (this == object) {
+			return true;
+		}
+
+		if (object instanceof CredentialKey == false) {
+			return false;
+		}
+
+		return Arrays.equals(mac, ((CredentialKey) object).mac);
+
+	}
+
+	/**
+	 * Creates {@link CredentialKey}s with a random secret generated when it is instantiated.
+	 */
+	static class Factory {
+
+		final private static String ALGORITHM = "HmacSHA256";
+
+		final private static int SECRET_LENGTH = 32;
+
+		final private SecretKeySpec secret;
+
+		final private ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+
+			@Override
+			protected Mac initialValue() {
+				return createMac();
+			}
+
+		};
+
+		Factory() {
+
+			final byte[] bytes = new byte[SECRET_LENGTH];
+			new SecureRandom().nextBytes(bytes);
+			secret = new SecretKeySpec(bytes, ALGORITHM);
+
+			createMac();
+
+		}
+
+		CredentialKey create(String login, String password) {
+
+			final byte[] loginBytes = login.getBytes(MessageDigestHasher.UTF_8);
+			final Mac mac = macs.get();
+
+			// the login length goes first, so no two pairs are fed to the MAC as the same bytes
+			final int length = loginBytes.length;
+			mac.update((byte) (length >>> 24));
+			mac.update((byte) (length >>> 16));
+			mac.update((byte) (length >>> 8));
+			mac.update((byte) length);
+			mac.update(loginBytes);
+
+			return new CredentialKey(mac.doFinal(password.getBytes(MessageDigestHasher.UTF_8)));
+
+		}
+
+		private Mac createMac() {
+
+			try {
+
+				final Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(secret);
+
+				return mac;
+
+			}
+			catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,189 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.authentication.exception.AuthenticationOverloadException;
+
+/**
+ * Dedicated, bounded pool for the CPU-bound password hashing done during authentication. At most
+ * <code>threads</code> passwords are hashed at the same time and at most
+ * <code>queueCapacity</code> wait for their turn. When both are full, or a task waits longer than
+ * <code>maximumWait</code>, the caller gets an {@link AuthenticationOverloadException} right away
+ * instead of taking another request thread hostage.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class HashingExecutor {
+
+	final private ThreadPoolExecutor executor;
+
+	final private long maximumWait;
+
+	final private AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructor that receives all parameters.
+	 *
+	 * @param threads an <code>int</code> containing the maximum number of passwords hashed at the
+	 * same time. It must be positive.
+	 * @param queueCapacity an <code>int</code> containing the maximum number of hashing tasks
+	 * waiting for a thread. It must be positive.
+	 * @param maximumWait a <code>long</code> containing the maximum time, in milliseconds, a caller
+	 * waits for its task to be finished. <code>0</code> means no limit.
+	 */
+	public HashingExecutor(int threads, int queueCapacity, long maximumWait) {
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Parameter threads must be positive");
+		}
+
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Parameter queueCapacity must be positive");
+		}
+
+		if (maximumWait < 0) {
+			throw new IllegalArgumentException("Parameter maximumWait cannot be negative");
+		}
+
+		this.maximumWait = maximumWait;
+
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+
+					final private AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+
+						final Thread thread = new Thread(runnable, "password-hashing-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+
+						return thread;
+
+					}
+
+				}, new ThreadPoolExecutor.AbortPolicy());
+
+	}
+
+	/**
+	 * Constructor that uses one thread per available processor, a queue with room for four tasks
+	 * per thread and no maximum waiting time.
+	 */
+	public HashingExecutor() {
+		this(Runtime.getRuntime().availableProcessors(),
+				Runtime.getRuntime().availableProcessors() * 4, 0);
+	}
+
+	/**
+	 * Runs a task in this pool and waits for its result. Runtime exceptions thrown by the task are
+	 * rethrown as they are.
+	 *
+	 * @param <T> the type of the task result.
+	 * @param task a {@link Callable}. It cannot be null.
+	 * @return the task result.
+	 * @throws AuthenticationOverloadException if the pool is saturated, the task took longer than
+	 * the maximum waiting time or the calling thread was interrupted.
+	 */
+	public <T> T execute(Callable<T> task) {
+
+		final Future<T> future;
+
+		try {
+			future = executor.submit(task);
+		}
+		catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new AuthenticationOverloadException(e);
+		}
+
+		try {
+			return maximumWait > 0 ? future.get(maximumWait, TimeUnit.MILLISECONDS) : future.get();
+		}
+		catch (TimeoutException e) {
+			future.cancel(true);
+			rejected.incrementAndGet();
+			throw new AuthenticationOverloadException(e);
+		}
+		catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new AuthenticationOverloadException(e);
+		}
+		catch (ExecutionException e) {
+
+			final Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			else {
+				throw new IllegalStateException(cause);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Returns the number of tasks being executed now.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns the number of tasks waiting for a thread.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the number of tasks rejected because the pool was saturated or they took too long.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Stops the pool threads after the tasks already submitted are finished.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,198 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.arsmachina.authentication.controller.PasswordChange;
+import br.com.arsmachina.authentication.controller.UserController;
+
+/**
+ * Queue of password upgrades (see
+ * {@link br.com.arsmachina.authentication.encryption.PasswordEncrypter#rehash(String, String)})
+ * that are written to the database in batches by a background thread, so logins do not wait for
+ * an extra <code>update</code>. Upgrades that are lost (queue full, database error, shutdown) are
+ * harmless: the stored password still matches and will be upgraded again at the next login.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class PasswordUpgradeQueue {
+
+	/**
+	 * Default interval between flushes, in milliseconds.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+
+	/**
+	 * Default maximum number of pending upgrades.
+	 */
+	public static final int DEFAULT_MAXIMUM_PENDING = 10000;
+
+	final private UserController userController;
+
+	final private int maximumPending;
+
+	final private ConcurrentMap<Integer, PasswordChange> pending =
+		new ConcurrentHashMap<Integer, PasswordChange>();
+
+	final private AtomicLong failures = new AtomicLong();
+
+	final private ScheduledExecutorService executor;
+
+	/**
+	 * Constructor that uses the default flush interval and maximum number of pending upgrades.
+	 *
+	 * @param userController an {@link UserController}. It cannot be null.
+	 */
+	public PasswordUpgradeQueue(UserController userController) {
+		this(userController, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAXIMUM_PENDING);
+	}
+
+	/**
+	 * Constructor that receives all parameters.
+	 *
+	 * @param userController an {@link UserController}. It cannot be null.
+	 * @param flushInterval a <code>long</code> containing the interval between flushes in
+	 * milliseconds. It must be positive.
+	 * @param maximumPending an <code>int</code>. Upgrades added when this number of upgrades is
+	 * pending are dropped.
+	 */
+	public PasswordUpgradeQueue(UserController userController, long flushInterval,
+			int maximumPending) {
+
+		if (userController == null) {
+			throw new IllegalArgumentException("Parameter userController cannot be null");
+		}
+
+		if (flushInterval <= 0) {
+			throw new IllegalArgumentException("Parameter flushInterval must be positive");
+		}
+
+		this.userController = userController;
+		this.maximumPending = maximumPending;
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			public Thread newThread(Runnable runnable) {
+
+				final Thread thread = new Thread(runnable, "password-upgrade-queue");
+				thread.setDaemon(true);
+
+				return thread;
+
+			}
+
+		});
+
+		executor.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+
+				try {
+					flush();
+				}
+				catch (RuntimeException e) {
+					// the upgrades will be queued again at the users' next logins
+					failures.incrementAndGet();
+				}
+
+			}
+
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+	}
+
+	/**
+	 * Queues a password upgrade. Only the first upgrade queued for a given user is kept until the
+	 * next flush.
+	 *
+	 * @param change a {@link PasswordChange}. It cannot be null.
+	 * @return <code>true</code> if the upgrade was queued, <code>false</code> if it was dropped.
+	 */
+	public boolean add(PasswordChange change) {
+
+		if (change == null) {
+			throw new IllegalArgumentException("Parameter change cannot be null");
+		}
+
+		if (pending.size() >= maximumPending) {
+			return false;
+		}
+
+		pending.putIfAbsent(change.getUserId(), change);
+
+		return true;
+
+	}
+
+	/**
+	 * Writes all pending upgrades to the database using
+	 * {@link UserController#replacePasswords(java.util.Collection)}.
+	 *
+	 * @return the number of passwords actually changed.
+	 */
+	public synchronized int flush() {
+
+		if (pending.isEmpty()) {
+			return 0;
+		}
+
+		final List<PasswordChange> batch = new ArrayList<PasswordChange>(pending.size());
+
+		for (Iterator<PasswordChange> i = pending.values().iterator(); i.hasNext();) {
+			batch.add(i.next());
+			i.remove();
+		}
+
+		return userController.replacePasswords(batch);
+
+	}
+
+	/**
+	 * Returns the number of pending upgrades.
+	 *
+	 * @return an <code>int</code>.
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Returns the number of background flushes that failed.
+	 *
+	 * @return a <code>long</code>.
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Stops the background thread and writes the pending upgrades.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		flush();
+	}
+
+}
@@ -0,0 +1,114 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.User;
+
+/**
+ * Test class for {@link UserPrincipalCodec}.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class UserPrincipalCodecTest {
+
+	private static User createUser() {
+
+		final User user = new User();
+		user.setId(1234);
+		user.setLogin("codec");
+		user.setName("Codec Test");
+		user.setEmail("codec@example.com");
+		user.setPassword("0123456789abcdef0123456789abcdef01234567");
+		user.setEnabled(true);
+
+		for (int i = 0; i < 4; i++) {
+
+			final PermissionGroup group = new PermissionGroup("UserPrincipalCodecTest." + i);
+
+			for (int j = 0; j < 10; j++) {
+				group.add(new Permission("UserPrincipalCodecTest.module" + i + ".operation" + j));
+			}
+
+			user.add(group);
+
+		}
+
+		return user;
+
+	}
+
+	@Test
+	public void roundTrip() {
+
+		final UserPrincipal principal = UserPrincipal.of(createUser());
+		final UserPrincipal copy = UserPrincipalCodec.decode(UserPrincipalCodec.encode(principal));
+
+		Assert.assertEquals(copy.getId(), principal.getId());
+		Assert.assertEquals(copy.getLogin(), principal.getLogin());
+		Assert.assertEquals(copy.getName(), principal.getName());
+		Assert.assertEquals(copy.getEmail(), principal.getEmail());
+		Assert.assertTrue(copy.isEnabled());
+		Assert.assertFalse(copy.isExpired());
+		Assert.assertEquals(copy.getPermissions(), principal.getPermissions());
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void unknownVersion() {
+
+		final byte[] bytes = UserPrincipalCodec.encode(UserPrincipal.of(createUser()));
+		bytes[0] = (byte) (UserPrincipalCodec.VERSION + 1);
+
+		UserPrincipalCodec.decode(bytes);
+
+	}
+
+	/**
+	 * Checks the encoded principal is much smaller than the default Java serialization of the same
+	 * user.
+	 */
+	@Test
+	public void smallerThanDefaultSerialization() throws Exception {
+
+		final User user = createUser();
+
+		final byte[] serialized = serialize(user);
+		final byte[] encoded = UserPrincipalCodec.encode(UserPrincipal.of(user));
+
+		Assert.assertTrue(encoded.length * 4 < serialized.length, encoded.length + " bytes, "
+				+ serialized.length + " with default serialization");
+
+	}
+
+	private static byte[] serialize(Object object) throws Exception {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+
+		return bytes.toByteArray();
+
+	}
+
+}
@@ -0,0 +1,117 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+import br.com.arsmachina.authentication.entity.Role;
+import br.com.arsmachina.authentication.entity.User;
+
+/**
+ * Test class for {@link UserPrincipal}.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class UserPrincipalTest {
+
+	@Test
+	public void of() throws Exception {
+
+		final User user = new User();
+		user.setId(1);
+		user.setLogin("principal");
+		user.setName("Principal");
+		user.setPassword("secret");
+		user.setEnabled(true);
+		user.add(new Customer());
+
+		final PermissionGroup group = new PermissionGroup("UserPrincipalTest");
+		group.add(new Permission("UserPrincipalTest.read"));
+		group.add(new Permission("UserPrincipalTest.write"));
+		user.add(group);
+
+		final UserPrincipal principal = UserPrincipal.of(user);
+
+		Assert.assertEquals(principal.getId(), Integer.valueOf(1));
+		Assert.assertEquals(principal.getLogin(), "principal");
+		Assert.assertNull(principal.getPassword());
+		Assert.assertTrue(principal.isEnabled());
+		Assert.assertFalse(principal.isLocked());
+		Assert.assertTrue(principal.hasRole(Customer.class));
+		Assert.assertTrue(principal.hasAllPermissions("UserPrincipalTest.read",
+				"UserPrincipalTest.write"));
+		Assert.assertEquals(principal.getPermissions().size(), 2);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(principal);
+		out.close();
+
+		final ObjectInputStream in =
+			new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		final UserPrincipal copy = (UserPrincipal) in.readObject();
+
+		Assert.assertEquals(copy, principal);
+		Assert.assertTrue(copy.isEnabled());
+		Assert.assertTrue(copy.hasRole(Customer.class));
+		Assert.assertTrue(copy.hasPermission("UserPrincipalTest.write"));
+		Assert.assertFalse(copy.hasPermission("UserPrincipalTest.delete"));
+
+	}
+
+	@Test
+	public void rolesAndGroups() {
+
+		final User user = new User();
+		user.setLogin("roles");
+		user.add(new Customer());
+
+		final UserPrincipal principal = UserPrincipal.of(user);
+
+		Assert.assertTrue(principal.getRoleClasses().contains(Customer.class));
+		Assert.assertNull(principal.getRole(Customer.class));
+		Assert.assertTrue(principal.getRoles().isEmpty());
+		Assert.assertTrue(principal.getPermissionGroups().isEmpty());
+
+	}
+
+	@Test
+	public void userEqualsPrincipal() {
+
+		final User user = new User();
+		user.setLogin("equals");
+
+		final UserPrincipal principal = UserPrincipal.of(user);
+
+		Assert.assertFalse(user.equals(principal));
+		Assert.assertFalse(principal.equals(user));
+
+	}
+
+	private static class Customer extends Role {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+}
@@ -0,0 +1,97 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller.impl;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+import br.com.arsmachina.authentication.permission.PermissionImplications;
+
+/**
+ * Test class for {@link EffectivePermissionsCache}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class EffectivePermissionsCacheTest {
+
+	@Test
+	public void userChanged() {
+
+		final EffectivePermissionsCache cache = new EffectivePermissionsCache();
+		final long version = cache.getVersion();
+		final long modelVersion = cache.getModelVersion();
+
+		cache.put(1, EffectivePermissions.EMPTY, version, modelVersion);
+		cache.put(2, EffectivePermissions.EMPTY, version, modelVersion);
+		cache.userChanged(1);
+
+		Assert.assertNull(cache.get(1));
+		Assert.assertSame(cache.get(2), EffectivePermissions.EMPTY);
+
+		// loaded before the change, so it may be stale
+		cache.put(1, EffectivePermissions.EMPTY, version, modelVersion);
+		Assert.assertNull(cache.get(1));
+
+	}
+
+	@Test
+	public void modelChanged() {
+
+		final EffectivePermissionsCache cache = new EffectivePermissionsCache(2);
+		final PermissionImplications implications = new PermissionImplications();
+		cache.setPermissionImplications(implications);
+
+		cache.put(1, EffectivePermissions.EMPTY, cache.getVersion(), cache.getModelVersion());
+		implications.imply("ROLE_ADMIN", "ROLE_USER");
+
+		Assert.assertNull(cache.get(1));
+		Assert.assertEquals(cache.getSize(), 0);
+
+	}
+
+	@Test
+	public void maximumAge() throws InterruptedException {
+
+		final EffectivePermissionsCache cache = new EffectivePermissionsCache();
+		cache.setMaximumAge(1);
+		cache.put(1, EffectivePermissions.EMPTY, cache.getVersion(), cache.getModelVersion());
+
+		Thread.sleep(10);
+
+		Assert.assertNull(cache.get(1));
+		Assert.assertEquals(cache.getSize(), 0);
+
+	}
+
+	@Test
+	public void eviction() {
+
+		final EffectivePermissionsCache cache = new EffectivePermissionsCache(2);
+		final long version = cache.getVersion();
+		final long modelVersion = cache.getModelVersion();
+
+		cache.put(1, EffectivePermissions.EMPTY, version, modelVersion);
+		cache.put(2, EffectivePermissions.EMPTY, version, modelVersion);
+		cache.get(1);
+		cache.put(3, EffectivePermissions.EMPTY, version, modelVersion);
+
+		Assert.assertEquals(cache.getSize(), 2);
+		Assert.assertNull(cache.get(2));
+		Assert.assertNotNull(cache.get(1));
+
+	}
+
+}
@@ -0,0 +1,79 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.controller.impl;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link LoginBloomFilter}.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class LoginBloomFilterTest {
+
+	@Test
+	public void mightContain() {
+
+		final int logins = 10000;
+		final LoginBloomFilter filter = new LoginBloomFilter(logins, 0.01);
+
+		for (int i = 0; i < logins; i++) {
+			filter.add("user" + i);
+		}
+
+		for (int i = 0; i < logins; i++) {
+			Assert.assertTrue(filter.mightContain("user" + i));
+		}
+
+		int falsePositives = 0;
+
+		for (int i = 0; i < logins; i++) {
+
+			if (filter.mightContain("other" + i)) {
+				falsePositives++;
+				filter.recordFalsePositive();
+			}
+
+		}
+
+		// 1% expected, with a generous margin
+		Assert.assertTrue(falsePositives < logins * 0.02, "false positives: " + falsePositives);
+		Assert.assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+		Assert.assertEquals(filter.getObservedFalsePositiveRate(), (double) falsePositives / logins,
+				1e-9);
+
+	}
+
+	@Test
+	public void maximumAge() throws InterruptedException {
+
+		final LoginBloomFilter filter = new LoginBloomFilter(100);
+		Assert.assertFalse(filter.isReady());
+
+		filter.setReady();
+		Assert.assertTrue(filter.isReady());
+
+		// too old: lookups go to the database until it is populated again
+		filter.setMaximumAge(1);
+		Thread.sleep(5);
+		Assert.assertFalse(filter.isReady());
+
+		filter.setMaximumAge(0);
+		Assert.assertTrue(filter.isReady());
+
+	}
+
+}
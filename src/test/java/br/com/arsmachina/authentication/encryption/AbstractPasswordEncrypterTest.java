@@ -0,0 +1,44 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link AbstractPasswordEncrypter}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class AbstractPasswordEncrypterTest {
+
+	@Test
+	public void defaults() {
+
+		final PasswordEncrypter encrypter = new AbstractPasswordEncrypter() {
+
+			public String encrypt(String password) {
+				return new StringBuilder(password).reverse().toString();
+			}
+
+		};
+
+		Assert.assertTrue(encrypter.matches("abc", "cba"));
+		Assert.assertFalse(encrypter.matches("abc", "abc"));
+		Assert.assertNull(encrypter.rehash("abc", "cba"));
+
+	}
+
+}
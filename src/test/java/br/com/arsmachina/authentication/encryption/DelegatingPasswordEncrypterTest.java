@@ -0,0 +1,90 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link DelegatingPasswordEncrypter}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class DelegatingPasswordEncrypterTest {
+
+	final private static String ABC_SHA1 = "a9993e364706816aba3e25717850c26c9cd0d89d";
+
+	@Test
+	public void encrypt() {
+
+		DelegatingPasswordEncrypter encrypter =
+			new DelegatingPasswordEncrypter(new Sha1PasswordEncrypter(), null);
+
+		final String encrypted = encrypter.encrypt("abc");
+
+		Assert.assertEquals(encrypted, "{sha1}" + ABC_SHA1);
+		Assert.assertEquals(encrypter.encrypt(encrypted), encrypted);
+		Assert.assertTrue(encrypter.matches("abc", encrypted));
+		Assert.assertFalse(encrypter.matches("abd", encrypted));
+		Assert.assertNull(encrypter.rehash("abc", encrypted));
+
+		// without an unprefixed encrypter, legacy hashes are just passwords
+		Assert.assertFalse(encrypter.matches("abc", ABC_SHA1));
+		Assert.assertEquals(encrypter.encrypt(ABC_SHA1), "{sha1}"
+				+ new Sha1PasswordEncrypter().hash(ABC_SHA1));
+
+	}
+
+	@Test
+	public void unprefixed() {
+
+		DelegatingPasswordEncrypter encrypter =
+			new DelegatingPasswordEncrypter(new Sha1PasswordEncrypter(), new Sha1PasswordEncrypter());
+
+		Assert.assertEquals(encrypter.encrypt(ABC_SHA1), ABC_SHA1);
+		Assert.assertTrue(encrypter.matches("abc", ABC_SHA1));
+		Assert.assertFalse(encrypter.matches("abd", ABC_SHA1));
+		Assert.assertEquals(encrypter.rehash("abc", ABC_SHA1), "{sha1}" + ABC_SHA1);
+
+	}
+
+	@Test
+	public void upgrade() {
+
+		final Sha1PasswordEncrypter old = new Sha1PasswordEncrypter();
+		final Sha1PasswordEncrypter salted = new Sha1PasswordEncrypter("salt") {
+
+			@Override
+			public String getId() {
+				return "sha1salted";
+			}
+
+		};
+
+		DelegatingPasswordEncrypter encrypter = new DelegatingPasswordEncrypter(salted, null, old);
+
+		final String stored = "{sha1}" + ABC_SHA1;
+		Assert.assertTrue(encrypter.matches("abc", stored));
+
+		final String rehashed = encrypter.rehash("abc", stored);
+		Assert.assertEquals(rehashed, "{sha1salted}" + salted.hash("abc"));
+		Assert.assertTrue(encrypter.matches("abc", rehashed));
+		Assert.assertNull(encrypter.rehash("abc", rehashed));
+
+		Assert.assertFalse(encrypter.matches("abc", "{unknown}" + ABC_SHA1));
+
+	}
+
+}
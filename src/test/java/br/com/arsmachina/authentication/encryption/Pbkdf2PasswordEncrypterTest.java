@@ -0,0 +1,75 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link Pbkdf2PasswordEncrypter}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class Pbkdf2PasswordEncrypterTest {
+
+	@Test
+	public void hash() {
+
+		Pbkdf2PasswordEncrypter encrypter = new Pbkdf2PasswordEncrypter(2000);
+		final String hash = encrypter.hash("abc");
+
+		Assert.assertTrue(hash.startsWith("2000$"));
+		Assert.assertTrue(encrypter.isEncrypted(hash));
+		Assert.assertEquals(encrypter.encrypt(hash), hash);
+		Assert.assertTrue(encrypter.matches("abc", hash));
+		Assert.assertFalse(encrypter.matches("abd", hash));
+		Assert.assertFalse(encrypter.matches("abc", "2000$zz"));
+
+		// random salt
+		Assert.assertFalse(hash.equals(encrypter.hash("abc")));
+
+	}
+
+	@Test
+	public void rehash() {
+
+		final String hash = new Pbkdf2PasswordEncrypter(2000).hash("abc");
+
+		Assert.assertNull(new Pbkdf2PasswordEncrypter(2000).rehash("abc", hash));
+		Assert.assertNull(new Pbkdf2PasswordEncrypter(2500).rehash("abc", hash));
+
+		Pbkdf2PasswordEncrypter stronger = new Pbkdf2PasswordEncrypter(4000);
+		final String rehashed = stronger.rehash("abc", hash);
+
+		Assert.assertTrue(rehashed.startsWith("4000$"));
+		Assert.assertTrue(stronger.matches("abc", rehashed));
+
+		// hashes with fewer iterations are still accepted
+		Assert.assertTrue(stronger.matches("abc", hash));
+
+	}
+
+	@Test
+	public void calibrate() {
+
+		Pbkdf2PasswordEncrypter encrypter = Pbkdf2PasswordEncrypter.calibrate(5, 1000);
+
+		Assert.assertTrue(encrypter.getIterations() >= 1000);
+		Assert.assertEquals(encrypter.getCalibrationTarget(), 5);
+		Assert.assertTrue(encrypter.toString().contains(encrypter.getIterations() + " iterations"));
+
+	}
+
+}
@@ -0,0 +1,112 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.encryption;
+
+import java.nio.charset.Charset;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link Sha1PasswordEncrypter}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class Sha1PasswordEncrypterTest {
+
+	@Test
+	public void encrypt() {
+
+		Sha1PasswordEncrypter encrypter = new Sha1PasswordEncrypter();
+
+		Assert.assertEquals(encrypter.encrypt("abc"), "a9993e364706816aba3e25717850c26c9cd0d89d");
+		Assert.assertEquals(encrypter.encrypt(""), "da39a3ee5e6b4b0d3255bfef95601890afd80709");
+
+		// leading zeros must be kept
+		Assert.assertEquals(encrypter.encrypt("password276"),
+				"00b65744719ecf64ec61036d4b4438706492058a");
+
+		// non-ASCII passwords are encoded with the platform default charset
+		Assert.assertEquals(encrypter.encrypt("sen\u00e4ha"), new Sha1PasswordEncrypter(null,
+				Charset.defaultCharset()).encrypt("sen\u00e4ha"));
+
+	}
+
+	@Test
+	public void encryptWithCharset() {
+
+		Sha1PasswordEncrypter encrypter = new Sha1PasswordEncrypter(null, MessageDigestHasher.UTF_8);
+
+		Assert.assertEquals(encrypter.encrypt("sen\u00e4ha"),
+				"4ae982b5a509965bd51a5e8912a5e9af33b8590f");
+
+	}
+
+	@Test
+	public void encryptWithSalt() {
+
+		Sha1PasswordEncrypter encrypter = new Sha1PasswordEncrypter("def");
+
+		Assert.assertEquals(encrypter.encrypt("abc"), "1f8ac10f23c5b5bc1167bda84b833e5c057a77d2");
+		Assert.assertEquals(encrypter.encrypt("abc".toCharArray()),
+				"1f8ac10f23c5b5bc1167bda84b833e5c057a77d2");
+		Assert.assertEquals(encrypter.encrypt(new byte[] { 'a', 'b', 'c' }),
+				"1f8ac10f23c5b5bc1167bda84b833e5c057a77d2");
+
+	}
+
+	@Test
+	public void alreadyEncrypted() {
+
+		Sha1PasswordEncrypter encrypter = new Sha1PasswordEncrypter();
+		final String encrypted = encrypter.encrypt("abc");
+
+		Assert.assertEquals(encrypter.encrypt(encrypted), encrypted);
+
+	}
+
+	@Test
+	public void matches() {
+
+		Sha1PasswordEncrypter encrypter = new Sha1PasswordEncrypter("def");
+		final String encrypted = encrypter.encrypt("abc");
+
+		Assert.assertTrue(encrypter.matches("abc", encrypted));
+		Assert.assertFalse(encrypter.matches("abd", encrypted));
+		Assert.assertFalse(encrypter.matches("abc", ""));
+
+		// the encrypted password itself must not be accepted as the password
+		Assert.assertFalse(encrypter.matches(encrypted, encrypted));
+
+	}
+
+	@Test
+	public void longPasswords() {
+
+		Sha1PasswordEncrypter encrypter = new Sha1PasswordEncrypter();
+		final StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 500; i++) {
+			builder.append('x');
+		}
+
+		final String password = builder.toString();
+
+		Assert.assertEquals(encrypter.encrypt(password), encrypter.encrypt(password.toCharArray()));
+		Assert.assertEquals(encrypter.encrypt("abc"), "a9993e364706816aba3e25717850c26c9cd0d89d");
+
+	}
+
+}
@@ -0,0 +1,61 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.entity;
+
+import java.util.Iterator;
+
+import org.hibernate.cfg.AnnotationConfiguration;
+import org.hibernate.engine.Mapping;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.PersistentClass;
+import org.testng.annotations.Test;
+
+/**
+ * Builds the annotation mappings of all entities, so a method Hibernate takes for an unmappable
+ * property, such as a non-public getter without <code>@Transient</code>, fails a test instead of
+ * the application's <code>SessionFactory</code>.
+ * 
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class MappingTest {
+
+	@Test
+	public void annotationMappings() {
+
+		final AnnotationConfiguration configuration = new AnnotationConfiguration();
+		configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+		configuration.addAnnotatedClass(DirectPermission.class);
+		configuration.addAnnotatedClass(Permission.class);
+		configuration.addAnnotatedClass(PermissionGroup.class);
+		configuration.addAnnotatedClass(Role.class);
+		configuration.addAnnotatedClass(User.class);
+		configuration.addAnnotatedClass(UserGroup.class);
+		configuration.addAnnotatedClass(UserGroupClosure.class);
+		configuration.buildMappings();
+
+		final Mapping mapping = configuration.buildMapping();
+
+		// validate() resolves the type of every property and throws MappingException if it can't
+		for (Iterator<?> i = configuration.getClassMappings(); i.hasNext();) {
+			((PersistentClass) i.next()).validate(mapping);
+		}
+
+		for (Iterator<?> i = configuration.getCollectionMappings(); i.hasNext();) {
+			((Collection) i.next()).validate(mapping);
+		}
+
+	}
+
+}
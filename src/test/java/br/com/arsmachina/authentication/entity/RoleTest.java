@@ -51,7 +51,7 @@ public class RoleTest {
 			final Permission permission = new Permission();
 			permission.setName("ROLE_" + i);
 
-			user.getPermissionGroups().get(i % 2).getPermissions().add(permission);
+			new ArrayList<PermissionGroup>(user.getPermissionGroups()).get(i % 2).getPermissions().add(permission);
 
 			if (i % 4 == 0) {
 				user.getRemovedPermissions().add(permission);
@@ -72,4 +72,42 @@ public class RoleTest {
 
 	}
 
+	@Test
+	public void getRole() {
+
+		final User user = new User();
+		final Customer customer = new Customer();
+		final Employee employee = new Employee();
+
+		user.add(customer);
+		user.add(employee);
+		user.add(new Customer());
+
+		Assert.assertEquals(user.getRoles().size(), 2);
+		Assert.assertSame(user.getRole(Customer.class), customer);
+		Assert.assertSame(user.getRole(Employee.class), employee);
+		Assert.assertSame(customer.getUser(), user);
+
+		user.remove(customer);
+		Assert.assertNull(user.getRole(Customer.class));
+		Assert.assertTrue(user.hasRole(Employee.class));
+
+		user.removeRole(Employee.class);
+		Assert.assertFalse(user.hasRole(Employee.class));
+		Assert.assertTrue(user.getRoles().isEmpty());
+
+	}
+
+	private static class Customer extends Role {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	private static class Employee extends Role {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
 }
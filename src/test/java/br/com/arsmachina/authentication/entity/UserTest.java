@@ -15,11 +15,15 @@
 package br.com.arsmachina.authentication.entity;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import br.com.arsmachina.authentication.permission.EffectivePermissions;
+
 /**
  * Test class for {@link User}.
  * 
@@ -48,7 +52,7 @@ public class UserTest {
 			final Permission permission = new Permission();
 			permission.setName("ROLE_" + i);
 
-			user.getPermissionGroups().get(i % 2).getPermissions().add(permission);
+			new ArrayList<PermissionGroup>(user.getPermissionGroups()).get(i % 2).getPermissions().add(permission);
 
 			if (i % 4 == 0) {
 				user.getRemovedPermissions().add(permission);
@@ -69,4 +73,122 @@ public class UserTest {
 
 	}
 
+	@Test
+	public void hasPermission() {
+
+		final User user = new User();
+		final PermissionGroup group = new PermissionGroup("Group");
+		group.add(new Permission("ROLE_A"));
+		group.add(new Permission("ROLE_B"));
+		user.add(group);
+
+		Assert.assertTrue(user.hasPermission("ROLE_A"));
+		Assert.assertTrue(user.hasPermission("ROLE_X", "ROLE_B"));
+		Assert.assertFalse(user.hasPermission("ROLE_C"));
+		Assert.assertTrue(user.hasAllPermissions("ROLE_A", "ROLE_B"));
+		Assert.assertFalse(user.hasAllPermissions("ROLE_A", "ROLE_C"));
+
+		// changes to the group must be seen by the compiled permissions
+		group.add(new Permission("ROLE_C"));
+		Assert.assertTrue(user.hasAllPermissions("ROLE_A", "ROLE_C"));
+
+		final PermissionGroup other = new PermissionGroup("Other");
+		other.add(new Permission("ROLE_D"));
+		user.add(other);
+		Assert.assertTrue(user.hasPermission("ROLE_D"));
+
+		user.remove(group);
+		Assert.assertFalse(user.hasPermission("ROLE_A"));
+		Assert.assertTrue(user.hasPermission("ROLE_D"));
+
+	}
+
+	@Test
+	public void loadingDoesNotInvalidate() {
+
+		final User user = new User();
+		final PermissionGroup group = new PermissionGroup("Group");
+		final Permission permission = new Permission("ROLE_A");
+		group.add(permission);
+		user.add(group);
+
+		final EffectivePermissions compiled = user.getEffectivePermissions();
+		final long modifications = PermissionGroup.getModificationCount();
+
+		// what Hibernate does when it loads another group and permission
+		final Permission loadedPermission = new Permission();
+		loadedPermission.setName("ROLE_B");
+		final PermissionGroup loaded = new PermissionGroup();
+		loaded.setName("Loaded");
+		loaded.setPermissions(new LinkedHashSet<Permission>(Collections.singleton(loadedPermission)));
+
+		Assert.assertSame(user.getEffectivePermissions(), compiled);
+		Assert.assertEquals(PermissionGroup.getModificationCount(), modifications);
+
+		// renaming a permission does invalidate
+		permission.setName("ROLE_C");
+		Assert.assertNotSame(user.getEffectivePermissions(), compiled);
+		Assert.assertTrue(user.hasPermission("ROLE_C"));
+		Assert.assertFalse(user.hasPermission("ROLE_A"));
+
+	}
+
+	@Test
+	public void getPermissionsIsCached() {
+
+		final User user = new User();
+		final PermissionGroup group = new PermissionGroup("Group");
+		final Permission a = new Permission("ROLE_A");
+		final Permission b = new Permission("ROLE_B");
+		group.add(a);
+		user.add(group);
+
+		final List<Permission> permissions = user.getPermissions();
+		Assert.assertSame(user.getPermissions(), permissions);
+		Assert.assertEquals(permissions.size(), 1);
+
+		group.add(b);
+		Assert.assertEquals(user.getPermissions().size(), 2);
+
+		user.addRemovedPermission(a);
+		Assert.assertEquals(user.getPermissions().size(), 1);
+		Assert.assertEquals(user.getPermissions().get(0), b);
+		Assert.assertFalse(user.hasPermission("ROLE_A"));
+		Assert.assertTrue(user.hasPermission("ROLE_B"));
+
+		user.removeRemovedPermission(a);
+		Assert.assertEquals(user.getPermissions().size(), 2);
+		Assert.assertTrue(user.hasAllPermissions("ROLE_A", "ROLE_B"));
+
+		user.remove(group);
+		Assert.assertTrue(user.getPermissions().isEmpty());
+
+	}
+
+	@Test
+	public void inheritedPermissionGroups() {
+
+		final User user = new User();
+		final PermissionGroup own = new PermissionGroup("Own");
+		own.add(new Permission("ROLE_OWN"));
+		user.add(own);
+
+		final PermissionGroup inherited = new PermissionGroup("Inherited");
+		final Permission removed = new Permission("ROLE_REMOVED");
+		inherited.add(new Permission("ROLE_INHERITED"));
+		inherited.add(removed);
+		user.addRemovedPermission(removed);
+
+		Assert.assertFalse(user.hasPermission("ROLE_INHERITED"));
+
+		user.setInheritedPermissionGroups(Collections.singletonList(inherited));
+		Assert.assertTrue(user.hasAllPermissions("ROLE_OWN", "ROLE_INHERITED"));
+		Assert.assertFalse(user.hasPermission("ROLE_REMOVED"));
+		Assert.assertEquals(user.getPermissions().size(), 2);
+
+		user.setInheritedPermissionGroups(Collections.<PermissionGroup> emptyList());
+		Assert.assertFalse(user.hasPermission("ROLE_INHERITED"));
+
+	}
+
 }
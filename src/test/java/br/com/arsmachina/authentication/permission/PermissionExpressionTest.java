@@ -0,0 +1,110 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link PermissionExpression} and {@link PermissionExpressionCache}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class PermissionExpressionTest {
+
+	final private static PermissionSet GRANTED = new PermissionSet.Builder().add("expr.a").add(
+			"expr.b").add("expr:report:*").build();
+
+	final private static PermissionTrie TRIE = PermissionTrie.compile(GRANTED, PermissionSet.EMPTY);
+
+	private static boolean evaluate(String source) {
+		return PermissionExpression.parse(source).evaluate(GRANTED, TRIE);
+	}
+
+	@Test
+	public void evaluate() {
+
+		Assert.assertTrue(evaluate("expr.a"));
+		Assert.assertFalse(evaluate("expr.c"));
+		Assert.assertTrue(evaluate("expr.a and (expr.c or not expr.d)"));
+		Assert.assertFalse(evaluate("expr.a AND NOT expr.b"));
+		Assert.assertTrue(evaluate("expr.c || expr.d || expr.b"));
+		Assert.assertTrue(evaluate("!expr.c && expr.a && expr.b"));
+		Assert.assertTrue(evaluate("expr.a and expr:report:sales"));
+		Assert.assertTrue(evaluate("expr.c or expr:report:sales"));
+		Assert.assertFalse(evaluate("not (expr.a or expr.c)"));
+		Assert.assertTrue(evaluate("expr.c or expr.a and expr.b"));
+
+	}
+
+	@Test
+	public void invalid() {
+
+		final String[] sources = { "", "expr.a and", "(expr.a", "expr.a expr.b", "and", "expr.a)" };
+
+		for (String source : sources) {
+
+			try {
+				PermissionExpression.parse(source);
+				Assert.fail("Expression accepted: " + source);
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+
+		}
+
+	}
+
+	@Test
+	public void unknownNames() {
+
+		final int size = PermissionSymbolTable.size();
+		final PermissionExpression and =
+			PermissionExpression.parse("expr.a and expr.unknown.x and expr.unknown.y");
+		final PermissionExpression or = PermissionExpression.parse("expr.unknown.x or expr.c");
+
+		Assert.assertEquals(PermissionSymbolTable.size(), size);
+		Assert.assertFalse(and.evaluate(GRANTED, TRIE));
+		Assert.assertFalse(or.evaluate(GRANTED, TRIE));
+		Assert.assertTrue(evaluate("expr:report:unknown or expr.unknown.z"));
+
+		// names added to the table after parsing are found when evaluated
+		final PermissionSet granted = new PermissionSet.Builder().addAll(GRANTED).add(
+				"expr.unknown.x").add("expr.unknown.y").build();
+
+		Assert.assertTrue(and.evaluate(granted, TRIE));
+		Assert.assertTrue(or.evaluate(granted, TRIE));
+
+	}
+
+	@Test
+	public void cache() {
+
+		final PermissionExpressionCache cache = new PermissionExpressionCache(2);
+		final PermissionExpression expression = cache.get("expr.a or expr.b");
+
+		Assert.assertSame(cache.get("expr.a or expr.b"), expression);
+		Assert.assertEquals(cache.getHitCount(), 1);
+		Assert.assertEquals(cache.getMissCount(), 1);
+
+		cache.get("expr.a");
+		cache.get("expr.b");
+		Assert.assertEquals(cache.getSize(), 2);
+		Assert.assertNotSame(cache.get("expr.a or expr.b"), expression);
+
+	}
+
+}
@@ -0,0 +1,134 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+
+/**
+ * Test class for {@link PermissionImplications}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class PermissionImplicationsTest {
+
+	@Test
+	public void closure() {
+
+		final PermissionImplications implications = new PermissionImplications();
+		implications.imply("Implications.admin", "Implications.manager");
+		implications.imply("Implications.manager", "Implications.read", "Implications.write");
+		implications.imply("Implications.write", "Implications.manager");
+
+		final PermissionSet implied = implications.getImplied("Implications.admin");
+
+		Assert.assertEquals(implied.size(), 3);
+		Assert.assertTrue(implied.containsAll("Implications.manager", "Implications.read",
+				"Implications.write"));
+		Assert.assertTrue(implications.getImplied("Implications.read").isEmpty());
+		Assert.assertEquals(implications.getImplicationCount(), 4);
+
+		implications.revoke("Implications.manager", "Implications.write");
+		Assert.assertFalse(implications.getImplied("Implications.admin").contains(
+				"Implications.write"));
+
+	}
+
+	@Test
+	public void incrementalClosure() {
+
+		final String[][] edges = { { "Incremental.c", "Incremental.d" },
+				{ "Incremental.a", "Incremental.b" }, { "Incremental.d", "Incremental.a" },
+				{ "Incremental.b", "Incremental.c", "Incremental.e" },
+				{ "Incremental.f", "Incremental.a" } };
+
+		final PermissionImplications incremental = new PermissionImplications();
+		final PermissionImplications recomputed = new PermissionImplications();
+
+		for (String[] edge : edges) {
+			incremental.imply(edge[0], Arrays.copyOfRange(edge, 1, edge.length));
+			recomputed.imply(edge[0], Arrays.copyOfRange(edge, 1, edge.length));
+		}
+
+		// revoke() computes the closure from scratch
+		recomputed.imply("Incremental.e", "Incremental.g");
+		recomputed.revoke("Incremental.e", "Incremental.g");
+
+		for (char name = 'a'; name <= 'g'; name++) {
+			Assert.assertEquals(incremental.getImplied("Incremental." + name), recomputed
+					.getImplied("Incremental." + name));
+		}
+
+		Assert.assertEquals(incremental.getImplied("Incremental.f").size(), 5);
+		Assert.assertEquals(incremental.getImplicationCount(), recomputed.getImplicationCount());
+
+	}
+
+	@Test
+	public void compile() {
+
+		final PermissionImplications implications = new PermissionImplications();
+		final PermissionGroup group = new PermissionGroup("Implications");
+		group.add(new Permission("Implications.admin"));
+
+		final Permission removed = new Permission("Implications.delete");
+
+		implications.imply("Implications.admin", "Implications.read", "Implications.delete");
+
+		final EffectivePermissions permissions = EffectivePermissions.compile(Collections
+				.singleton(group), Collections.singleton(removed), implications);
+
+		Assert.assertTrue(permissions.hasAllPermissions("Implications.admin", "Implications.read"));
+		Assert.assertFalse(permissions.hasPermission("Implications.delete"));
+		Assert.assertEquals(permissions.getPermissions().size(), 2);
+
+	}
+
+	@Test
+	public void removedPermissionImpliesNothing() {
+
+		final PermissionImplications implications = new PermissionImplications();
+		final PermissionGroup group = new PermissionGroup("ImplicationsRemoved");
+		group.add(new Permission("ImplicationsRemoved.admin"));
+		group.add(new Permission("ImplicationsRemoved.editor"));
+
+		final Permission removed = new Permission("ImplicationsRemoved.admin");
+
+		implications.imply("ImplicationsRemoved.admin", "ImplicationsRemoved.read",
+				"ImplicationsRemoved.delete");
+		implications.imply("ImplicationsRemoved.editor", "ImplicationsRemoved.read",
+				"ImplicationsRemoved.admin");
+
+		final EffectivePermissions permissions = EffectivePermissions.compile(Collections
+				.singleton(group), Collections.singleton(removed), implications);
+
+		// read is still implied by editor, but delete is only implied through the removed admin
+		Assert.assertTrue(permissions.hasAllPermissions("ImplicationsRemoved.editor",
+				"ImplicationsRemoved.read"));
+		Assert.assertFalse(permissions.hasPermission("ImplicationsRemoved.delete"));
+
+		// admin stays removed even though editor implies it
+		Assert.assertFalse(permissions.hasPermission("ImplicationsRemoved.admin"));
+		Assert.assertEquals(permissions.getPermissions().size(), 2);
+
+	}
+
+}
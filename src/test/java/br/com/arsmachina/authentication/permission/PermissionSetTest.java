@@ -0,0 +1,77 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link PermissionSet} and {@link PermissionSymbolTable}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class PermissionSetTest {
+
+	@Test
+	public void symbolTable() {
+
+		final int id = PermissionSymbolTable.intern("PermissionSetTest.symbol");
+
+		Assert.assertEquals(PermissionSymbolTable.intern("PermissionSetTest.symbol"), id);
+		Assert.assertEquals(PermissionSymbolTable.getId("PermissionSetTest.symbol"), id);
+		Assert.assertEquals(PermissionSymbolTable.getName(id), "PermissionSetTest.symbol");
+		Assert.assertEquals(PermissionSymbolTable.getId("PermissionSetTest.unknown"), -1);
+
+	}
+
+	@Test
+	public void build() {
+
+		final PermissionSet.Builder builder = new PermissionSet.Builder();
+
+		for (int i = 0; i < 200; i++) {
+			builder.add("PermissionSetTest." + i);
+		}
+
+		builder.remove("PermissionSetTest.100");
+		builder.remove("PermissionSetTest.unknown");
+
+		final PermissionSet set = builder.build();
+
+		Assert.assertEquals(set.size(), 199);
+		Assert.assertTrue(set.contains("PermissionSetTest.0"));
+		Assert.assertTrue(set.contains("PermissionSetTest.199"));
+		Assert.assertFalse(set.contains("PermissionSetTest.100"));
+		Assert.assertFalse(set.contains("PermissionSetTest.unknown"));
+		Assert.assertFalse(set.contains(-1));
+		Assert.assertTrue(set.containsAny("PermissionSetTest.unknown", "PermissionSetTest.1"));
+		Assert.assertFalse(set.containsAll("PermissionSetTest.1", "PermissionSetTest.100"));
+
+		int count = 0;
+
+		for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+			Assert.assertTrue(set.contains(id));
+			count++;
+		}
+
+		Assert.assertEquals(count, 199);
+
+		final PermissionSet removed = new PermissionSet.Builder().addAll(set).removeAll(set).build();
+		Assert.assertSame(removed, PermissionSet.EMPTY);
+		Assert.assertTrue(removed.isEmpty());
+
+	}
+
+}
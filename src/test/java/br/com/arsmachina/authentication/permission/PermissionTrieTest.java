@@ -0,0 +1,123 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.permission;
+
+import java.util.Collections;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.entity.Permission;
+import br.com.arsmachina.authentication.entity.PermissionGroup;
+
+/**
+ * Test class for {@link PermissionTrie}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class PermissionTrieTest {
+
+	@Test
+	public void matches() {
+
+		final PermissionSet granted = new PermissionSet.Builder().add("trie:report:*").add(
+				"trie:admin").add("trie:audit:log:*").build();
+		final PermissionSet excluded = new PermissionSet.Builder().add("trie:report:salary").build();
+		final PermissionTrie trie = PermissionTrie.compile(granted, excluded);
+
+		Assert.assertTrue(trie.matches("trie:report:sales"));
+		Assert.assertTrue(trie.matches("trie:report:sales:view"));
+		Assert.assertTrue(trie.matches("trie:report:sales:*"));
+		Assert.assertTrue(trie.matches("trie:audit:log:read"));
+		Assert.assertFalse(trie.matches("trie:report"));
+		Assert.assertFalse(trie.matches("trie:report:salary"));
+		Assert.assertFalse(trie.matches("trie:audit:read"));
+		Assert.assertFalse(trie.matches("trie:admin:users"));
+
+		Assert.assertTrue(PermissionTrie.isWildcard("*"));
+		Assert.assertFalse(PermissionTrie.isWildcard("trie:report*"));
+		Assert.assertSame(PermissionTrie.compile(excluded, PermissionSet.EMPTY),
+				PermissionTrie.EMPTY);
+
+	}
+
+	@Test
+	public void manySegments() {
+
+		final PermissionSet.Builder builder = new PermissionSet.Builder();
+
+		for (int i = 0; i < 100; i++) {
+			builder.add("trieMany:module" + i + ":*");
+		}
+
+		final PermissionTrie trie = PermissionTrie.compile(builder.build(), PermissionSet.EMPTY);
+
+		for (int i = 0; i < 100; i++) {
+			Assert.assertTrue(trie.matches("trieMany:module" + i + ":view"));
+		}
+
+		// segments that are a prefix or an extension of a compiled one
+		Assert.assertFalse(trie.matches("trieMany:module:view"));
+		Assert.assertFalse(trie.matches("trieMany:module100:view"));
+		Assert.assertFalse(trie.matches("trieMany:module1"));
+
+	}
+
+	@Test
+	public void effectivePermissions() {
+
+		final PermissionGroup group = new PermissionGroup("Trie");
+		group.add(new Permission("trie:invoice:*"));
+
+		Assert.assertTrue(group.hasPermission("trie:invoice:print"));
+
+		final EffectivePermissions permissions = EffectivePermissions.compile(
+				Collections.singleton(group),
+				Collections.singleton(new Permission("trie:invoice:delete")));
+
+		Assert.assertTrue(permissions.hasAllPermissions("trie:invoice:print", "trie:invoice:view"));
+		Assert.assertFalse(permissions.hasPermission("trie:invoice:delete"));
+		Assert.assertFalse(permissions.hasPermission("trie:order:print"));
+
+	}
+
+	@Test
+	public void removedWildcard() {
+
+		final PermissionSet granted = new PermissionSet.Builder().add("trie:sales:*").add(
+				"trie:sales:report:*").build();
+		final PermissionSet excluded = new PermissionSet.Builder().add("trie:sales:report:*").build();
+		final PermissionTrie trie = PermissionTrie.compile(granted, excluded);
+
+		Assert.assertTrue(trie.matches("trie:sales:order"));
+		Assert.assertFalse(trie.matches("trie:sales:report:view"));
+		Assert.assertFalse(trie.matches("trie:sales:report:monthly:view"));
+
+		final PermissionGroup group = new PermissionGroup("TrieRemoved");
+		group.add(new Permission("trie:sales:*"));
+		group.add(new Permission("trie:sales:report:export"));
+
+		final EffectivePermissions permissions = EffectivePermissions.compile(
+				Collections.singleton(group),
+				Collections.singleton(new Permission("trie:sales:report:*")));
+
+		Assert.assertTrue(permissions.hasPermission("trie:sales:order"));
+		Assert.assertFalse(permissions.hasPermission("trie:sales:report:view"));
+		Assert.assertFalse(permissions.hasPermission("trie:sales:report:export"));
+		Assert.assertEquals(permissions.getPermissions().size(), 1);
+
+	}
+
+}
@@ -0,0 +1,114 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.entity.User;
+import br.com.arsmachina.authentication.exception.AuthenticationException;
+import br.com.arsmachina.authentication.exception.BadCredentialsException;
+import br.com.arsmachina.authentication.exception.LockedUserException;
+
+/**
+ * Test class for {@link AuthenticationResult} and {@link AuthenticationOutcome}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class AuthenticationResultTest {
+
+	@Test
+	public void success() {
+
+		final User user = new User();
+		final AuthenticationResult result = AuthenticationResult.success(user);
+
+		Assert.assertTrue(result.isSuccessful());
+		Assert.assertSame(result.getUser(), user);
+		Assert.assertNull(result.getOutcome().getException());
+
+	}
+
+	@Test
+	public void failure() {
+
+		final AuthenticationResult result =
+			AuthenticationResult.failure(AuthenticationOutcome.BAD_CREDENTIALS);
+
+		Assert.assertFalse(result.isSuccessful());
+		Assert.assertNull(result.getUser());
+		Assert.assertSame(AuthenticationResult.failure(AuthenticationOutcome.BAD_CREDENTIALS), result);
+
+		final AuthenticationOutcome outcome = result.getOutcome();
+		Assert.assertTrue(outcome.getException() instanceof BadCredentialsException);
+		Assert.assertEquals(outcome.getException().getStackTrace().length, 0);
+		Assert.assertNotSame(outcome.newException(), outcome.newException());
+
+		for (AuthenticationOutcome other : AuthenticationOutcome.values()) {
+
+			if (other.isSuccessful() == false) {
+				Assert.assertEquals(other.newException().getClass(), other.getException().getClass());
+			}
+
+		}
+
+	}
+
+	@Test
+	public void failureWithException() {
+
+		final AuthenticationException exception = new LockedUserException() {
+
+			private static final long serialVersionUID = 1L;
+
+		};
+
+		final AuthenticationOutcome outcome = AuthenticationOutcome.of(exception);
+		final AuthenticationResult result = AuthenticationResult.failure(outcome, exception);
+
+		Assert.assertEquals(outcome, AuthenticationOutcome.LOCKED);
+		Assert.assertSame(result.getException(), exception);
+		Assert.assertNull(AuthenticationResult.failure(outcome).getException());
+
+	}
+
+	@Test
+	public void stacklessExceptions() {
+
+		final AuthenticationException shared = AuthenticationOutcome.LOCKED.getException();
+
+		shared.initCause(new IllegalStateException());
+		shared.fillInStackTrace();
+		Assert.assertNull(shared.getCause());
+		Assert.assertEquals(shared.getStackTrace().length, 0);
+
+		final AuthenticationException stackless = AuthenticationOutcome.LOCKED.newException(false);
+
+		Assert.assertTrue(stackless instanceof LockedUserException);
+		Assert.assertNotSame(stackless, shared);
+		Assert.assertEquals(stackless.getStackTrace().length, 0);
+		Assert.assertEquals(stackless.fillInStackTrace().getStackTrace().length, 0);
+		Assert.assertTrue(AuthenticationOutcome.LOCKED.newException().getStackTrace().length > 0);
+		Assert.assertEquals(new BadCredentialsException().getStackTrace()[0].getMethodName(),
+				"stacklessExceptions");
+
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void failureWithSuccess() {
+		AuthenticationResult.failure(AuthenticationOutcome.SUCCESS);
+	}
+
+}
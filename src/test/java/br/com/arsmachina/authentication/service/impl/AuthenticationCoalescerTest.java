@@ -0,0 +1,117 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for {@link AuthenticationCoalescer}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class AuthenticationCoalescerTest {
+
+	@Test
+	public void coalesce() throws Exception {
+
+		final AuthenticationCoalescer coalescer = new AuthenticationCoalescer();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger executions = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+		final Callable<String> task = new Callable<String>() {
+
+			public String call() throws Exception {
+				executions.incrementAndGet();
+				started.countDown();
+				release.await();
+				return "result";
+			}
+
+		};
+
+		try {
+
+			final Future<String> first = executor.submit(call(coalescer, "login", "secret", task));
+			Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			final Future<String> second = executor.submit(call(coalescer, "login", "secret", task));
+			final Future<String> other = executor.submit(call(coalescer, "login", "other",
+					new Callable<String>() {
+
+						public String call() {
+							return "other";
+						}
+
+					}));
+
+			// a different password never waits for, nor receives, the running result
+			Assert.assertEquals(other.get(5, TimeUnit.SECONDS), "other");
+
+			while (coalescer.getCoalescedCount() == 0) {
+				Thread.sleep(1);
+			}
+
+			release.countDown();
+
+			Assert.assertEquals(first.get(5, TimeUnit.SECONDS), "result");
+			Assert.assertEquals(second.get(5, TimeUnit.SECONDS), "result");
+			Assert.assertEquals(executions.get(), 1);
+			Assert.assertEquals(coalescer.getRunningCount(), 0);
+
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void exception() {
+
+		new AuthenticationCoalescer().execute("login", "secret", new Callable<String>() {
+
+			public String call() {
+				throw new IllegalStateException();
+			}
+
+		});
+
+	}
+
+	private static <T> Callable<T> call(final AuthenticationCoalescer coalescer,
+			final String login, final String password, final Callable<T> task) {
+
+		return new Callable<T>() {
+
+			public T call() {
+				return coalescer.execute(login, password, task);
+			}
+
+		};
+
+	}
+
+}
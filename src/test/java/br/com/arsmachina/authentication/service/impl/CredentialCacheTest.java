@@ -0,0 +1,120 @@
+// Copyright 2009 Thiago H. de Paula Figueiredo
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package br.com.arsmachina.authentication.service.impl;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import br.com.arsmachina.authentication.entity.User;
+
+/**
+ * Test class for {@link CredentialCache}.
+ *
+ * @author Thiago H. de Paula Figueiredo
+ */
+public class CredentialCacheTest {
+
+	@Test
+	public void getAndPut() {
+
+		final CredentialCache cache = new CredentialCache();
+		final User user = user(1);
+
+		Assert.assertNull(cache.get("login", "secret"));
+
+		cache.put("login", "secret", user, cache.getVersion());
+
+		Assert.assertEquals(cache.get("login", "secret").getUserId(), user.getId());
+		Assert.assertNull(cache.get("login", "other"));
+		Assert.assertNull(cache.get("logins", "ecret"));
+		Assert.assertEquals(cache.getHitCount(), 1);
+		Assert.assertEquals(cache.getMissCount(), 3);
+
+	}
+
+	@Test
+	public void userChanged() {
+
+		final CredentialCache cache = new CredentialCache();
+		final long version = cache.getVersion();
+
+		cache.put("one", "secret", user(1), version);
+		cache.put("two", "secret", user(2), version);
+		cache.userChanged(1);
+
+		Assert.assertNull(cache.get("one", "secret"));
+		Assert.assertNotNull(cache.get("two", "secret"));
+
+		// loaded before the change, so it may be stale
+		cache.put("one", "secret", user(1), version);
+		Assert.assertNull(cache.get("one", "secret"));
+
+	}
+
+	@Test
+	public void eviction() throws InterruptedException {
+
+		final CredentialCache cache = new CredentialCache(50, 2);
+		final long version = cache.getVersion();
+
+		cache.put("one", "secret", user(1), version);
+		cache.put("two", "secret", user(2), version);
+		cache.get("one", "secret");
+		cache.put("three", "secret", user(3), version);
+
+		Assert.assertEquals(cache.getSize(), 2);
+		Assert.assertNull(cache.get("two", "secret"));
+		Assert.assertNotNull(cache.get("one", "secret"));
+
+		Thread.sleep(100);
+		Assert.assertNull(cache.get("one", "secret"));
+
+	}
+
+	@Test
+	public void matches() {
+
+		final CredentialCache cache = new CredentialCache();
+		final User user = user(1);
+
+		cache.put("login", "secret", user, cache.getVersion());
+
+		final CredentialCache.CachedCredentials credentials = cache.get("login", "secret");
+		final User loaded = user(1);
+
+		Assert.assertTrue(credentials.matches(loaded));
+		Assert.assertFalse(credentials.matches(user(2)));
+		Assert.assertFalse(credentials.matches(null));
+
+		loaded.setLocked(true);
+		Assert.assertFalse(credentials.matches(loaded));
+
+		loaded.setLocked(false);
+		loaded.setPassword("changed");
+		Assert.assertFalse(credentials.matches(loaded));
+
+	}
+
+	private static User user(int id) {
+
+		final User user = new User();
+		user.setId(id);
+		user.setPassword("encrypted");
+
+		return user;
+
+	}
+
+}